@@ -47,6 +47,13 @@ public class ApiExceptionHandler {
         return ResponseEntity.status(status)
                 .body(baseBody(status.value(), http.getReasonPhrase(), ex.getReason(), req));
     }
+    @ExceptionHandler(ConflictException.class)
+    public ResponseEntity<?> handleConflict(ConflictException ex, HttpServletRequest req) {
+        var body = baseBody(409, "Conflict", ex.getMessage(), req);
+        body.put("current", ex.getCurrent());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+    }
+
     @ExceptionHandler(IllegalStateException.class)
     public ResponseEntity<?> handleIllegalState(IllegalStateException ex, HttpServletRequest req) {
         return ResponseEntity.status(HttpStatus.CONFLICT)
@@ -0,0 +1,287 @@
+package no.jdl.ukemeny.common;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Autocomplete over (id, navn) i minnet, for type-ahead uten DB-rundtur.
+ *
+ * Navn og søk foldes likt (små bokstaver, æ -> ae, ø -> o, å -> a og annen diakritikk fjernet), så
+ * "blabaer", "blåbær" og "BLÅBÆR" treffer det samme. Hvert søkeord må treffe navnet enten som starten
+ * på et ord (binærsøk i en sortert ordliste) eller et sted inni et ord (trigram-postinglister, så
+ * "kake" finner "Bløtkake"). Treff sorteres: hele navnet starter med søket, så ordstart, så inni ord;
+ * deretter korteste navn først.
+ *
+ * Søk leser et uforanderlig snapshot uten lås. put/remove bygger det ikke om: endrede id-er skjules
+ * i snapshotet og søkes i et lite snapshot over bare de ventende endringene, og treffene flettes. Når
+ * det er mer enn {@value #MAX_PENDING} ventende endringer, og etter replaceAll, bygges et nytt fullt
+ * snapshot i bakgrunnen mens søk fortsatt leser det gamle. Trådsikker.
+ */
+public final class AutocompleteIndex {
+
+    public record Suggestion(long id, String name) {}
+
+    private static final int MIN_INFIX_LENGTH = 3;
+    private static final int MAX_PENDING = 256;
+
+    private static final Comparator<Hit> HIT_ORDER = Comparator
+            .comparingInt(Hit::rank)
+            .thenComparingInt((Hit hit) -> hit.name().length())
+            .thenComparing(Hit::folded);
+
+    private record Hit(int rank, long id, String name, String folded) {}
+
+    /**
+     * Det søk leser: base er siste fulle snapshot, hidden er id-er der base er utdatert (endret eller
+     * slettet siden), og pending er et snapshot over gjeldende navn for de av dem som finnes.
+     */
+    private record State(Snapshot base, Set<Long> hidden, Map<Long, String> pendingNames, Snapshot pending) {
+        State(Snapshot base, Set<Long> hidden, Map<Long, String> pendingNames) {
+            this(base, Set.copyOf(hidden), Map.copyOf(pendingNames), new Snapshot(pendingNames));
+        }
+    }
+
+    private final Map<Long, String> names = new HashMap<>();  // guarded by this
+    private volatile State state = new State(new Snapshot(Map.of()), Set.of(), Map.of());
+    private boolean rebuildScheduled;                          // guarded by this
+    // Én ombygging om gangen, så et eldre snapshot aldri publiseres etter et nyere
+    private final Object rebuildLock = new Object();
+
+    /** Erstatter alt og bygger nytt snapshot på kallerens tråd (oppstart og periodisk reload). */
+    public void replaceAll(Map<Long, String> all) {
+        synchronized (this) {
+            if (names.equals(all)) {
+                return;
+            }
+            names.clear();
+            names.putAll(all);
+        }
+        rebuild();
+    }
+
+    public synchronized void put(long id, String name) {
+        if (!name.equals(names.put(id, name))) {
+            changed(id);
+        }
+    }
+
+    public synchronized void remove(long id) {
+        if (names.remove(id) != null) {
+            changed(id);
+        }
+    }
+
+    public List<Suggestion> suggest(String query, int limit) {
+        var q = fold(query == null ? "" : query).trim();
+        var tokens = words(q);
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        var current = state;
+        var hits = new ArrayList<Hit>();
+        // Skjulte id-er kan ta plasser i base sine treff, så be om så mange flere
+        for (var hit : current.base().suggest(q, tokens, limit + current.hidden().size())) {
+            if (!current.hidden().contains(hit.id())) hits.add(hit);
+        }
+        hits.addAll(current.pending().suggest(q, tokens, limit));
+        hits.sort(HIT_ORDER);
+
+        var suggestions = new ArrayList<Suggestion>(Math.min(limit, hits.size()));
+        for (int j = 0; j < hits.size() && j < limit; j++) {
+            suggestions.add(new Suggestion(hits.get(j).id(), hits.get(j).name()));
+        }
+        return suggestions;
+    }
+
+    /** Små bokstaver og uten diakritikk; æ/ø/å foldes slik nordmenn skriver dem uten norsk tastatur. */
+    public static String fold(String s) {
+        var sb = new StringBuilder(s.length() + 4);
+        for (char c : s.toLowerCase(Locale.ROOT).toCharArray()) {
+            switch (c) {
+                case 'æ' -> sb.append("ae");
+                case 'ø' -> sb.append('o');
+                case 'å' -> sb.append('a');
+                default -> sb.append(c);
+            }
+        }
+        // é -> e, ü -> u osv.: dekomponer og fjern kombinerende tegn
+        return Normalizer.normalize(sb, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+    }
+
+    private static List<String> words(String folded) {
+        var result = new ArrayList<String>();
+        for (var w : folded.split("[^\\p{L}\\p{N}]+")) {
+            if (!w.isEmpty()) result.add(w);
+        }
+        return result;
+    }
+
+    // Kalles med lås. Kopierer bare de ventende endringene, som holdes små av ombyggingen.
+    private void changed(long id) {
+        var current = state;
+        var hidden = new HashSet<>(current.hidden());
+        hidden.add(id);
+        var pending = new HashMap<>(current.pendingNames());
+        var name = names.get(id);
+        if (name == null) pending.remove(id); else pending.put(id, name);
+        state = new State(current.base(), hidden, pending);
+
+        if (hidden.size() > MAX_PENDING && !rebuildScheduled) {
+            rebuildScheduled = true;
+            CompletableFuture.runAsync(this::rebuild);
+        }
+    }
+
+    private void rebuild() {
+        synchronized (rebuildLock) {
+            Map<Long, String> captured;
+            synchronized (this) {
+                rebuildScheduled = false;
+                captured = Map.copyOf(names);
+            }
+            var base = new Snapshot(captured);
+            synchronized (this) {
+                // Endringer gjort mens vi bygget ligger i hidden; behold dem som base ikke har fått med seg
+                var hidden = new HashSet<Long>();
+                var pending = new HashMap<Long, String>();
+                for (long id : state.hidden()) {
+                    var name = names.get(id);
+                    if (!Objects.equals(captured.get(id), name)) {
+                        hidden.add(id);
+                        if (name != null) pending.put(id, name);
+                    }
+                }
+                state = new State(base, hidden, pending);
+            }
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long[] ids;
+        private final String[] names;
+        private final String[] folded;
+
+        // Alle (ord, entry) sortert på ord: ordstart-treff er et binærsøk + sekvensiell skanning
+        private final String[] words;
+        private final int[] wordEntries;
+
+        // trigram (3 tegn pakket i en long) -> entries som inneholder det, stigende
+        private final Map<Long, int[]> postings;
+
+        Snapshot(Map<Long, String> source) {
+            int n = source.size();
+            ids = new long[n];
+            names = new String[n];
+            folded = new String[n];
+
+            record Word(String word, int entry) {}
+            var allWords = new ArrayList<Word>();
+            var lists = new HashMap<Long, List<Integer>>();
+
+            int i = 0;
+            for (var e : source.entrySet()) {
+                ids[i] = e.getKey();
+                names[i] = e.getValue();
+                folded[i] = fold(e.getValue());
+                for (var w : words(folded[i])) {
+                    allWords.add(new Word(w, i));
+                    for (long t : trigrams(w)) {
+                        var list = lists.computeIfAbsent(t, k -> new ArrayList<>());
+                        if (list.isEmpty() || list.get(list.size() - 1) != i) list.add(i);
+                    }
+                }
+                i++;
+            }
+
+            allWords.sort(Comparator.comparing(Word::word));
+            words = new String[allWords.size()];
+            wordEntries = new int[allWords.size()];
+            for (int j = 0; j < allWords.size(); j++) {
+                words[j] = allWords.get(j).word();
+                wordEntries[j] = allWords.get(j).entry();
+            }
+
+            postings = new HashMap<>(lists.size() * 2);
+            lists.forEach((t, list) -> postings.put(t, list.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        List<Hit> suggest(String q, List<String> tokens, int limit) {
+            // rank per entry: 0 = navnet starter med søket, 1 = alle ord traff på ordstart, 2 = noe traff inni et ord
+            Map<Integer, Integer> ranks = null;
+            for (var token : tokens) {
+                var matches = new HashMap<Integer, Integer>();
+                for (int entry : prefixMatches(token)) matches.put(entry, 1);
+                for (int entry : infixMatches(token)) matches.putIfAbsent(entry, 2);
+
+                if (ranks == null) {
+                    ranks = matches;
+                } else {
+                    var next = new HashMap<Integer, Integer>();
+                    for (var e : matches.entrySet()) {
+                        var previous = ranks.get(e.getKey());
+                        if (previous != null) next.put(e.getKey(), Math.max(previous, e.getValue()));
+                    }
+                    ranks = next;
+                }
+                if (ranks.isEmpty()) {
+                    return List.of();
+                }
+            }
+
+            var result = new ArrayList<Hit>(ranks.size());
+            for (var e : ranks.entrySet()) {
+                int entry = e.getKey();
+                int rank = folded[entry].startsWith(q) ? 0 : e.getValue();
+                result.add(new Hit(rank, ids[entry], names[entry], folded[entry]));
+            }
+            result.sort(HIT_ORDER);
+            return result.size() > limit ? result.subList(0, limit) : result;
+        }
+
+        private List<Integer> prefixMatches(String token) {
+            var result = new ArrayList<Integer>();
+            int lo = 0, hi = words.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (words[mid].compareTo(token) < 0) lo = mid + 1; else hi = mid;
+            }
+            for (int j = lo; j < words.length && words[j].startsWith(token); j++) {
+                result.add(wordEntries[j]);
+            }
+            return result;
+        }
+
+        private List<Integer> infixMatches(String token) {
+            if (token.length() < MIN_INFIX_LENGTH) {
+                return List.of();
+            }
+            // Korteste postingliste blant søkeordets trigrammer gir færrest kandidater å verifisere
+            int[] shortest = null;
+            for (long t : trigrams(token)) {
+                var list = postings.get(t);
+                if (list == null) {
+                    return List.of();
+                }
+                if (shortest == null || list.length < shortest.length) shortest = list;
+            }
+            var result = new ArrayList<Integer>();
+            for (int entry : shortest) {
+                if (folded[entry].contains(token)) result.add(entry);
+            }
+            return result;
+        }
+
+        private static long[] trigrams(String word) {
+            if (word.length() < 3) {
+                return new long[0];
+            }
+            var result = new long[word.length() - 2];
+            for (int j = 0; j + 3 <= word.length(); j++) {
+                result[j] = ((long) word.charAt(j) << 32) | ((long) word.charAt(j + 1) << 16) | word.charAt(j + 2);
+            }
+            return result;
+        }
+    }
+}
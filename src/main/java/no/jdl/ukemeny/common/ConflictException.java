@@ -0,0 +1,19 @@
+package no.jdl.ukemeny.common;
+
+/**
+ * 409 der klienten trenger gjeldende tilstand for å prøve igjen (f.eks. en meny som er endret av noen andre).
+ * current sendes med i svaret som "current".
+ */
+public class ConflictException extends IllegalStateException {
+
+    private final transient Object current;
+
+    public ConflictException(String message, Object current) {
+        super(message);
+        this.current = current;
+    }
+
+    public Object getCurrent() {
+        return current;
+    }
+}
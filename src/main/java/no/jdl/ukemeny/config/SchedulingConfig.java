@@ -0,0 +1,10 @@
+package no.jdl.ukemeny.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Slår på @Scheduled (forhåndsgenerering av neste ukes meny)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -103,11 +103,12 @@ public class DevDataSeeder implements ApplicationRunner {
 
     private void seed(String name, String description, CreateRecipeItemRequest... items) {
         // Idempotent: ikke opprett samme dev-oppskrift flere ganger
-        if (!recipeService.searchByName(name).isEmpty()) {
+        var existing = recipeService.search(name, 10, null).items();
+        if (existing.stream().anyMatch(r -> r.name().equalsIgnoreCase(name))) {
             return;
         }
 
-        var req = new CreateRecipeRequest(name, description, List.of(items));
+        var req = new CreateRecipeRequest(name, description, List.of(items), null);
         recipeService.create(req);
     }
 
@@ -0,0 +1,6 @@
+package no.jdl.ukemeny.ingredient;
+
+/**
+ * Publiseres når en kategori får nytt navn og/eller ny sortOrder.
+ */
+public record CategoryChangedEvent(Long categoryId) {}
@@ -2,6 +2,7 @@ package no.jdl.ukemeny.ingredient;
 
 import no.jdl.ukemeny.common.NotFoundException;
 import no.jdl.ukemeny.ingredient.api.UpdateCategoryRequest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -13,9 +14,11 @@ import static org.springframework.http.HttpStatus.CONFLICT;
 public class CategoryService {
 
     private final CategoryRepository repo;
+    private final ApplicationEventPublisher events;
 
-    public CategoryService(CategoryRepository repo) {
+    public CategoryService(CategoryRepository repo, ApplicationEventPublisher events) {
         this.repo = repo;
+        this.events = events;
     }
 
     @Transactional
@@ -49,5 +52,6 @@ public class CategoryService {
         } catch (org.springframework.dao.DataIntegrityViolationException e) {
             throw new ResponseStatusException(CONFLICT, "Category name already exists (case-insensitive)", e);
         }
+        events.publishEvent(new CategoryChangedEvent(id));
     }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package no.jdl.ukemeny.ingredient;
+
+import no.jdl.ukemeny.common.AutocompleteIndex;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Autocomplete-indeks over ingrediensnavn. Bygges ved oppstart og holdes oppdatert av IngredientChangedEvent etter commit.
+ * Ingredienser har ingen stempel å sjekke, så navnene leses periodisk på nytt for å fange opp andre noder; indeksen
+ * bygges bare om når noe faktisk er endret.
+ */
+@Component
+public class IngredientAutocomplete {
+
+    private final IngredientRepository ingredientRepository;
+    private final AutocompleteIndex index = new AutocompleteIndex();
+    private volatile boolean loaded = false;
+
+    public IngredientAutocomplete(IngredientRepository ingredientRepository) {
+        this.ingredientRepository = ingredientRepository;
+    }
+
+    public List<AutocompleteIndex.Suggestion> suggest(String query, int limit) {
+        if (!loaded) {
+            load();
+        }
+        return index.suggest(query, limit);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        reload();
+        loaded = true;
+    }
+
+    @Scheduled(fixedDelayString = "${ukemeny.autocomplete.refresh-interval:PT30S}")
+    public synchronized void refresh() {
+        if (loaded) {
+            reload();
+        }
+    }
+
+    // Kalles med lås, så on() ikke kan blandes med en halvferdig lasting
+    private void reload() {
+        var names = new HashMap<Long, String>();
+        for (var ref : ingredientRepository.findAllNameRefs()) {
+            names.put(ref.ingredientId(), ref.name());
+        }
+        index.replaceAll(names);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(IngredientChangedEvent event) {
+        // Ikke lastet ennå: lastingen leser uansett ferske data
+        if (!loaded) {
+            return;
+        }
+        switch (event.type()) {
+            case CREATED -> {
+                for (var ref : ingredientRepository.findNameRefsByIdIn(event.ingredientIds())) {
+                    index.put(ref.ingredientId(), ref.name());
+                }
+            }
+            case DELETED -> event.ingredientIds().forEach(index::remove);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package no.jdl.ukemeny.ingredient;
+
+import java.util.Collection;
+
+/**
+ * Publiseres når én eller flere ingredienser har fått ny kategori.
+ */
+public record IngredientCategoryChangedEvent(Collection<Long> ingredientIds) {}
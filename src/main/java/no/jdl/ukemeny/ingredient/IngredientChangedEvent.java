@@ -0,0 +1,14 @@
+package no.jdl.ukemeny.ingredient;
+
+import java.util.Collection;
+
+/**
+ * Publiseres når ingredienser opprettes eller slettes (ikke ved kategoribytte, se IngredientCategoryChangedEvent).
+ */
+public record IngredientChangedEvent(Collection<Long> ingredientIds, Type type) {
+
+    public enum Type {
+        CREATED,
+        DELETED
+    }
+}
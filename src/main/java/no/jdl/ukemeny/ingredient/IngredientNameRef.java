@@ -0,0 +1,6 @@
+package no.jdl.ukemeny.ingredient;
+
+/**
+ * (id, navn) for en ingrediens, uten å laste entiteten.
+ */
+public record IngredientNameRef(Long ingredientId, String name) {}
@@ -19,6 +19,12 @@ public interface IngredientRepository extends JpaRepository<Ingredient, Long> {
     List<Ingredient> findAllWithCategoryOrdered();
     Optional<Ingredient> findByNameIgnoreCase(String name);
 
+    @Query("select new no.jdl.ukemeny.ingredient.IngredientNameRef(i.id, i.name) from Ingredient i")
+    List<IngredientNameRef> findAllNameRefs();
+
+    @Query("select new no.jdl.ukemeny.ingredient.IngredientNameRef(i.id, i.name) from Ingredient i where i.id in :ids")
+    List<IngredientNameRef> findNameRefsByIdIn(@Param("ids") Collection<Long> ids);
+
     @Query("""
         select (count(ri) > 0 )
         from RecipeItem ri
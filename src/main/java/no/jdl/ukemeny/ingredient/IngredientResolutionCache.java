@@ -0,0 +1,147 @@
+package no.jdl.ukemeny.ingredient;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * LRU + TTL-cache for getOrCreate: lower(normalisert navn) -> ingrediens-id, pluss id-en til
+ * standardkategorien "Diverse". Gjør to spørringer per item om til én bekreftelse per oppskrift.
+ *
+ * Id-er legges inn først etter commit, så en ingrediens fra en transaksjon som rulles tilbake aldri
+ * caches. Sletting her invaliderer via IngredientChangedEvent; en generasjonsteller hindrer at et
+ * oppslag som startet før slettingen legges inn etterpå. Sletting på andre noder ser vi ikke her;
+ * derfor bekrefter getOrCreateAll cachede id-er mot databasen før bruk og kaller {@link #evict} for
+ * de som er borte. Samtidig opprettelse på flere noder dekkes
+ * av unik-indeksen og fallbacken i getOrCreate.
+ */
+@Component
+public class IngredientResolutionCache {
+
+    private record Entry(long id, Instant expiresAt) {}
+
+    private final int maxSize;
+    private final Duration ttl;
+    private final Clock clock;
+
+    private final LinkedHashMap<String, Entry> entries;
+    private Entry defaultCategory;
+    private long generation = 0;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter stale;
+
+    public IngredientResolutionCache(MeterRegistry meterRegistry,
+                                     @Value("${ukemeny.ingredient.cache.max-size:10000}") int maxSize,
+                                     @Value("${ukemeny.ingredient.cache.ttl:PT10M}") Duration ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.clock = Clock.systemUTC();
+
+        // accessOrder=true gir LRU-rekkefølge; eldste fjernes når vi passerer maxSize
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > IngredientResolutionCache.this.maxSize;
+            }
+        };
+
+        this.hits = Counter.builder("ukemeny.ingredient.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("ukemeny.ingredient.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.stale = Counter.builder("ukemeny.ingredient.cache.stale")
+                .register(meterRegistry);
+        meterRegistry.gauge("ukemeny.ingredient.cache.size", this, IngredientResolutionCache::size);
+    }
+
+    public synchronized Optional<Long> get(String key) {
+        var entry = entries.get(key);
+        if (entry == null || clock.instant().isAfter(entry.expiresAt())) {
+            if (entry != null) entries.remove(key);
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.id());
+    }
+
+    /** Generasjon som må hentes før oppslaget i databasen og sendes med til {@link #putAfterCommit}. */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /** Legger inn id-en når transaksjonen committer (med en gang hvis det ikke finnes noen). */
+    public void putAfterCommit(String key, long id, long readAtGeneration) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(key, id, readAtGeneration);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(key, id, readAtGeneration);
+            }
+        });
+    }
+
+    private synchronized void put(String key, long id, long readAtGeneration) {
+        // Noe ble slettet mens vi slo opp -> id-en kan være borte, ikke cache den
+        if (readAtGeneration != generation) {
+            return;
+        }
+        entries.put(key, new Entry(id, clock.instant().plus(ttl)));
+    }
+
+    public synchronized Optional<Long> defaultCategoryId() {
+        if (defaultCategory == null || clock.instant().isAfter(defaultCategory.expiresAt())) {
+            return Optional.empty();
+        }
+        return Optional.of(defaultCategory.id());
+    }
+
+    public synchronized void setDefaultCategoryId(long id) {
+        defaultCategory = new Entry(id, clock.instant().plus(ttl));
+    }
+
+    /** Fjerner en id som viste seg å ikke finnes lenger (slettet på en annen node). */
+    public synchronized void evict(String key) {
+        generation++;
+        if (entries.remove(key) != null) {
+            stale.increment();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(IngredientChangedEvent event) {
+        if (event.type() != IngredientChangedEvent.Type.DELETED) {
+            return;
+        }
+        generation++;
+        var deleted = new HashSet<>(event.ingredientIds());
+        entries.values().removeIf(e -> deleted.contains(e.id()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(CategoryChangedEvent event) {
+        // Kan være "Diverse" som fikk nytt navn
+        defaultCategory = null;
+    }
+}
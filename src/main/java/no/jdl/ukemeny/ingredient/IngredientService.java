@@ -2,9 +2,12 @@ package no.jdl.ukemeny.ingredient;
 
 import no.jdl.ukemeny.common.NotFoundException;
 import no.jdl.ukemeny.ingredient.api.IngredientResponse;
+import no.jdl.ukemeny.ingredient.api.IngredientSummary;
 import no.jdl.ukemeny.ingredient.api.IngredientController.BulkSetCategoryItem;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
@@ -21,27 +24,153 @@ public class IngredientService {
 
     private final IngredientRepository repo;
 
-    public IngredientService(IngredientRepository repo, CategoryRepository categoryRepo) {
+    private final ApplicationEventPublisher events;
+
+    private final IngredientAutocomplete autocomplete;
+
+    private final JdbcTemplate jdbc;
+
+    private final IngredientResolutionCache cache;
+
+    public IngredientService(IngredientRepository repo, CategoryRepository categoryRepo, ApplicationEventPublisher events,
+                             IngredientAutocomplete autocomplete, JdbcTemplate jdbc, IngredientResolutionCache cache) {
 
         this.repo = repo;
         this.categoryRepo = categoryRepo;
+        this.events = events;
+        this.autocomplete = autocomplete;
+        this.jdbc = jdbc;
+        this.cache = cache;
     }
 
     @Transactional
     public Ingredient getOrCreate(String name) {
-        var normalized = normalizeName(name);
+        return getOrCreateAll(List.of(name)).get(name);
+    }
 
-        var defaultCategory = categoryRepo.findByNameIgnoreCase("Diverse")
-                .orElseThrow(() -> new IllegalStateException("Default category 'Diverse' missing"));
+    /**
+     * getOrCreate for alle ingrediensene i en oppskrift. Id-er fra cachen bekreftes med én spørring på
+     * primærnøkkel for hele settet, så en ingrediens som er slettet på en annen node aldri gis ut; den
+     * kastes fra cachen og slås opp på vanlig måte. Returnerer ingrediens per navn slik det ble sendt inn.
+     */
+    @Transactional
+    public Map<String, Ingredient> getOrCreateAll(Collection<String> names) {
+        var keys = new LinkedHashMap<String, String>(); // navn -> lower(normalisert)
+        var cachedIds = new HashMap<String, Long>();
+        for (var name : names) {
+            var key = normalizeName(name).toLowerCase(Locale.ROOT);
+            keys.put(name, key);
+            if (!cachedIds.containsKey(key)) {
+                cache.get(key).ifPresent(id -> cachedIds.put(key, id));
+            }
+        }
+
+        var byKey = new HashMap<String, Ingredient>();
+        if (!cachedIds.isEmpty()) {
+            var found = repo.findAllById(cachedIds.values()).stream()
+                    .collect(Collectors.toMap(Ingredient::getId, Function.identity()));
+            cachedIds.forEach((key, id) -> {
+                var ingredient = found.get(id);
+                if (ingredient != null) {
+                    byKey.put(key, ingredient);
+                } else {
+                    cache.evict(key);
+                }
+            });
+        }
+
+        var result = new HashMap<String, Ingredient>();
+        keys.forEach((name, key) -> result.put(name, byKey.computeIfAbsent(key, k -> lookupOrCreate(name, k))));
+        return result;
+    }
 
-        return repo.findByNameIgnoreCase(normalized)
+    private Ingredient lookupOrCreate(String name, String key) {
+        var normalized = normalizeName(name);
+        long generation = cache.generation();
+        var ingredient = repo.findByNameIgnoreCase(normalized)
                 .orElseGet(() -> {
                     try {
-                        return repo.save(new Ingredient(normalized, defaultCategory));
+                        var created = repo.save(new Ingredient(normalized, defaultCategory()));
+                        events.publishEvent(new IngredientChangedEvent(List.of(created.getId()), IngredientChangedEvent.Type.CREATED));
+                        return created;
                     } catch (DataIntegrityViolationException e) {
                         return repo.findByNameIgnoreCase(normalized).orElseThrow(() -> e);
                     }
                 });
+        cache.putAfterCommit(key, ingredient.getId(), generation);
+        return ingredient;
+    }
+
+    private Category defaultCategory() {
+        var cached = cache.defaultCategoryId();
+        if (cached.isPresent()) {
+            return categoryRepo.getReferenceById(cached.get());
+        }
+        var category = categoryRepo.findByNameIgnoreCase("Diverse")
+                .orElseThrow(() -> new IllegalStateException("Default category 'Diverse' missing"));
+        cache.setDefaultCategoryId(category.getId());
+        return category;
+    }
+
+    /**
+     * Som getOrCreate for mange navn på én gang: nye ingredienser settes inn og eksisterende hentes i én
+     * SQL-setning (INSERT ... ON CONFLICT DO NOTHING RETURNING). Returnerer id per navn slik det ble sendt inn.
+     */
+    @Transactional
+    public Map<String, Long> resolveAll(Collection<String> names) {
+        // lower(normalisert navn) -> navnene som ble sendt inn
+        var byKey = new LinkedHashMap<String, List<String>>();
+        for (var name : names) {
+            byKey.computeIfAbsent(normalizeName(name).toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(name);
+        }
+        if (byKey.isEmpty()) {
+            return Map.of();
+        }
+        var defaultCategory = defaultCategory();
+        long generation = cache.generation();
+        var normalized = byKey.values().stream().map(list -> normalizeName(list.get(0))).toArray(String[]::new);
+
+        // ins og resten av setningen ser ikke hverandres rader, så nye og eksisterende kommer fra hver sin del
+        var ids = new HashMap<String, Long>();
+        var created = new ArrayList<Long>();
+        jdbc.query("""
+                with input as (
+                    select n as name from unnest(?::text[]) as t(n)
+                ), ins as (
+                    insert into ingredient (name, category_id)
+                    select name, ? from input
+                    on conflict do nothing
+                    returning id, name
+                )
+                select id, name, true as created from ins
+                union all
+                select i.id, i.name, false from ingredient i join input on lower(i.name) = lower(input.name)
+                """, rs -> {
+            ids.put(rs.getString("name").toLowerCase(Locale.ROOT), rs.getLong("id"));
+            if (rs.getBoolean("created")) created.add(rs.getLong("id"));
+        }, normalized, defaultCategory.getId());
+
+        // Satt inn av en annen transaksjon etter at setningen startet: verken ins eller join ser raden
+        if (ids.size() < byKey.size()) {
+            var missing = byKey.keySet().stream().filter(k -> !ids.containsKey(k)).toArray(String[]::new);
+            jdbc.query("select id, name from ingredient where lower(name) = any(?::text[])",
+                    rs -> { ids.put(rs.getString("name").toLowerCase(Locale.ROOT), rs.getLong("id")); },
+                    (Object) missing);
+        }
+
+        if (!created.isEmpty()) {
+            events.publishEvent(new IngredientChangedEvent(created, IngredientChangedEvent.Type.CREATED));
+        }
+        var result = new HashMap<String, Long>();
+        byKey.forEach((key, inputs) -> {
+            var id = ids.get(key);
+            if (id == null) {
+                throw new IllegalStateException("Could not resolve ingredient: " + inputs.get(0));
+            }
+            cache.putAfterCommit(key, id, generation);
+            inputs.forEach(name -> result.put(name, id));
+        });
+        return result;
     }
 
     @Transactional
@@ -54,6 +183,7 @@ public class IngredientService {
 
         ingredient.setCategory(category);
         // ingen repo.save nødvendig hvis entity er managed i transaksjonen.
+        events.publishEvent(new IngredientCategoryChangedEvent(List.of(ingredientId)));
     }
 
     @Transactional(readOnly = true)
@@ -83,6 +213,16 @@ public class IngredientService {
                 .toList();
     }
 
+    /** Type-ahead fra indeksen i minnet (ingen DB-spørring). */
+    public List<IngredientSummary> autocomplete(String query, int limit) {
+        if (limit < 1 || limit > 50) {
+            throw new IllegalArgumentException("limit must be between 1 and 50");
+        }
+        return autocomplete.suggest(query, limit).stream()
+                .map(s -> new IngredientSummary(s.id(), s.name()))
+                .toList();
+    }
+
     private String normalizeName(String input) {
         if (input == null) return null;
         var trimmed = input.trim();
@@ -124,6 +264,7 @@ public class IngredientService {
             var cat = categoryById.get(u.categoryId());
             ing.setCategory(cat);
         }
+        events.publishEvent(new IngredientCategoryChangedEvent(ingredientIds));
     }
 
     @Transactional
@@ -135,6 +276,7 @@ public class IngredientService {
                     "Ingredient " + id + " is used by a recipe and cannot be deleted");
         }
         repo.delete(ingredient);
+        events.publishEvent(new IngredientChangedEvent(List.of(id), IngredientChangedEvent.Type.DELETED));
     }
     @Transactional
     public int deleteUnused(Optional<Integer> limitOpt) {
@@ -150,6 +292,7 @@ public class IngredientService {
 
         // Bulk delete
         repo.deleteAllByIdInBatch(unusedIds);
+        events.publishEvent(new IngredientChangedEvent(List.copyOf(unusedIds), IngredientChangedEvent.Type.DELETED));
         return unusedIds.size();
     }
     @Transactional
@@ -181,6 +324,9 @@ public class IngredientService {
             repo.delete(ingredientOpt.get());
             deleted.add(id);
         }
+        if (!deleted.isEmpty()) {
+            events.publishEvent(new IngredientChangedEvent(deleted, IngredientChangedEvent.Type.DELETED));
+        }
 
         return new no.jdl.ukemeny.ingredient.api.BulkDeleteUnusedIngredientsResponse(
                 deleted, skippedUsed, skippedNotFound
@@ -39,6 +39,18 @@ public class IngredientController {
         return service.list(query, categoryId, unused);
     }
 
+    @GetMapping("/autocomplete")
+    @Operation(
+            summary = "Autocomplete for ingrediensnavn",
+            description = "Forslag mens man skriver, fra en indeks i minnet. Treffer starten på ord og (fra 3 tegn) inni ord; store/små bokstaver og æ/ø/å spiller ingen rolle (\"romme\" finner \"Rømme\"). limit 1-50, default 10."
+    )
+    public List<IngredientSummary> autocomplete(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return service.autocomplete(query, limit);
+    }
+
     public record SetCategoryRequest(@NotNull Long categoryId) {}
 
     @PatchMapping("/{id}/category")
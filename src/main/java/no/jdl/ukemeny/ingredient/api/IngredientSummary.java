@@ -0,0 +1,3 @@
+package no.jdl.ukemeny.ingredient.api;
+
+public record IngredientSummary(Long id, String name) {}
@@ -0,0 +1,284 @@
+package no.jdl.ukemeny.recipe;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Invertert indeks ingrediens -> oppskrifter ("hva kan jeg lage?"), motstykket til RecipeIngredientIndex.
+ *
+ * Hver ingrediens har en sortert long[] med oppskrift-id-er. Et søk fletter postinglistene til de oppgitte
+ * ingrediensene (union med telling, eller snitt når alle må være med) uten å røre databasen.
+ *
+ * Lastes ved første bruk med én spørring og holdes oppdatert av RecipeChangedEvent etter commit: for en
+ * endret oppskrift leses bare dens ingredienser, og kun postinglistene til ingredienser som er lagt til
+ * eller fjernet byttes ut. Arrayene endres aldri; mapene endres per nøkkel under skrivelåsen, og et søk
+ * holder leselåsen, så det ser aldri en postingliste og en ingrediensliste fra hver sin versjon.
+ *
+ * Events er bare lokale: når {@link RecipeCatalog#generation()} endrer seg (andre noder har endret
+ * oppskrifter) lastes indeksen på nytt ved neste søk.
+ */
+@Component
+public class IngredientRecipeIndex {
+
+    public record Match(long recipeId, String name, int matched, int total) {
+        public double coverage() {
+            return (double) matched / total;
+        }
+    }
+
+    private static final long[] EMPTY = new long[0];
+
+    private final RecipeItemRepository recipeItemRepository;
+    private final RecipeRepository recipeRepository;
+    private final RecipeCatalog recipeCatalog;
+
+    // Skrivere (events og lasting) serialiseres på indeksen og endrer mapene under skrivelåsen
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // ingredientId -> sorterte oppskrift-id-er; recipeId -> sorterte, distinkte ingrediens-id-er
+    // (for å finne hva som endret seg, og for dekningsgrad)
+    private Map<Long, long[]> postings = Map.of();
+    private Map<Long, long[]> ingredientsByRecipe = Map.of();
+    private Map<Long, String> names = Map.of();
+    // RecipeCatalog-generasjonen indeksen ble lastet for; -1 = ikke lastet
+    private volatile long loadedGeneration = -1;
+
+    public IngredientRecipeIndex(RecipeItemRepository recipeItemRepository, RecipeRepository recipeRepository,
+                                 RecipeCatalog recipeCatalog) {
+        this.recipeItemRepository = recipeItemRepository;
+        this.recipeRepository = recipeRepository;
+        this.recipeCatalog = recipeCatalog;
+    }
+
+    /**
+     * Oppskrifter som bruker minst én (eller, med requireAll, alle) av ingrediensene, med dekningsgrad
+     * (andel av oppskriftens ingredienser som er oppgitt) på minst minCoverage. Flest treff først,
+     * deretter høyest dekningsgrad.
+     */
+    public List<Match> match(Collection<Long> ingredientIds, boolean requireAll, double minCoverage, int limit) {
+        long generation = recipeCatalog.generation();
+        if (generation != loadedGeneration) {
+            load(generation);
+        }
+
+        var matches = new ArrayList<Match>();
+        lock.readLock().lock();
+        try {
+            var lists = new ArrayList<long[]>();
+            for (long id : new TreeSet<>(ingredientIds)) {
+                var list = postings.getOrDefault(id, EMPTY);
+                if (list.length == 0 && requireAll) {
+                    return List.of();
+                }
+                if (list.length > 0) lists.add(list);
+            }
+            if (lists.isEmpty()) {
+                return List.of();
+            }
+
+            if (requireAll) {
+                for (long recipeId : intersect(lists)) {
+                    addIfCovered(matches, recipeId, lists.size(), minCoverage);
+                }
+            } else {
+                unionCounting(lists, (recipeId, count) -> addIfCovered(matches, recipeId, count, minCoverage));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        matches.sort(Comparator.comparingInt(Match::matched).reversed()
+                .thenComparing(Comparator.comparingDouble(Match::coverage).reversed())
+                .thenComparingLong(Match::recipeId));
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    // Kalles med leselåsen
+    private void addIfCovered(List<Match> matches, long recipeId, int matched, double minCoverage) {
+        var ingredients = ingredientsByRecipe.get(recipeId);
+        var match = new Match(recipeId, names.get(recipeId), matched, ingredients.length);
+        if (match.coverage() >= minCoverage) {
+            matches.add(match);
+        }
+    }
+
+    private interface CountConsumer {
+        void accept(long recipeId, int count);
+    }
+
+    /** k-veis fletting av sorterte lister: hver oppskrift én gang, med antall lister den finnes i. */
+    static void unionCounting(List<long[]> lists, CountConsumer consumer) {
+        int k = lists.size();
+        var pos = new int[k];
+        while (true) {
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < k; i++) {
+                var list = lists.get(i);
+                if (pos[i] < list.length && list[pos[i]] < min) min = list[pos[i]];
+            }
+            if (min == Long.MAX_VALUE) {
+                return;
+            }
+            int count = 0;
+            for (int i = 0; i < k; i++) {
+                var list = lists.get(i);
+                if (pos[i] < list.length && list[pos[i]] == min) {
+                    count++;
+                    pos[i]++;
+                }
+            }
+            consumer.accept(min, count);
+        }
+    }
+
+    /** Snitt av sorterte lister: starter med den korteste og binærsøker i resten. */
+    static long[] intersect(List<long[]> lists) {
+        var sorted = new ArrayList<>(lists);
+        sorted.sort(Comparator.comparingInt(l -> l.length));
+        var result = sorted.get(0).clone();
+        int size = result.length;
+        for (int i = 1; i < sorted.size() && size > 0; i++) {
+            var other = sorted.get(i);
+            int kept = 0;
+            int from = 0;
+            for (int j = 0; j < size; j++) {
+                int at = Arrays.binarySearch(other, from, other.length, result[j]);
+                if (at >= 0) {
+                    result[kept++] = result[j];
+                    from = at + 1;
+                } else {
+                    from = -at - 1;
+                }
+            }
+            size = kept;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(RecipeChangedEvent event) {
+        // Ikke lastet ennå: første match() leser uansett ferske data
+        if (loadedGeneration < 0) {
+            return;
+        }
+        var ids = event.recipeIds();
+        // Spørringene før skrivelåsen, så søk ikke venter på databasen
+        List<RecipeNameRef> nameRefs = List.of();
+        Map<Long, List<Long>> grouped = Map.of();
+        if (event.type() != RecipeChangedEvent.Type.DELETED) {
+            nameRefs = recipeRepository.findNameRefsByIdIn(ids);
+            grouped = RecipeIngredientRef.groupByRecipe(ids, recipeItemRepository.findIngredientRefsByRecipeIdIn(ids));
+        }
+
+        lock.writeLock().lock();
+        try {
+            switch (event.type()) {
+                case CREATED, UPDATED -> {
+                    for (var ref : nameRefs) {
+                        names.put(ref.recipeId(), ref.name());
+                    }
+                    grouped.forEach((recipeId, ingredients) ->
+                            replace(postings, ingredientsByRecipe, recipeId, sortedDistinct(ingredients)));
+                }
+                case DELETED -> ids.forEach(recipeId -> {
+                    replace(postings, ingredientsByRecipe, recipeId, EMPTY);
+                    names.remove(recipeId);
+                });
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private synchronized void load(long generation) {
+        if (loadedGeneration == generation) {
+            return;
+        }
+        var grouped = new HashMap<Long, List<Long>>();
+        for (var ref : recipeItemRepository.findAllIngredientRefs()) {
+            grouped.computeIfAbsent(ref.recipeId(), k -> new ArrayList<>()).add(ref.ingredientId());
+        }
+        var names = new HashMap<Long, String>();
+        for (var ref : recipeRepository.findAllNameRefs()) {
+            names.put(ref.recipeId(), ref.name());
+        }
+
+        var ingredientsByRecipe = new HashMap<Long, long[]>();
+        var byIngredient = new HashMap<Long, List<Long>>();
+        grouped.forEach((recipeId, ingredients) -> {
+            var sorted = sortedDistinct(ingredients);
+            ingredientsByRecipe.put(recipeId, sorted);
+            for (long ingredientId : sorted) {
+                byIngredient.computeIfAbsent(ingredientId, k -> new ArrayList<>()).add(recipeId);
+            }
+        });
+        var postings = new HashMap<Long, long[]>();
+        byIngredient.forEach((ingredientId, recipes) ->
+                postings.put(ingredientId, sortedDistinct(recipes)));
+
+        lock.writeLock().lock();
+        try {
+            this.postings = postings;
+            this.ingredientsByRecipe = ingredientsByRecipe;
+            this.names = names;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loadedGeneration = generation;
+    }
+
+    /** Bytter oppskriftens ingrediensliste og oppdaterer bare postinglistene som faktisk endres. */
+    private static void replace(Map<Long, long[]> postings, Map<Long, long[]> ingredientsByRecipe,
+                                long recipeId, long[] ingredients) {
+        var old = ingredientsByRecipe.getOrDefault(recipeId, EMPTY);
+        for (long ingredientId : old) {
+            if (Arrays.binarySearch(ingredients, ingredientId) < 0) {
+                postings.computeIfPresent(ingredientId, (k, list) -> {
+                    var updated = without(list, recipeId);
+                    return updated.length == 0 ? null : updated;
+                });
+            }
+        }
+        for (long ingredientId : ingredients) {
+            if (Arrays.binarySearch(old, ingredientId) < 0) {
+                postings.merge(ingredientId, new long[]{recipeId}, (list, single) -> with(list, recipeId));
+            }
+        }
+        if (ingredients.length == 0) {
+            ingredientsByRecipe.remove(recipeId);
+        } else {
+            ingredientsByRecipe.put(recipeId, ingredients);
+        }
+    }
+
+    private static long[] with(long[] sorted, long value) {
+        int at = Arrays.binarySearch(sorted, value);
+        if (at >= 0) {
+            return sorted;
+        }
+        int insert = -at - 1;
+        var result = new long[sorted.length + 1];
+        System.arraycopy(sorted, 0, result, 0, insert);
+        result[insert] = value;
+        System.arraycopy(sorted, insert, result, insert + 1, sorted.length - insert);
+        return result;
+    }
+
+    private static long[] without(long[] sorted, long value) {
+        int at = Arrays.binarySearch(sorted, value);
+        if (at < 0) {
+            return sorted;
+        }
+        var result = new long[sorted.length - 1];
+        System.arraycopy(sorted, 0, result, 0, at);
+        System.arraycopy(sorted, at + 1, result, at, sorted.length - at - 1);
+        return result;
+    }
+
+    private static long[] sortedDistinct(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+    }
+}
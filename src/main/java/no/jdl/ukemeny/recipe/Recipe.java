@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.time.Instant;
 
 @Entity
@@ -20,6 +22,18 @@ public class Recipe {
 
     private String description;
 
+    @Column(nullable = false)
+    private boolean favorite = false;
+
+    // 1-5, null = ikke vurdert
+    private Integer rating;
+
+    // Normalisert (trim + små bokstaver) av RecipeService
+    @ElementCollection
+    @CollectionTable(name = "recipe_tag", joinColumns = @JoinColumn(name = "recipe_id"))
+    @Column(name = "tag")
+    private Set<String> tags = new HashSet<>();
+
     @OneToMany(mappedBy = "recipe", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<RecipeItem> items = new ArrayList<>();
 
@@ -29,6 +43,10 @@ public class Recipe {
     @Column(name = "updated_at", nullable = false)
     private Instant updatedAt = Instant.now();
 
+    // Økes av RecipeService ved endring, også når bare items eller tagger er byttet ut (se RecipeIdStamp)
+    @Column(nullable = false)
+    private long revision = 0;
+
     protected Recipe() {
         //JPA
     }
@@ -54,11 +72,22 @@ public class Recipe {
     public String getDescription() { return description; }
     public Instant getCreatedAt() { return createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
+    public boolean isFavorite() { return favorite; }
+    public Integer getRating() { return rating; }
+    public Set<String> getTags() { return tags; }
 
     public void clearItems(){
         items.clear();
     }
 
+    void markChanged() { revision++; }
+
     void setName(String name) { this.name = name; }
     void setDescription(String description) { this.description = description; }
+    void setFavorite(boolean favorite) { this.favorite = favorite; }
+    void setRating(Integer rating) { this.rating = rating; }
+    void setTags(Set<String> tags) {
+        this.tags.clear();
+        this.tags.addAll(tags);
+    }
 }
\ No newline at end of file
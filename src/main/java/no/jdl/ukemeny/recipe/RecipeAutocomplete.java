@@ -0,0 +1,91 @@
+package no.jdl.ukemeny.recipe;
+
+import no.jdl.ukemeny.common.AutocompleteIndex;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Autocomplete-indeks over oppskriftsnavn. Bygges ved oppstart og holdes oppdatert av RecipeChangedEvent etter commit.
+ * Endringer fra andre noder fanges opp av en periodisk sjekk: når RecipeCatalog har lastet på nytt, leses navnene
+ * på nytt (i bakgrunnen, ikke i søket).
+ */
+@Component
+public class RecipeAutocomplete {
+
+    private final RecipeRepository recipeRepository;
+    private final RecipeCatalog recipeCatalog;
+    private final AutocompleteIndex index = new AutocompleteIndex();
+    private volatile boolean loaded = false;
+    private long loadedGeneration = -1;  // guarded by this
+
+    public RecipeAutocomplete(RecipeRepository recipeRepository, RecipeCatalog recipeCatalog) {
+        this.recipeRepository = recipeRepository;
+        this.recipeCatalog = recipeCatalog;
+    }
+
+    public List<AutocompleteIndex.Suggestion> suggest(String query, int limit) {
+        if (!loaded) {
+            load();
+        }
+        return index.suggest(query, limit);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        reload(recipeCatalog.generation());
+        loaded = true;
+    }
+
+    @Scheduled(fixedDelayString = "${ukemeny.autocomplete.refresh-interval:PT30S}")
+    public synchronized void refresh() {
+        if (!loaded) {
+            return;
+        }
+        long generation = recipeCatalog.generation();
+        if (generation != loadedGeneration) {
+            reload(generation);
+        }
+    }
+
+    // Kalles med lås, så on() ikke kan blandes med en halvferdig lasting
+    private void reload(long generation) {
+        var names = new HashMap<Long, String>();
+        for (var ref : recipeRepository.findAllNameRefs()) {
+            names.put(ref.recipeId(), ref.name());
+        }
+        index.replaceAll(names);
+        loadedGeneration = generation;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(RecipeChangedEvent event) {
+        // Ikke lastet ennå: lastingen leser uansett ferske data
+        if (!loaded) {
+            return;
+        }
+        var ids = event.recipeIds();
+        switch (event.type()) {
+            case CREATED, UPDATED -> {
+                var found = new HashSet<Long>();
+                for (var ref : recipeRepository.findNameRefsByIdIn(ids)) {
+                    index.put(ref.recipeId(), ref.name());
+                    found.add(ref.recipeId());
+                }
+                // Slettet igjen før vi rakk å lese den
+                ids.stream().filter(id -> !found.contains(id)).forEach(index::remove);
+            }
+            case DELETED -> ids.forEach(index::remove);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package no.jdl.ukemeny.recipe;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.LongStream;
+
+/**
+ * Alle recipeId-er i minnet som en sortert long[], så menygenerering kan trekke oppskrifter
+ * uten å lese hele recipe-tabellen (og boxe hver id) per kall.
+ *
+ * Lastes ved første bruk og holdes oppdatert av RecipeChangedEvent (CREATED/DELETED) etter commit.
+ * Events er bare lokale, så med flere noder sjekkes snapshotet mot databasen med jevne mellomrom.
+ * Hver endring lager en ny array (copy-on-write), så en {@link Snapshot} endrer seg aldri under lesing.
+ *
+ * Hver innlasting fra databasen gir en ny {@link #generation()}. Indeksene over oppskriftsdata
+ * (tagger, ingredienser, likhet, navn) bruker den til å fange opp endringer fra andre noder.
+ */
+@Component
+public class RecipeCatalog {
+
+    /** Uforanderlig utsnitt av katalogen. Indeksene er tette (0..size-1) og sortert på id. */
+    public static final class Snapshot {
+        private final long[] ids;
+
+        private Snapshot(long[] ids) {
+            this.ids = ids;
+        }
+
+        public int size() { return ids.length; }
+        public boolean isEmpty() { return ids.length == 0; }
+        public long idAt(int index) { return ids[index]; }
+
+        /** Tett indeks for id, eller negativ hvis den ikke finnes. */
+        public int indexOf(long id) {
+            return Arrays.binarySearch(ids, id);
+        }
+
+        public boolean contains(long id) {
+            return indexOf(id) >= 0;
+        }
+
+        long maxId() {
+            return ids.length == 0 ? 0 : ids[ids.length - 1];
+        }
+    }
+
+    private final RecipeRepository recipeRepository;
+    private final long refreshIntervalNanos;
+
+    private volatile Snapshot snapshot;
+    // System.nanoTime() da snapshotet sist ble sjekket mot databasen
+    private volatile long checkedAt;
+    // Revisjonssummen databasen skal ha gitt det vi vet om; UNKNOWN etter lokal sletting
+    private long revisions;
+    private volatile long generation;
+
+    private static final long UNKNOWN = -1;
+
+    public RecipeCatalog(RecipeRepository recipeRepository,
+                         @Value("${ukemeny.recipe-catalog.refresh-interval:PT30S}") Duration refreshInterval) {
+        this.recipeRepository = recipeRepository;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+    }
+
+    /**
+     * Gjeldende snapshot. Lokale endringer kommer via events; endringer gjort på andre noder fanges opp
+     * ved at antall og høyeste id sjekkes mot databasen (én liten spørring) når refresh-interval har gått.
+     */
+    public Snapshot snapshot() {
+        var current = snapshot;
+        if (current != null && System.nanoTime() - checkedAt < refreshIntervalNanos) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                load();
+            } else if (System.nanoTime() - checkedAt >= refreshIntervalNanos) {
+                var stamp = recipeRepository.findIdStamp();
+                if (stamp.count() != snapshot.size() || stamp.maxId() != snapshot.maxId()
+                        || stamp.revisions() != revisions) {
+                    load();
+                } else {
+                    checkedAt = System.nanoTime();
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Øker hver gang katalogen leses inn fra databasen: første gang, når stempelet viser at en annen node har
+     * opprettet, endret eller slettet oppskrifter, og ved {@link #reload()}. Indekser som bare får lokale events
+     * laster seg på nytt når den endrer seg. Sjekker databasen på samme måte og med samme intervall som
+     * {@link #snapshot()}.
+     */
+    public long generation() {
+        snapshot();
+        return generation;
+    }
+
+    /** Leser katalogen på nytt, f.eks. når en trukket oppskrift viser seg å være slettet på en annen node. */
+    public synchronized void reload() {
+        load();
+    }
+
+    private void load() {
+        // Stempelet før id-ene: kommer en endring imellom, gir neste sjekk bare én omlasting for mye
+        var stamp = recipeRepository.findIdStamp();
+        // Boxing kun ved lasting; sortert for binærsøk
+        var ids = recipeRepository.findAllIds().stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(ids);
+        snapshot = new Snapshot(ids);
+        revisions = stamp.revisions();
+        generation++;
+        checkedAt = System.nanoTime();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(RecipeChangedEvent event) {
+        // Ikke lastet ennå: første snapshot() leser uansett ferske data
+        if (snapshot == null) {
+            return;
+        }
+
+        // Én ny array per event, også når eventen dekker en hel importbit
+        var ids = snapshot.ids;
+        var changed = event.recipeIds().stream().mapToLong(Long::longValue).toArray();
+        switch (event.type()) {
+            case CREATED -> {
+                // Allerede med hvis snapshotet ble lastet etter commit; distinct tar seg av det
+                var next = LongStream.concat(Arrays.stream(ids), Arrays.stream(changed)).sorted().distinct().toArray();
+                if (next.length != ids.length) snapshot = new Snapshot(next);
+            }
+            case DELETED -> {
+                Arrays.sort(changed);
+                var next = Arrays.stream(ids).filter(id -> Arrays.binarySearch(changed, id) < 0).toArray();
+                if (next.length != ids.length) snapshot = new Snapshot(next);
+                // Vi vet ikke revisjonen til det som ble slettet: neste sjekk laster på nytt
+                revisions = UNKNOWN;
+            }
+            case UPDATED -> {
+                // id-settet endres ikke; hver endring øker revisjonen med én
+                if (revisions != UNKNOWN) revisions += changed.length;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package no.jdl.ukemeny.recipe;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publiseres når oppskrifter opprettes, endres eller slettes. Én event kan dekke mange oppskrifter
+ * (f.eks. en importbit), så lyttere kan oppdatere seg med én spørring for hele settet.
+ * Lyttere som cacher avledede data (f.eks. handlelister) bruker den til invalidering.
+ */
+public record RecipeChangedEvent(Collection<Long> recipeIds, Type type) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    public RecipeChangedEvent(Long recipeId, Type type) {
+        this(List.of(recipeId), type);
+    }
+}
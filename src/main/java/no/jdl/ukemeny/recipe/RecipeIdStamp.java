@@ -0,0 +1,8 @@
+package no.jdl.ukemeny.recipe;
+
+/**
+ * Antall oppskrifter, høyeste id og summen av revisjonene. Endres når oppskrifter opprettes eller slettes
+ * (id-er gjenbrukes aldri) og når en oppskrift endres (revisjonen økes), så RecipeCatalog kan sjekke billig
+ * om andre noder har endret oppskriftene.
+ */
+public record RecipeIdStamp(Long count, Long maxId, Long revisions) {}
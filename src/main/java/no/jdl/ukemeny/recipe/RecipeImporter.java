@@ -0,0 +1,111 @@
+package no.jdl.ukemeny.recipe;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validator;
+import no.jdl.ukemeny.recipe.api.CreateRecipeRequest;
+import no.jdl.ukemeny.recipe.api.RecipeImportLineResult;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Strømmende import av oppskrifter fra NDJSON (én CreateRecipeRequest per linje).
+ *
+ * Leser linje for linje og skriver ett resultat per linje tilbake etter hvert, så verken forespørsel
+ * eller svar holdes i minnet. Gyldige linjer samles i biter på chunk-size som lagres i én transaksjon
+ * via RecipeService.createAll. Feiler en bit, prøves linjene hver for seg så bare de dårlige avvises.
+ * Tomme linjer hoppes over.
+ */
+@Component
+public class RecipeImporter {
+
+    private record Line(int number, CreateRecipeRequest request) {}
+
+    private final RecipeService recipeService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int chunkSize;
+
+    public RecipeImporter(RecipeService recipeService,
+                          ObjectMapper objectMapper,
+                          Validator validator,
+                          @Value("${ukemeny.recipe.import.chunk-size:500}") int chunkSize) {
+        this.recipeService = recipeService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    public void importNdjson(InputStream in, OutputStream out) throws IOException {
+        var reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        var chunk = new ArrayList<Line>(chunkSize);
+        int number = 0;
+        String text;
+        while ((text = reader.readLine()) != null) {
+            number++;
+            if (text.isBlank()) {
+                continue;
+            }
+            CreateRecipeRequest request;
+            try {
+                request = objectMapper.readValue(text, CreateRecipeRequest.class);
+            } catch (JsonProcessingException e) {
+                write(out, new RecipeImportLineResult(number, null, "Invalid JSON: " + e.getOriginalMessage()));
+                continue;
+            }
+            var violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                var message = violations.stream()
+                        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "));
+                write(out, new RecipeImportLineResult(number, null, message));
+                continue;
+            }
+            chunk.add(new Line(number, request));
+            if (chunk.size() >= chunkSize) {
+                save(chunk, out);
+                chunk.clear();
+                out.flush();
+            }
+        }
+        save(chunk, out);
+        out.flush();
+    }
+
+    private void save(List<Line> lines, OutputStream out) throws IOException {
+        if (lines.isEmpty()) {
+            return;
+        }
+        List<Long> ids;
+        try {
+            ids = recipeService.createAll(lines.stream().map(Line::request).toList());
+        } catch (RuntimeException e) {
+            if (lines.size() == 1) {
+                var cause = NestedExceptionUtils.getMostSpecificCause(e);
+                write(out, new RecipeImportLineResult(lines.get(0).number(), null, cause.getMessage()));
+                return;
+            }
+            for (var line : lines) {
+                save(List.of(line), out);
+            }
+            return;
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            write(out, new RecipeImportLineResult(lines.get(i).number(), ids.get(i), null));
+        }
+    }
+
+    private void write(OutputStream out, RecipeImportLineResult result) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(result));
+        out.write('\n');
+    }
+}
@@ -0,0 +1,129 @@
+package no.jdl.ukemeny.recipe;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ingrediensene i hver oppskrift som en bitset (long[]) over en tett ingrediensindeks, så
+ * menygenerering kan regne overlapp mellom oppskrifter med popcount i stedet for spørringer.
+ * Holder også hovedingrediensen (første item) per oppskrift.
+ *
+ * Lastes ved første bruk med én spørring og holdes oppdatert av RecipeChangedEvent etter commit:
+ * opprettet/endret oppskrift leses på nytt (bare den), slettet fjernes.
+ * Bitsetene endres aldri etter at de er publisert, så lesere trenger ingen lås.
+ *
+ * Events er bare lokale: når {@link RecipeCatalog#generation()} endrer seg (andre noder har endret
+ * oppskrifter) lastes indeksen på nytt inn i nye maps, som byttes inn samlet.
+ */
+@Component
+public class RecipeIngredientIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    private final RecipeItemRepository recipeItemRepository;
+    private final RecipeCatalog recipeCatalog;
+
+    // ingredientId -> bitposisjon. Vokser bare, også over omlastinger, så bitset lest før og etter en
+    // omlasting kan sammenlignes; ubrukte ingredienser beholder posisjonen sin. Guarded by this.
+    private final Map<Long, Integer> ingredientBits = new HashMap<>();
+    private volatile Map<Long, long[]> byRecipe = new ConcurrentHashMap<>();
+    private volatile Map<Long, Long> mainByRecipe = new ConcurrentHashMap<>();
+    // RecipeCatalog-generasjonen indeksen ble lastet for; -1 = ikke lastet
+    private volatile long loadedGeneration = -1;
+
+    public RecipeIngredientIndex(RecipeItemRepository recipeItemRepository, RecipeCatalog recipeCatalog) {
+        this.recipeItemRepository = recipeItemRepository;
+        this.recipeCatalog = recipeCatalog;
+    }
+
+    /** Ingrediensene i oppskriften som bitset; tom hvis oppskriften ikke har items. Må ikke endres. */
+    public long[] bits(long recipeId) {
+        ensureLoaded();
+        return byRecipe.getOrDefault(recipeId, EMPTY);
+    }
+
+    /** Ingrediensen i oppskriftens første item, eller null hvis den ikke har items. */
+    public Long mainIngredient(long recipeId) {
+        ensureLoaded();
+        return mainByRecipe.get(recipeId);
+    }
+
+    /** Antall ingredienser to oppskrifter har felles. */
+    public static int overlap(long[] a, long[] b) {
+        int n = Math.min(a.length, b.length);
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(RecipeChangedEvent event) {
+        // Ikke lastet ennå: første bits() leser uansett ferske data
+        if (loadedGeneration < 0) {
+            return;
+        }
+        var ids = event.recipeIds();
+        switch (event.type()) {
+            case CREATED, UPDATED -> RecipeIngredientRef
+                    .groupByRecipe(ids, recipeItemRepository.findIngredientRefsByRecipeIdIn(ids))
+                    .forEach(this::put);
+            case DELETED -> ids.forEach(id -> {
+                byRecipe.remove(id);
+                mainByRecipe.remove(id);
+            });
+        }
+    }
+
+    private void ensureLoaded() {
+        long generation = recipeCatalog.generation();
+        if (generation != loadedGeneration) {
+            load(generation);
+        }
+    }
+
+    private synchronized void load(long generation) {
+        if (loadedGeneration == generation) {
+            return;
+        }
+        // Nye maps, så lesere ser enten hele den gamle eller hele den nye indeksen
+        var grouped = RecipeIngredientRef.groupByRecipe(List.of(), recipeItemRepository.findAllIngredientRefs());
+        var nextByRecipe = new ConcurrentHashMap<Long, long[]>();
+        var nextMain = new ConcurrentHashMap<Long, Long>();
+        grouped.forEach((recipeId, ingredientIds) -> put(nextByRecipe, nextMain, recipeId, ingredientIds));
+        byRecipe = nextByRecipe;
+        mainByRecipe = nextMain;
+        loadedGeneration = generation;
+    }
+
+    private void put(Long recipeId, List<Long> ingredientIds) {
+        put(byRecipe, mainByRecipe, recipeId, ingredientIds);
+    }
+
+    // ingredientIds i item-rekkefølge (se RecipeItemRepository). Kalles med lås.
+    private void put(Map<Long, long[]> bitsTarget, Map<Long, Long> mainTarget, Long recipeId, List<Long> ingredientIds) {
+        if (ingredientIds.isEmpty()) {
+            bitsTarget.remove(recipeId);
+            mainTarget.remove(recipeId);
+            return;
+        }
+        mainTarget.put(recipeId, ingredientIds.get(0));
+        var positions = new int[ingredientIds.size()];
+        int max = 0;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = ingredientBits.computeIfAbsent(ingredientIds.get(i), k -> ingredientBits.size());
+            max = Math.max(max, positions[i]);
+        }
+        var bits = new long[(max >>> 6) + 1];
+        for (int p : positions) {
+            bits[p >>> 6] |= 1L << p;
+        }
+        bitsTarget.put(recipeId, bits);
+    }
+}
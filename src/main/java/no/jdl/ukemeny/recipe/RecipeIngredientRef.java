@@ -0,0 +1,24 @@
+package no.jdl.ukemeny.recipe;
+
+import java.util.*;
+
+/**
+ * Én (oppskrift, ingrediens)-kobling fra recipe_item, uten mengde og enhet.
+ */
+public record RecipeIngredientRef(Long recipeId, Long ingredientId) {
+
+    /**
+     * Ingrediens-id-er per oppskrift, i samme rekkefølge som refs. Alle recipeIds er med, også de uten
+     * items (tom liste), så lyttere kan skille "har ingen ingredienser lenger" fra "ikke spurt etter".
+     */
+    static Map<Long, List<Long>> groupByRecipe(Collection<Long> recipeIds, List<RecipeIngredientRef> refs) {
+        var grouped = new HashMap<Long, List<Long>>();
+        for (var id : recipeIds) {
+            grouped.put(id, new ArrayList<>());
+        }
+        for (var ref : refs) {
+            grouped.computeIfAbsent(ref.recipeId(), k -> new ArrayList<>()).add(ref.ingredientId());
+        }
+        return grouped;
+    }
+}
@@ -1,6 +1,27 @@
 package no.jdl.ukemeny.recipe;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface RecipeItemRepository extends JpaRepository<RecipeItem, Long> {
-}
\ No newline at end of file
+
+    // Sortert på item-id, så første ref per oppskrift er hovedingrediensen (se RecipeIngredientIndex).
+    // Samme ingrediens kan komme flere ganger (ulike enheter).
+    @Query("""
+        select new no.jdl.ukemeny.recipe.RecipeIngredientRef(ri.recipe.id, ri.ingredient.id)
+        from RecipeItem ri
+        order by ri.id
+        """)
+    List<RecipeIngredientRef> findAllIngredientRefs();
+
+    @Query("""
+        select new no.jdl.ukemeny.recipe.RecipeIngredientRef(ri.recipe.id, ri.ingredient.id)
+        from RecipeItem ri
+        where ri.recipe.id in :recipeIds
+        order by ri.id
+        """)
+    List<RecipeIngredientRef> findIngredientRefsByRecipeIdIn(Collection<Long> recipeIds);
+}
@@ -0,0 +1,79 @@
+package no.jdl.ukemeny.recipe;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Skriver mange oppskrifter med JDBC-batching, for import der én Hibernate-INSERT per rad blir for tregt.
+ *
+ * Samme grep som WeeklyMenuJdbcWriter: id-er reserveres fra IDENTITY-sekvensene i én spørring og
+ * settes eksplisitt, så recipe, recipe_tag og recipe_item kan batches hver for seg.
+ * Må kjøres i en transaksjon; JdbcTemplate bruker samme connection som JPA.
+ */
+@Component
+public class RecipeJdbcWriter {
+
+    public record NewItem(long ingredientId, BigDecimal amount, String unit, String note) {}
+
+    public record NewRecipe(String name, String description, Set<String> tags, List<NewItem> items) {}
+
+    private final JdbcTemplate jdbc;
+
+    public RecipeJdbcWriter(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Setter inn oppskriftene med tagger og items og returnerer id-ene i samme rekkefølge. */
+    public List<Long> insert(List<NewRecipe> recipes) {
+        if (recipes.isEmpty()) {
+            return List.of();
+        }
+
+        int itemCount = 0;
+        for (var r : recipes) itemCount += r.items().size();
+
+        var recipeIds = reserveIds("recipe", recipes.size());
+        var itemIds = reserveIds("recipe_item", itemCount);
+
+        var recipeArgs = new ArrayList<Object[]>(recipes.size());
+        var tagArgs = new ArrayList<Object[]>();
+        var itemArgs = new ArrayList<Object[]>(itemCount);
+        int i = 0;
+        for (int r = 0; r < recipes.size(); r++) {
+            var recipe = recipes.get(r);
+            var recipeId = recipeIds.get(r);
+            recipeArgs.add(new Object[]{recipeId, recipe.name(), recipe.description()});
+            for (var tag : recipe.tags()) {
+                tagArgs.add(new Object[]{recipeId, tag});
+            }
+            for (var item : recipe.items()) {
+                itemArgs.add(new Object[]{
+                        itemIds.get(i++), recipeId, item.ingredientId(), item.amount(), item.unit(), item.note()
+                });
+            }
+        }
+
+        jdbc.batchUpdate("insert into recipe (id, name, description) values (?, ?, ?)", recipeArgs);
+        jdbc.batchUpdate("insert into recipe_tag (recipe_id, tag) values (?, ?)", tagArgs);
+        jdbc.batchUpdate("""
+                insert into recipe_item (id, recipe_id, ingredient_id, amount, unit, note)
+                values (?, ?, ?, ?, ?, ?)
+                """, itemArgs);
+
+        return recipeIds;
+    }
+
+    private List<Long> reserveIds(String table, int count) {
+        if (count == 0) {
+            return List.of();
+        }
+        return jdbc.queryForList(
+                "select nextval(pg_get_serial_sequence(?, 'id')) from generate_series(1, ?)",
+                Long.class, table, count);
+    }
+}
@@ -0,0 +1,6 @@
+package no.jdl.ukemeny.recipe;
+
+/**
+ * (id, navn) for en oppskrift, uten å laste entiteten.
+ */
+public record RecipeNameRef(Long recipeId, String name) {}
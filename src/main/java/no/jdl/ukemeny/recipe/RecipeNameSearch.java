@@ -0,0 +1,50 @@
+package no.jdl.ukemeny.recipe;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Navnesøk rangert på trigram-likhet (pg_trgm), med keyset-paginering på (score, id).
+ * Alt gjøres i databasen via GIN-indeksen fra V18.
+ */
+@Component
+public class RecipeNameSearch {
+
+    public record Hit(long id, String name, float score) {}
+
+    private static final String PG_SEARCH = """
+            select id, name, score from (
+                select id, name, similarity(lower(name), ?) as score
+                from recipe
+                where lower(name) like ? escape '\\' or lower(name) % ?
+            ) m
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    public RecipeNameSearch(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Inntil limit treff, best først (score desc, id desc). Med after gis kun treff som kommer etter det treffet.
+     */
+    public List<Hit> search(String query, Hit after, int limit) {
+        var q = query.trim().toLowerCase(Locale.ROOT);
+        var like = "%" + q.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        var mapper = (org.springframework.jdbc.core.RowMapper<Hit>) (rs, i) ->
+                new Hit(rs.getLong("id"), rs.getString("name"), rs.getFloat("score"));
+
+        if (after == null) {
+            return jdbc.query(PG_SEARCH + "order by score desc, id desc limit ?", mapper, q, like, q, limit);
+        }
+        return jdbc.query(PG_SEARCH + """
+                        where score < ? or (score = ? and id < ?)
+                        order by score desc, id desc
+                        limit ?
+                        """, mapper,
+                q, like, q, after.score(), after.score(), after.id(), limit);
+    }
+}
@@ -0,0 +1,6 @@
+package no.jdl.ukemeny.recipe;
+
+/**
+ * Publiseres når favoritt/rating for en oppskrift endres (påvirker kun vekting ved generering).
+ */
+public record RecipePreferenceChangedEvent(Long recipeId) {}
@@ -2,11 +2,11 @@ package no.jdl.ukemeny.recipe;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface RecipeRepository extends JpaRepository<Recipe, Long> {
-    List<Recipe> findTop10ByNameContainingIgnoreCaseOrderByIdDesc(String name);
     @Query("""
         select distinct  r from Recipe r
         left join fetch r.items i
@@ -18,6 +18,47 @@ public interface RecipeRepository extends JpaRepository<Recipe, Long> {
     @Query("select r.id from Recipe r")
     java.util.List<Long> findAllIds();
 
+    @Query("select r.id from Recipe r where r.id in :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    @Query("select new no.jdl.ukemeny.recipe.RecipeIdStamp(count(r), coalesce(max(r.id), 0), coalesce(sum(r.revision), 0)) from Recipe r")
+    RecipeIdStamp findIdStamp();
+
+    @Query("select new no.jdl.ukemeny.recipe.RecipeNameRef(r.id, r.name) from Recipe r")
+    List<RecipeNameRef> findAllNameRefs();
+
+    @Query("select new no.jdl.ukemeny.recipe.RecipeNameRef(r.id, r.name) from Recipe r where r.id in :ids")
+    List<RecipeNameRef> findNameRefsByIdIn(Collection<Long> ids);
+
+    @Query("select new no.jdl.ukemeny.recipe.RecipeTagRef(r.id, t) from Recipe r left join r.tags t")
+    List<RecipeTagRef> findAllTagRefs();
+
+    @Query("select distinct t from Recipe r join r.tags t where t in :tags")
+    List<String> findTagsIn(Collection<String> tags);
+
+    @Query("select count(distinct t) from Recipe r join r.tags t")
+    long countDistinctTags();
+
+    @Query("select t from Recipe r join r.tags t where r.id = :recipeId")
+    List<String> findTagsByRecipeId(Long recipeId);
+
+    @Query("select new no.jdl.ukemeny.recipe.RecipeTagRef(r.id, t) from Recipe r left join r.tags t where r.id in :recipeIds")
+    List<RecipeTagRef> findTagRefsByRecipeIdIn(Collection<Long> recipeIds);
+
+    // Favoritt/rating + dager siden sist laget for alle oppskrifter (bygger vekttabellen for generering)
+    @Query(value = """
+        select r.id                                as "recipeId",
+               r.favorite                          as "favorite",
+               cast(r.rating as integer)           as "rating",
+               cast(cast(:today as date) - max(wm.week_start_date + (e.day_of_week - 1)) as integer) as "daysSinceCooked"
+        from recipe r
+        left join weekly_menu_entry e on e.recipe_id = r.id
+        left join weekly_menu wm on wm.id = e.weekly_menu_id
+                                and wm.week_start_date + (e.day_of_week - 1) <= cast(:today as date)
+        group by r.id, r.favorite, r.rating
+        """, nativeQuery = true)
+    List<RecipeWeightRow> findWeightRows(java.time.LocalDate today);
+
     @Query("""
         select distinct r from Recipe r
         left join fetch r.items i
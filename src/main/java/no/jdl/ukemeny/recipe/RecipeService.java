@@ -1,17 +1,27 @@
 package no.jdl.ukemeny.recipe;
 
 import no.jdl.ukemeny.ingredient.IngredientService;
+import no.jdl.ukemeny.recipe.api.CreateRecipeItemRequest;
 import no.jdl.ukemeny.recipe.api.CreateRecipeRequest;
 import no.jdl.ukemeny.recipe.api.RecipeDetailsResponse;
+import no.jdl.ukemeny.recipe.api.RecipeIngredientMatchResponse;
 import no.jdl.ukemeny.recipe.api.RecipeItemResponse;
+import no.jdl.ukemeny.recipe.api.RecipeSearchResponse;
+import no.jdl.ukemeny.recipe.api.RecipeSummary;
+import no.jdl.ukemeny.recipe.api.SimilarRecipeResponse;
 import no.jdl.ukemeny.common.NotFoundException;
+import no.jdl.ukemeny.recipe.api.UpdateRecipePreferencesRequest;
 import no.jdl.ukemeny.recipe.api.UpdateRecipeRequest;
 
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -19,10 +29,32 @@ public class RecipeService {
 
     private final RecipeRepository recipeRepository;
     private final IngredientService ingredientService;
+    private final RecipeSimilarityIndex similarityIndex;
+    private final RecipeTagIndex tagIndex;
+    private final RecipeNameSearch nameSearch;
+    private final RecipeAutocomplete autocomplete;
+    private final IngredientRecipeIndex ingredientIndex;
+    private final RecipeJdbcWriter jdbcWriter;
+    private final ApplicationEventPublisher events;
 
-    public RecipeService(RecipeRepository recipeRepository, IngredientService ingredientService) {
+    public RecipeService(RecipeRepository recipeRepository,
+                         IngredientService ingredientService,
+                         RecipeSimilarityIndex similarityIndex,
+                         RecipeTagIndex tagIndex,
+                         RecipeNameSearch nameSearch,
+                         RecipeAutocomplete autocomplete,
+                         IngredientRecipeIndex ingredientIndex,
+                         RecipeJdbcWriter jdbcWriter,
+                         ApplicationEventPublisher events) {
         this.recipeRepository = recipeRepository;
         this.ingredientService = ingredientService;
+        this.similarityIndex = similarityIndex;
+        this.tagIndex = tagIndex;
+        this.nameSearch = nameSearch;
+        this.autocomplete = autocomplete;
+        this.ingredientIndex = ingredientIndex;
+        this.jdbcWriter = jdbcWriter;
+        this.events = events;
     }
     @Transactional
     public void update(Long id, UpdateRecipeRequest req){
@@ -32,12 +64,18 @@ public class RecipeService {
         // Oppdatert "simple" felter
         recipe.setName(req.name());
         recipe.setDescription(req.description());
+        recipe.markChanged();
+        if (req.tags() != null) {
+            recipe.setTags(reserveTags(req.tags()));
+        }
 
         // Erstatt items
         recipe.clearItems();
 
+        var ingredients = ingredientService.getOrCreateAll(
+                req.items().stream().map(CreateRecipeItemRequest::ingredientName).toList());
         for (var itemReq : req.items()) {
-            var ingredient = ingredientService.getOrCreate(itemReq.ingredientName());
+            var ingredient = ingredients.get(itemReq.ingredientName());
             var item = new RecipeItem(
                     recipe,
                     ingredient,
@@ -49,13 +87,17 @@ public class RecipeService {
         }
 
         recipeRepository.save(recipe);
+        events.publishEvent(new RecipeChangedEvent(id, RecipeChangedEvent.Type.UPDATED));
     }
     @Transactional
     public Long create(CreateRecipeRequest req) {
         var recipe = new Recipe(req.name(), req.description());
+        recipe.setTags(reserveTags(req.tags()));
 
-        for (var itemReq : req.items()){
-            var ingredient = ingredientService.getOrCreate(itemReq.ingredientName());
+        var ingredients = ingredientService.getOrCreateAll(
+                req.items().stream().map(CreateRecipeItemRequest::ingredientName).toList());
+        for (var itemReq : req.items()) {
+            var ingredient = ingredients.get(itemReq.ingredientName());
             var item = new RecipeItem(
                     recipe,
                     ingredient,
@@ -66,7 +108,55 @@ public class RecipeService {
             recipe.addItem(item);
         }
 
-        return recipeRepository.save(recipe).getId();
+        var id = recipeRepository.save(recipe).getId();
+        events.publishEvent(new RecipeChangedEvent(id, RecipeChangedEvent.Type.CREATED));
+        return id;
+    }
+
+    /**
+     * Oppretter mange oppskrifter samlet: alle ingrediensnavn løses i én spørring, og oppskrifter,
+     * tagger og items settes inn med JDBC-batching. Returnerer id-ene i samme rekkefølge.
+     */
+    @Transactional
+    public List<Long> createAll(List<CreateRecipeRequest> requests) {
+        var ingredientIds = ingredientService.resolveAll(requests.stream()
+                .flatMap(r -> r.items().stream())
+                .map(CreateRecipeItemRequest::ingredientName)
+                .toList());
+
+        var recipes = requests.stream()
+                .map(r -> new RecipeJdbcWriter.NewRecipe(r.name(), r.description(), RecipeTagIndex.normalize(r.tags()),
+                        r.items().stream()
+                                .map(i -> new RecipeJdbcWriter.NewItem(
+                                        ingredientIds.get(i.ingredientName()), i.amount(), i.unit(), i.note()))
+                                .toList()))
+                .toList();
+        // Taggegrensen sjekkes én gang for hele biten
+        tagIndex.reserve(recipes.stream().flatMap(r -> r.tags().stream()).collect(Collectors.toSet()));
+
+        var ids = jdbcWriter.insert(recipes);
+        // Én event for hele biten, så indeksene oppdateres med én spørring i stedet for én per oppskrift
+        if (!ids.isEmpty()) {
+            events.publishEvent(new RecipeChangedEvent(ids, RecipeChangedEvent.Type.CREATED));
+        }
+        return ids;
+    }
+
+    @Transactional
+    public void updatePreferences(Long id, UpdateRecipePreferencesRequest req) {
+        var recipe = recipeRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Recipe not found: " + id));
+
+        if (req.favorite() != null) recipe.setFavorite(req.favorite());
+        if (req.rating() != null) recipe.setRating(req.rating());
+
+        events.publishEvent(new RecipePreferenceChangedEvent(id));
+    }
+
+    private Set<String> reserveTags(List<String> tags) {
+        var normalized = RecipeTagIndex.normalize(tags);
+        tagIndex.reserve(normalized);
+        return normalized;
     }
 
     @Transactional
@@ -75,9 +165,95 @@ public class RecipeService {
             throw new NotFoundException(("Recipe not found: " + id));
         }
         recipeRepository.deleteById(id);
+        events.publishEvent(new RecipeChangedEvent(id, RecipeChangedEvent.Type.DELETED));
+    }
+    /**
+     * Navnesøk rangert på likhet (mest lik først), inkludert små skrivefeil. cursor er nextCursor fra forrige side.
+     */
+    public RecipeSearchResponse search(String name, int limit, String cursor) {
+        if (limit < 1 || limit > 50) {
+            throw new IllegalArgumentException("limit must be between 1 and 50");
+        }
+        var after = (cursor == null || cursor.isBlank()) ? null : decodeCursor(cursor);
+
+        // Én ekstra rad forteller om det finnes en side til
+        var hits = nameSearch.search(name, after, limit + 1);
+        var hasMore = hits.size() > limit;
+        var page = hasMore ? hits.subList(0, limit) : hits;
+
+        var items = page.stream().map(h -> new RecipeSummary(h.id(), h.name())).toList();
+        var nextCursor = hasMore ? encodeCursor(page.get(page.size() - 1)) : null;
+        return new RecipeSearchResponse(items, nextCursor);
     }
-    public List<Recipe> searchByName(String name) {
-        return recipeRepository.findTop10ByNameContainingIgnoreCaseOrderByIdDesc(name.trim());
+
+    /** Type-ahead fra indeksen i minnet (ingen DB-spørring). */
+    public List<RecipeSummary> autocomplete(String query, int limit) {
+        if (limit < 1 || limit > 50) {
+            throw new IllegalArgumentException("limit must be between 1 and 50");
+        }
+        return autocomplete.suggest(query, limit).stream()
+                .map(s -> new RecipeSummary(s.id(), s.name()))
+                .toList();
+    }
+
+    /**
+     * "Hva kan jeg lage?": oppskrifter rangert på hvor mange av ingrediensene de bruker, fra den inverterte
+     * indeksen i minnet. Med all=true må oppskriften bruke alle.
+     */
+    public List<RecipeIngredientMatchResponse> byIngredients(List<Long> ingredientIds, boolean all,
+                                                             double minCoverage, int limit) {
+        if (ingredientIds == null || ingredientIds.isEmpty() || ingredientIds.size() > 100) {
+            throw new IllegalArgumentException("ids must contain between 1 and 100 ingredient ids");
+        }
+        if (minCoverage < 0 || minCoverage > 1) {
+            throw new IllegalArgumentException("minCoverage must be between 0 and 1");
+        }
+        if (limit < 1 || limit > 100) {
+            throw new IllegalArgumentException("limit must be between 1 and 100");
+        }
+        return ingredientIndex.match(ingredientIds, all, minCoverage, limit).stream()
+                .map(m -> new RecipeIngredientMatchResponse(m.recipeId(), m.name(), m.matched(), m.total(), m.coverage()))
+                .toList();
+    }
+
+    // Cursor = (score, id) for siste treff; Float.toString gir eksakt samme float tilbake
+    private static String encodeCursor(RecipeNameSearch.Hit hit) {
+        var raw = hit.score() + ":" + hit.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static RecipeNameSearch.Hit decodeCursor(String cursor) {
+        try {
+            var raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            return new RecipeNameSearch.Hit(Long.parseLong(raw.substring(sep + 1)), null,
+                    Float.parseFloat(raw.substring(0, sep)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public List<SimilarRecipeResponse> similar(Long id, double minSimilarity, int limit) {
+        if (minSimilarity < 0 || minSimilarity > 1) {
+            throw new IllegalArgumentException("minSimilarity must be between 0 and 1");
+        }
+        if (limit < 1 || limit > 100) {
+            throw new IllegalArgumentException("limit must be between 1 and 100");
+        }
+        if (!recipeRepository.existsById(id)) {
+            throw new NotFoundException("Recipe not found: " + id);
+        }
+
+        var matches = similarityIndex.similarTo(id, minSimilarity, limit);
+        var names = recipeRepository.findAllById(matches.stream().map(RecipeSimilarityIndex.Match::recipeId).toList())
+                .stream()
+                .collect(Collectors.toMap(Recipe::getId, Recipe::getName));
+
+        // Indeksen oppdateres etter commit, så en nettopp slettet oppskrift kan fortsatt dukke opp
+        return matches.stream()
+                .filter(m -> names.containsKey(m.recipeId()))
+                .map(m -> new SimilarRecipeResponse(m.recipeId(), names.get(m.recipeId()), m.similarity()))
+                .toList();
     }
 
     public RecipeDetailsResponse getById(Long id) {
@@ -99,7 +275,11 @@ public class RecipeService {
                 recipe.getId(),
                 recipe.getName(),
                 recipe.getDescription(),
-                items
+                items,
+                recipe.isFavorite(),
+                recipe.getRating(),
+                // Egen spørring: fetch join sammen med items (en bag) ville duplisert items
+                recipeRepository.findTagsByRecipeId(id).stream().sorted().toList()
         );
     }
 }
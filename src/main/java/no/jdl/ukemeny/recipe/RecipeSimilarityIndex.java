@@ -0,0 +1,194 @@
+package no.jdl.ukemeny.recipe;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MinHash-signatur per oppskrift over ingrediens-settet, med LSH-bøtter for raske "ligner på"-oppslag.
+ *
+ * Andelen like posisjoner i to signaturer estimerer Jaccard-likheten mellom ingrediens-settene
+ * (|A ∩ B| / |A ∪ B|), så "Taco", "Taco bowl" og "Taco rester" havner nær 1 uten at vi ser på navnene.
+ * Signaturen deles i BANDS bånd à ROWS verdier; oppskrifter som er like i minst ett bånd er kandidater.
+ * Med 32 x 2 blir de fleste par over ~0.3 funnet, mens par som bare deler salt og pepper sjelden blir det.
+ *
+ * Lastes ved første bruk med én spørring og holdes oppdatert av RecipeChangedEvent etter commit.
+ * Signaturer endres aldri etter at de er publisert; bøttene beskyttes av lås på indeksen.
+ *
+ * Events er bare lokale: når {@link RecipeCatalog#generation()} endrer seg (andre noder har endret
+ * oppskrifter) bygges signaturer og bøtter på nytt fra databasen og byttes inn samlet.
+ */
+@Component
+public class RecipeSimilarityIndex {
+
+    public record Match(long recipeId, double similarity) {}
+
+    static final int HASHES = 64;
+    private static final int BANDS = 32;
+    private static final int ROWS = HASHES / BANDS;
+
+    private static final long[] SEEDS = new long[HASHES];
+    static {
+        var rng = new SplittableRandom(0x5EEDL);
+        for (int i = 0; i < HASHES; i++) SEEDS[i] = rng.nextLong();
+    }
+
+    private final RecipeItemRepository recipeItemRepository;
+    private final RecipeCatalog recipeCatalog;
+
+    private volatile Map<Long, int[]> signatures = new ConcurrentHashMap<>();
+    // båndnøkkel -> oppskrifter med samme verdier i det båndet. Guarded by this.
+    private Map<Long, Set<Long>> buckets = new HashMap<>();
+    // RecipeCatalog-generasjonen indeksen ble lastet for; -1 = ikke lastet
+    private volatile long loadedGeneration = -1;
+
+    public RecipeSimilarityIndex(RecipeItemRepository recipeItemRepository, RecipeCatalog recipeCatalog) {
+        this.recipeItemRepository = recipeItemRepository;
+        this.recipeCatalog = recipeCatalog;
+    }
+
+    /** Estimert Jaccard-likhet mellom to oppskrifter; 0 hvis en av dem ikke har ingredienser. */
+    public double similarity(long a, long b) {
+        return similarity(signature(a), signature(b));
+    }
+
+    /** MinHash-signaturen til oppskriften, eller null hvis den ikke har ingredienser. Må ikke endres. */
+    public int[] signature(long recipeId) {
+        long generation = recipeCatalog.generation();
+        if (generation != loadedGeneration) {
+            load(generation);
+        }
+        return signatures.get(recipeId);
+    }
+
+    public static double similarity(int[] a, int[] b) {
+        if (a == null || b == null) {
+            return 0.0;
+        }
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) equal++;
+        }
+        return (double) equal / HASHES;
+    }
+
+    /**
+     * Oppskrifter som ligner på recipeId med minst minSimilarity (estimert), mest like først.
+     * Bare LSH-kandidater sjekkes, så kostnaden avhenger av bøttestørrelsen og ikke av katalogen.
+     */
+    public List<Match> similarTo(long recipeId, double minSimilarity, int limit) {
+        var signature = signature(recipeId);
+        if (signature == null) {
+            return List.of();
+        }
+
+        var candidates = new HashSet<Long>();
+        synchronized (this) {
+            for (int band = 0; band < BANDS; band++) {
+                var bucket = buckets.get(bandKey(signature, band));
+                if (bucket != null) candidates.addAll(bucket);
+            }
+        }
+        candidates.remove(recipeId);
+
+        var matches = new ArrayList<Match>();
+        var current = signatures;
+        for (long candidate : candidates) {
+            double s = similarity(signature, current.get(candidate));
+            if (s >= minSimilarity) {
+                matches.add(new Match(candidate, s));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(Match::similarity).reversed().thenComparingLong(Match::recipeId));
+        return matches.size() > limit ? matches.subList(0, limit) : matches;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(RecipeChangedEvent event) {
+        // Ikke lastet ennå: første oppslag leser uansett ferske data
+        if (loadedGeneration < 0) {
+            return;
+        }
+        var ids = event.recipeIds();
+        switch (event.type()) {
+            case CREATED, UPDATED -> RecipeIngredientRef
+                    .groupByRecipe(ids, recipeItemRepository.findIngredientRefsByRecipeIdIn(ids))
+                    .forEach((recipeId, ingredientIds) -> put(signatures, buckets, recipeId, ingredientIds));
+            case DELETED -> ids.forEach(recipeId -> remove(signatures, buckets, recipeId));
+        }
+    }
+
+    private synchronized void load(long generation) {
+        if (loadedGeneration == generation) {
+            return;
+        }
+        // Nye maps, så oppslag ser enten hele den gamle eller hele den nye indeksen
+        var nextSignatures = new ConcurrentHashMap<Long, int[]>();
+        var nextBuckets = new HashMap<Long, Set<Long>>();
+        RecipeIngredientRef.groupByRecipe(List.of(), recipeItemRepository.findAllIngredientRefs())
+                .forEach((recipeId, ingredientIds) -> put(nextSignatures, nextBuckets, recipeId, ingredientIds));
+        signatures = nextSignatures;
+        buckets = nextBuckets;
+        loadedGeneration = generation;
+    }
+
+    // Kalles med lås
+    private static void put(Map<Long, int[]> signatures, Map<Long, Set<Long>> buckets,
+                            Long recipeId, List<Long> ingredientIds) {
+        remove(signatures, buckets, recipeId);
+        if (ingredientIds.isEmpty()) {
+            return;
+        }
+        var signature = signatureOf(ingredientIds);
+        signatures.put(recipeId, signature);
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfAbsent(bandKey(signature, band), k -> new HashSet<>()).add(recipeId);
+        }
+    }
+
+    private static void remove(Map<Long, int[]> signatures, Map<Long, Set<Long>> buckets, Long recipeId) {
+        var old = signatures.remove(recipeId);
+        if (old == null) {
+            return;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(old, band);
+            var bucket = buckets.get(key);
+            if (bucket != null && bucket.remove(recipeId) && bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    static int[] signatureOf(Collection<Long> ingredientIds) {
+        var signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long id : ingredientIds) {
+            for (int i = 0; i < HASHES; i++) {
+                int h = (int) mix(id ^ SEEDS[i]);
+                if (h < signature[i]) signature[i] = h;
+            }
+        }
+        return signature;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long h = band;
+        for (int r = 0; r < ROWS; r++) {
+            h = h * 0x9E3779B97F4A7C15L + signature[band * ROWS + r];
+        }
+        return mix(h);
+    }
+
+    // MurmurHash3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85A53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,215 @@
+package no.jdl.ukemeny.recipe;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+
+/**
+ * Tagger per oppskrift som en long-maske: hver distinkte tag får en bitposisjon (maks 64),
+ * så filtrering ved generering er bitvis AND over en long[] i stedet for en spørring.
+ *
+ * Grensen på 64 håndheves mot databasen ({@link #reserve}), ikke mot det denne noden har sett.
+ * Bitene deles ut først når RecipeChangedEvent kommer etter commit, så en tag fra en transaksjon som
+ * rulles tilbake bruker aldri opp en bit. Er alle bitene brukt av tagger som ikke finnes lenger,
+ * lastes indeksen på nytt fra databasen med tette bitposisjoner.
+ *
+ * Events oppdaterer bare de berørte oppskriftene. Endringer fra andre noder fanges opp ved at indeksen
+ * lastes på nytt når {@link RecipeCatalog#generation()} endrer seg. En oppskrift i katalogen som indeksen
+ * ikke kjenner, er markert i {@link View#unknown()} og regnes som ekskludert av TagFilter, så en
+ * "aldri svin"-regel aldri slipper gjennom en oppskrift vi ikke vet taggene til.
+ *
+ * {@link #view} gir biter og masker fra samme tilstand, så en ny nummerering underveis ikke kan blande dem.
+ */
+@Component
+public class RecipeTagIndex {
+
+    public static final int MAX_TAGS = Long.SIZE;
+    public static final int MAX_TAG_LENGTH = 50;
+
+    // Første nøkkel i pg_advisory_xact_lock(int, int), som i WeekLocks
+    private static final int LOCK_NAMESPACE = 0x554B5447; // "UKTG"
+
+    /**
+     * Biter og masker (i katalogrekkefølge) fra samme tilstand, pluss katalogindeksene indeksen ikke
+     * kjenner taggene til. Ingen av delene må endres.
+     */
+    public record View(RecipeCatalog.Snapshot catalog, Map<String, Integer> bits, long[] masks, BitSet unknown) {
+
+        /** Biten for en (normalisert) tag, eller 0 hvis ingen oppskrift har den. */
+        public long bit(String normalizedTag) {
+            var position = bits.get(normalizedTag);
+            return (position == null) ? 0L : 1L << position;
+        }
+    }
+
+    private record Aligned(long modification, View view) {}
+
+    private final RecipeRepository recipeRepository;
+    private final RecipeCatalog recipeCatalog;
+    private final JdbcTemplate jdbc;
+
+    // Endres bare under lås på indeksen. bits == null: ikke lastet, eller må nummereres på nytt.
+    private Map<String, Integer> bits;
+    // Alle oppskrifter indeksen kjenner, også de uten tagger (maske 0)
+    private Map<Long, Long> byRecipe;
+    private RecipeCatalog.Snapshot reloadedFor;
+    private volatile long loadedGeneration = -1;
+    // Økes ved hver endring, så en bufret View kan gjenbrukes til noe endrer seg
+    private volatile long modification;
+    private volatile Aligned aligned;
+
+    public RecipeTagIndex(RecipeRepository recipeRepository, RecipeCatalog recipeCatalog, JdbcTemplate jdbc) {
+        this.recipeRepository = recipeRepository;
+        this.recipeCatalog = recipeCatalog;
+        this.jdbc = jdbc;
+    }
+
+    /** Trim + små bokstaver; tomme fjernes og duplikater slås sammen. */
+    public static Set<String> normalize(Collection<String> tags) {
+        var normalized = new TreeSet<String>();
+        if (tags == null) {
+            return normalized;
+        }
+        for (var tag : tags) {
+            if (tag == null || tag.isBlank()) continue;
+            var t = tag.trim().toLowerCase(Locale.ROOT);
+            if (t.length() > MAX_TAG_LENGTH) {
+                throw new IllegalArgumentException("Tag too long (max " + MAX_TAG_LENGTH + "): " + t);
+            }
+            normalized.add(t);
+        }
+        return normalized;
+    }
+
+    /**
+     * Sjekker at taggene får plass før en oppskrift lagres: gir IllegalArgumentException hvis databasen
+     * da ville fått mer enn {@link #MAX_TAGS} distinkte tagger. Nye tagger tar en transaksjonsbundet
+     * advisory lock, så to noder ikke kan passere grensen samtidig; må derfor kalles i en transaksjon.
+     */
+    public void reserve(Collection<String> normalizedTags) {
+        if (normalizedTags.isEmpty() || newTags(normalizedTags).isEmpty()) {
+            return;
+        }
+        jdbc.query("select pg_advisory_xact_lock(?, 0)", rs -> null, LOCK_NAMESPACE);
+
+        // På nytt under låsen: noen kan ha lagt til tagger mens vi ventet
+        var added = newTags(normalizedTags);
+        if (recipeRepository.countDistinctTags() + added.size() > MAX_TAGS) {
+            throw new IllegalArgumentException("Too many distinct tags (max " + MAX_TAGS + ")");
+        }
+    }
+
+    /** Biter og masker for katalogen; bygges bare på nytt når katalogen eller taggene er endret. */
+    public View view(RecipeCatalog.Snapshot catalog) {
+        long generation = recipeCatalog.generation();
+        var last = aligned;
+        if (last != null && last.modification() == modification && loadedGeneration == generation
+                && last.view().catalog() == catalog) {
+            return last.view();
+        }
+        return rebuild(catalog, generation);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(RecipeChangedEvent event) {
+        // Ikke lastet ennå: første oppslag leser uansett ferske data
+        if (bits == null) {
+            return;
+        }
+        var ids = event.recipeIds();
+        switch (event.type()) {
+            case CREATED, UPDATED -> {
+                for (var e : group(recipeRepository.findTagRefsByRecipeIdIn(ids)).entrySet()) {
+                    if (!put(bits, byRecipe, e.getKey(), e.getValue())) {
+                        // Alle bitene er tatt av tagger som kan være borte: nummerer på nytt ved neste oppslag
+                        bits = null;
+                        break;
+                    }
+                }
+            }
+            case DELETED -> ids.forEach(byRecipe::remove);
+        }
+        modification++;
+    }
+
+    private synchronized View rebuild(RecipeCatalog.Snapshot catalog, long generation) {
+        if (bits == null || loadedGeneration != generation) {
+            load(generation);
+        }
+        var view = build(catalog);
+        if (!view.unknown().isEmpty() && reloadedFor != catalog) {
+            // Opprettet på en annen node siden vi lastet, eller eventen er ikke behandlet her ennå.
+            // Én omlasting per katalog; det som fortsatt mangler er slettet og regnes som ekskludert.
+            reloadedFor = catalog;
+            load(generation);
+            view = build(catalog);
+        }
+        aligned = new Aligned(modification, view);
+        return view;
+    }
+
+    private View build(RecipeCatalog.Snapshot catalog) {
+        var masks = new long[catalog.size()];
+        var unknown = new BitSet();
+        for (int i = 0; i < masks.length; i++) {
+            var mask = byRecipe.get(catalog.idAt(i));
+            if (mask == null) {
+                unknown.set(i);
+            } else {
+                masks[i] = mask;
+            }
+        }
+        return new View(catalog, Map.copyOf(bits), masks, unknown);
+    }
+
+    private void load(long generation) {
+        var bits = new HashMap<String, Integer>();
+        var byRecipe = new HashMap<Long, Long>();
+        group(recipeRepository.findAllTagRefs()).forEach((recipeId, tags) -> {
+            if (!put(bits, byRecipe, recipeId, tags)) {
+                // Bare mulig hvis noen har skrevet rett i databasen; å droppe tagger ville latt exclude slippe gjennom
+                throw new IllegalStateException("More than " + MAX_TAGS + " distinct tags in the database");
+            }
+        });
+        this.bits = bits;
+        this.byRecipe = byRecipe;
+        loadedGeneration = generation;
+        modification++;
+    }
+
+    // tag er null for oppskrifter uten tagger; de får en tom liste
+    private static Map<Long, List<String>> group(List<RecipeTagRef> refs) {
+        var grouped = new HashMap<Long, List<String>>();
+        for (var ref : refs) {
+            var tags = grouped.computeIfAbsent(ref.recipeId(), k -> new ArrayList<>());
+            if (ref.tag() != null) tags.add(ref.tag());
+        }
+        return grouped;
+    }
+
+    /** Setter oppskriftens maske og deler ut biter til nye tagger; false hvis bitene er brukt opp. */
+    private static boolean put(Map<String, Integer> bits, Map<Long, Long> byRecipe, Long recipeId, List<String> tags) {
+        long mask = 0;
+        for (var tag : tags) {
+            var position = bits.get(tag);
+            if (position == null) {
+                if (bits.size() >= MAX_TAGS) {
+                    return false;
+                }
+                position = bits.size();
+                bits.put(tag, position);
+            }
+            mask |= 1L << position;
+        }
+        byRecipe.put(recipeId, mask);
+        return true;
+    }
+
+    private Set<String> newTags(Collection<String> normalizedTags) {
+        var added = new HashSet<>(normalizedTags);
+        added.removeAll(recipeRepository.findTagsIn(normalizedTags));
+        return added;
+    }
+}
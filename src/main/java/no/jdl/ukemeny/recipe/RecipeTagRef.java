@@ -0,0 +1,6 @@
+package no.jdl.ukemeny.recipe;
+
+/**
+ * Én (oppskrift, tag)-kobling fra recipe_tag. tag er null for en oppskrift uten tagger.
+ */
+public record RecipeTagRef(Long recipeId, String tag) {}
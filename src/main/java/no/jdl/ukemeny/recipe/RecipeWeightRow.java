@@ -0,0 +1,10 @@
+package no.jdl.ukemeny.recipe;
+
+/** Grunnlag for vekting av en oppskrift ved generering (native projeksjon). */
+public interface RecipeWeightRow {
+    Long getRecipeId();
+    Boolean getFavorite();
+    Integer getRating();
+    // Dager siden sist laget (dato <= i dag), null hvis aldri
+    Integer getDaysSinceCooked();
+}
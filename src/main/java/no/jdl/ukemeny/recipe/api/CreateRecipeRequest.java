@@ -9,5 +9,7 @@ import java.util.List;
 public record CreateRecipeRequest (
         @NotBlank String name,
         String description,
-        @NotEmpty @Valid List<CreateRecipeItemRequest> items
+        @NotEmpty @Valid List<CreateRecipeItemRequest> items,
+        // Valgfri, f.eks. ["vegetar", "rask"]
+        List<String> tags
 ){}
\ No newline at end of file
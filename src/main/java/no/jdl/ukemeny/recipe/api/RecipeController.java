@@ -3,20 +3,28 @@ package no.jdl.ukemeny.recipe.api;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import no.jdl.ukemeny.recipe.RecipeImporter;
 import no.jdl.ukemeny.recipe.RecipeService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 @RestController
 @RequestMapping("/recipes")
 @Tag(name = "Recipes", description = "Oppskrifter (CRUD-ish) med ingredienser/items")
 public class RecipeController {
 
     private final RecipeService service;
+    private final RecipeImporter importer;
 
-    public RecipeController(RecipeService service) {
+    public RecipeController(RecipeService service, RecipeImporter importer) {
         this.service = service;
+        this.importer = importer;
     }
 
     @PostMapping
@@ -30,15 +38,57 @@ public class RecipeController {
         return new CreateRecipeResponse(id);
     }
 
+    @PostMapping(value = "/import", consumes = "application/x-ndjson", produces = "application/x-ndjson")
+    @Operation(
+            summary = "Importer oppskrifter (NDJSON)",
+            description = "Masseimport: én oppskrift (samme format som POST /recipes) per linje. Svarer med én NDJSON-linje per oppskrift, {line, id} eller {line, error}, strømmet etter hvert som bitene lagres. Ugyldige linjer stopper ikke resten."
+    )
+    public void importNdjson(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        importer.importNdjson(request.getInputStream(), response.getOutputStream());
+    }
+
     @GetMapping
     @Operation(
             summary = "Søk oppskrifter (Top 10)",
-            description = "Søker etter oppskrifter på navn (case-insensitive). Returnerer opp til 10 treff."
+            description = "Søker etter oppskrifter på navn (case-insensitive), rangert på trigram-likhet, så også små skrivefeil gir treff. Returnerer opp til 10 treff; bruk /recipes/search for flere sider."
     )
     public java.util.List<RecipeSummary> search(@RequestParam String name) {
-        return service.searchByName(name).stream()
-                .map(r -> new RecipeSummary(r.getId(), r.getName()))
-                .toList();
+        return service.search(name, 10, null).items();
+    }
+
+    @GetMapping("/search")
+    @Operation(
+            summary = "Søk oppskrifter med paginering",
+            description = "Samme søk som GET /recipes?name=, men returnerer limit (1-50, default 10) treff per side som {items, nextCursor}; send nextCursor som cursor for neste side (null = siste side)."
+    )
+    public RecipeSearchResponse searchPage(@RequestParam String name,
+                                           @RequestParam(defaultValue = "10") int limit,
+                                           @RequestParam(required = false) String cursor) {
+        return service.search(name, limit, cursor);
+    }
+
+    @GetMapping("/autocomplete")
+    @Operation(
+            summary = "Autocomplete for oppskriftsnavn",
+            description = "Forslag mens man skriver, fra en indeks i minnet. Treffer starten på ord og (fra 3 tegn) inni ord; store/små bokstaver og æ/ø/å spiller ingen rolle (\"blotkake\" finner \"Bløtkake\"). limit 1-50, default 10."
+    )
+    public java.util.List<RecipeSummary> autocomplete(@RequestParam String query,
+                                                      @RequestParam(defaultValue = "10") int limit) {
+        return service.autocomplete(query, limit);
+    }
+
+    @GetMapping("/by-ingredients")
+    @Operation(
+            summary = "Oppskrifter fra ingredienser",
+            description = "Hva kan jeg lage? Oppskrifter som bruker ingrediensene i ids (kommaseparert, maks 100), flest treff først og deretter høyest dekningsgrad (andel av oppskriftens ingredienser som er oppgitt). all=true krever at alle brukes. Besvares fra en invertert indeks i minnet."
+    )
+    public java.util.List<RecipeIngredientMatchResponse> byIngredients(@RequestParam java.util.List<Long> ids,
+                                                                        @RequestParam(defaultValue = "0") double minCoverage,
+                                                                        @RequestParam(defaultValue = "false") boolean all,
+                                                                        @RequestParam(defaultValue = "20") int limit) {
+        return service.byIngredients(ids, all, minCoverage, limit);
     }
 
     @GetMapping("/{id}")
@@ -50,6 +100,17 @@ public class RecipeController {
         return service.getById(id);
     }
 
+    @GetMapping("/{id}/similar")
+    @Operation(
+            summary = "Lignende oppskrifter",
+            description = "Oppskrifter med mest lik ingrediensliste (estimert Jaccard-likhet via MinHash), mest like først. Treff under ca. 0.3 kan mangle."
+    )
+    public java.util.List<SimilarRecipeResponse> similar(@PathVariable Long id,
+                                                         @RequestParam(defaultValue = "0.5") double minSimilarity,
+                                                         @RequestParam(defaultValue = "10") int limit) {
+        return service.similar(id, minSimilarity, limit);
+    }
+
     @PutMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Operation(
@@ -60,6 +121,16 @@ public class RecipeController {
         service.update(id, request);
     }
 
+    @PatchMapping("/{id}/preferences")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @Operation(
+            summary = "Sett favoritt/rating for oppskrift",
+            description = "Setter favorite og/eller rating (1-5). Felter som utelates endres ikke. Favoritter og høyt ratede oppskrifter trekkes oftere ved generering."
+    )
+    public void updatePreferences(@PathVariable Long id, @Valid @RequestBody UpdateRecipePreferencesRequest request) {
+        service.updatePreferences(id, request);
+    }
+
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Operation(
@@ -6,5 +6,8 @@ public record RecipeDetailsResponse (
         Long id,
         String name,
         String description,
-        List<RecipeItemResponse> items
+        List<RecipeItemResponse> items,
+        boolean favorite,
+        Integer rating,
+        List<String> tags
 ){}
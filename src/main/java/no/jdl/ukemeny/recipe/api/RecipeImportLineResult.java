@@ -0,0 +1,10 @@
+package no.jdl.ukemeny.recipe.api;
+
+/**
+ * Resultat for én linje i en NDJSON-import.
+ *
+ * @param line  linjenummer i forespørselen (1-basert)
+ * @param id    id til opprettet oppskrift, null ved feil
+ * @param error feilmelding, null når linjen ble importert
+ */
+public record RecipeImportLineResult(int line, Long id, String error) {}
@@ -0,0 +1,12 @@
+package no.jdl.ukemeny.recipe.api;
+
+/**
+ * @param matchedIngredients antall av de oppgitte ingrediensene oppskriften bruker
+ * @param totalIngredients   antall distinkte ingredienser i oppskriften
+ * @param coverage           matchedIngredients / totalIngredients (0..1)
+ */
+public record RecipeIngredientMatchResponse(Long id,
+                                            String name,
+                                            int matchedIngredients,
+                                            int totalIngredients,
+                                            double coverage) {}
@@ -0,0 +1,9 @@
+package no.jdl.ukemeny.recipe.api;
+
+import java.util.List;
+
+public record RecipeSearchResponse(
+        List<RecipeSummary> items,
+        // Send som cursor for neste side. null = ingen flere treff
+        String nextCursor
+) {}
@@ -0,0 +1,6 @@
+package no.jdl.ukemeny.recipe.api;
+
+/**
+ * @param similarity estimert Jaccard-likhet mellom ingrediens-settene (0..1)
+ */
+public record SimilarRecipeResponse(Long id, String name, double similarity) {}
@@ -0,0 +1,10 @@
+package no.jdl.ukemeny.recipe.api;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+
+// Felter som er null endres ikke
+public record UpdateRecipePreferencesRequest(
+        Boolean favorite,
+        @Min(1) @Max(5) Integer rating
+) {}
@@ -9,5 +9,7 @@ import java.util.List;
 public record UpdateRecipeRequest (
     @NotBlank String name,
     String description,
-    @NotEmpty @Valid List<CreateRecipeItemRequest> items
+    @NotEmpty @Valid List<CreateRecipeItemRequest> items,
+    // null = behold eksisterende tagger
+    List<String> tags
 ) {}
\ No newline at end of file
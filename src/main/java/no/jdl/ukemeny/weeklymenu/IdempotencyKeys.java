@@ -0,0 +1,100 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key for endepunkter som oppretter en ukemeny: samme nøkkel (og samme request) gir
+ * samme weeklyMenuId, også når klienten prøver på nytt etter timeout.
+ *
+ * Nøkkelen settes inn i samme transaksjon som menyen. Et samtidig kall med samme nøkkel blir
+ * stående på INSERT ... ON CONFLICT til den første transaksjonen er ferdig, og får så resultatet
+ * derfra i stedet for å generere selv. Ruller den første tilbake, overtar den neste.
+ * Nøkler eldre enn ttl kan brukes på nytt og ryddes bort periodisk.
+ */
+@Component
+public class IdempotencyKeys {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+
+    public IdempotencyKeys(JdbcTemplate jdbc,
+                           ObjectMapper objectMapper,
+                           @Value("${ukemeny.idempotency.ttl:PT24H}") Duration ttl) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Kjører action første gang nøkkelen brukes og husker resultatet; senere kall returnerer det.
+     * Må kjøres i transaksjonen som action skriver i.
+     */
+    public Long execute(String key, String operation, Object request, Supplier<Long> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be 1-" + MAX_KEY_LENGTH + " characters");
+        }
+        var hash = hash(request);
+
+        // Ny nøkkel, eller en utløpt som tas over
+        int claimed = jdbc.update("""
+                insert into idempotency_key (key, operation, request_hash)
+                values (?, ?, ?)
+                on conflict (key) do update
+                    set operation = excluded.operation,
+                        request_hash = excluded.request_hash,
+                        weekly_menu_id = null,
+                        created_at = now()
+                    where idempotency_key.created_at < now() - cast(? as interval)
+                """, key, operation, hash, ttl.toSeconds() + " seconds");
+
+        if (claimed == 1) {
+            var id = action.get();
+            jdbc.update("update idempotency_key set weekly_menu_id = ? where key = ?", id, key);
+            return id;
+        }
+
+        var previous = jdbc.queryForMap(
+                "select operation, request_hash, weekly_menu_id from idempotency_key where key = ?", key);
+        if (!operation.equals(previous.get("operation")) || !hash.equals(previous.get("request_hash"))) {
+            throw new IllegalArgumentException("Idempotency-Key was already used for a different request");
+        }
+        var id = (Number) previous.get("weekly_menu_id");
+        if (id == null) {
+            // Kan bare skje hvis den første transaksjonen committet uten resultat
+            throw new IllegalStateException("Request with this Idempotency-Key did not complete");
+        }
+        return id.longValue();
+    }
+
+    @Scheduled(fixedDelayString = "${ukemeny.idempotency.cleanup-interval:PT1H}")
+    public void purgeExpired() {
+        jdbc.update("delete from idempotency_key where created_at < now() - cast(? as interval)",
+                ttl.toSeconds() + " seconds");
+    }
+
+    private String hash(Object request) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Oppslag (ingredientId, unitId) -> linjeindeks med åpen adressering på primitive arrays.
+ *
+ * Erstatter Map&lt;Key, Line&gt; i handleliste-aggregeringen: ingen Key-objekter eller boxing per rad.
+ * Oppføringer fjernes aldri (en linje uten bidrag blir stående med indeksen sin), så vi slipper tombstones.
+ * Ikke trådsikker; eieren synkroniserer.
+ */
+final class IngredientUnitIndex {
+
+    // unit er fritekst, men i praksis et lite vokabular (g, stk, dl, ...) -> interner til int én gang.
+    // Per indeks, så den lever og dør med aggregatet og ikke vokser med alt som noen gang er skrevet.
+    private final Map<String, Integer> unitIds = new HashMap<>();
+
+    private static final int EMPTY = -1;
+
+    private long[] ingredientIds;
+    private int[] slotUnitIds;
+    private int[] values;
+    private int size;
+
+    IngredientUnitIndex() {
+        this(16);
+    }
+
+    IngredientUnitIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2 - 1)) << 1;
+        ingredientIds = new long[capacity];
+        slotUnitIds = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+    }
+
+    int unitId(String unit) {
+        var id = unitIds.get(unit);
+        if (id != null) {
+            return id;
+        }
+        id = unitIds.size();
+        unitIds.put(unit, id);
+        return id;
+    }
+
+    /** Indeksen for nøkkelen, eller -1 hvis den ikke finnes. */
+    int get(long ingredientId, int unitId) {
+        int mask = values.length - 1;
+        int slot = hash(ingredientId, unitId) & mask;
+        while (values[slot] != EMPTY) {
+            if (ingredientIds[slot] == ingredientId && slotUnitIds[slot] == unitId) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /** Legger inn nøkkelen med gitt verdi. Nøkkelen må ikke finnes fra før. */
+    void put(long ingredientId, int unitId, int value) {
+        if ((size + 1) * 2 > values.length) {
+            grow();
+        }
+        insert(ingredientId, unitId, value);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(long ingredientId, int unitId, int value) {
+        int mask = values.length - 1;
+        int slot = hash(ingredientId, unitId) & mask;
+        while (values[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        ingredientIds[slot] = ingredientId;
+        slotUnitIds[slot] = unitId;
+        values[slot] = value;
+    }
+
+    private void grow() {
+        var oldIngredientIds = ingredientIds;
+        var oldUnitIds = slotUnitIds;
+        var oldValues = values;
+
+        ingredientIds = new long[oldValues.length * 2];
+        slotUnitIds = new int[oldValues.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, EMPTY);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != EMPTY) {
+                insert(oldIngredientIds[i], oldUnitIds[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(long ingredientId, int unitId) {
+        long h = ingredientId * 0x9E3779B97F4A7C15L + unitId;
+        h ^= (h >>> 32);
+        h *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 29));
+    }
+}
@@ -0,0 +1,142 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import no.jdl.ukemeny.recipe.RecipeCatalog;
+import no.jdl.ukemeny.weeklymenu.generation.MenuHistory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Oppskrifter brukt per uke, cachet, så historikk for variasjon ved generering ikke koster rundturer.
+ *
+ * Mangler en uke i vinduet hentes hele vinduet med én range-spørring. Per uke lagres sorterte recipeId-er,
+ * og bitsettet over katalogindeksen bygges på nytt bare når katalog-snapshotet er byttet.
+ * En uke kastes når en meny for den uka opprettes eller får byttet middager. Det er bare lokale events,
+ * så uker eldre enn ttl leses på nytt for å fange opp menyer laget eller endret på andre noder.
+ */
+@Component
+public class RecipeHistoryCache {
+
+    // Rundt 10 år med uker
+    private static final int MAX_WEEKS = 520;
+
+    private static final class Week {
+        final long[] recipeIds;
+        final long loadedAt; // System.nanoTime()
+        RecipeCatalog.Snapshot indexedFor;
+        BitSet bits;
+
+        Week(long[] recipeIds, long loadedAt) {
+            this.recipeIds = recipeIds;
+            this.loadedAt = loadedAt;
+        }
+
+        BitSet bits(RecipeCatalog.Snapshot catalog) {
+            if (indexedFor != catalog) {
+                var b = new BitSet(catalog.size());
+                for (long id : recipeIds) {
+                    int i = catalog.indexOf(id);
+                    if (i >= 0) b.set(i); // slettet oppskrift faller bort
+                }
+                bits = b;
+                indexedFor = catalog;
+            }
+            return bits;
+        }
+    }
+
+    private final WeeklyMenuRepository weeklyMenuRepository;
+    private final int lookBackWeeks;
+    private final long ttlNanos;
+
+    private final LinkedHashMap<LocalDate, Week> weeks = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LocalDate, Week> eldest) {
+            return size() > MAX_WEEKS;
+        }
+    };
+    private long generation = 0;
+
+    public RecipeHistoryCache(WeeklyMenuRepository weeklyMenuRepository,
+                              @Value("${ukemeny.generation.avoid-weeks:6}") int avoidWeeks,
+                              @Value("${ukemeny.generation.prefer-fresh-weeks:13}") int preferFreshWeeks,
+                              @Value("${ukemeny.generation.history-cache.ttl:PT1M}") Duration ttl) {
+        this.weeklyMenuRepository = weeklyMenuRepository;
+        this.lookBackWeeks = Math.max(avoidWeeks, preferFreshWeeks);
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /** Historikk for ukene før weekStartDate (så langt tilbake som konfigurert). */
+    public MenuHistory history(LocalDate weekStartDate, RecipeCatalog.Snapshot catalog) {
+        if (lookBackWeeks <= 0) {
+            return MenuHistory.EMPTY;
+        }
+
+        long computedAtGeneration;
+        synchronized (this) {
+            if (allCached(weekStartDate)) {
+                return toHistory(weekStartDate, catalog, weeks);
+            }
+            computedAtGeneration = generation;
+        }
+
+        // Én spørring for hele vinduet; uker uten meny lagres som tomme
+        var from = weekStartDate.minusWeeks(lookBackWeeks);
+        var idsByWeek = new HashMap<LocalDate, List<Long>>();
+        for (var use : weeklyMenuRepository.findRecipeUsesBetween(from, weekStartDate)) {
+            idsByWeek.computeIfAbsent(use.weekStartDate(), k -> new ArrayList<>()).add(use.recipeId());
+        }
+
+        var loaded = new HashMap<LocalDate, Week>();
+        long now = System.nanoTime();
+        for (int ago = 1; ago <= lookBackWeeks; ago++) {
+            var week = weekStartDate.minusWeeks(ago);
+            var ids = idsByWeek.getOrDefault(week, List.of()).stream()
+                    .mapToLong(Long::longValue)
+                    .sorted()
+                    .distinct()
+                    .toArray();
+            loaded.put(week, new Week(ids, now));
+        }
+
+        synchronized (this) {
+            // Noe ble endret mens vi leste -> bruk resultatet, men ikke cache det
+            if (computedAtGeneration == generation) {
+                weeks.putAll(loaded);
+            }
+            return toHistory(weekStartDate, catalog, loaded);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(WeeklyMenuChangedEvent event) {
+        if (event.changedDays() != null && event.changedDays().isEmpty()) {
+            return; // kun locked/note endret
+        }
+        generation++;
+        weeks.remove(event.weekStartDate());
+    }
+
+    private boolean allCached(LocalDate weekStartDate) {
+        long now = System.nanoTime();
+        for (int ago = 1; ago <= lookBackWeeks; ago++) {
+            var week = weeks.get(weekStartDate.minusWeeks(ago));
+            if (week == null || now - week.loadedAt >= ttlNanos) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MenuHistory toHistory(LocalDate weekStartDate, RecipeCatalog.Snapshot catalog, Map<LocalDate, Week> source) {
+        var bits = new BitSet[lookBackWeeks];
+        for (int ago = 1; ago <= lookBackWeeks; ago++) {
+            bits[ago - 1] = source.get(weekStartDate.minusWeeks(ago)).bits(catalog);
+        }
+        return new MenuHistory(catalog, bits);
+    }
+}
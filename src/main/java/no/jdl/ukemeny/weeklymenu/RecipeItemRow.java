@@ -0,0 +1,28 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat rad per recipe_item med ingrediens og kategori, uten meny.
+ * Brukes til handleliste for menyer som ikke er lagret (forhåndsvisning).
+ */
+public record RecipeItemRow(
+        Long recipeId,
+        String recipeName,
+        Long ingredientId,
+        String ingredientName,
+        Long categoryId,
+        String categoryName,
+        Integer categorySortOrder,
+        BigDecimal amount,
+        String unit
+) {
+
+    /** Som om oppskriften lå på dayOfWeek i en meny som ikke finnes (weeklyMenuId = null). */
+    ShoppingListRow onDay(LocalDate weekStartDate, int dayOfWeek) {
+        return new ShoppingListRow(null, weekStartDate, dayOfWeek,
+                recipeId, recipeName, ingredientId, ingredientName,
+                categoryId, categoryName, categorySortOrder, amount, unit);
+    }
+}
@@ -0,0 +1,6 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import java.time.LocalDate;
+
+/** En oppskrift brukt i ukemenyen for weekStartDate (grunnlag for historikk ved generering). */
+public record RecipeUse(LocalDate weekStartDate, Long recipeId) {}
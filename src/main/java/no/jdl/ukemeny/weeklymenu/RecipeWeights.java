@@ -0,0 +1,122 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import no.jdl.ukemeny.recipe.RecipeCatalog;
+import no.jdl.ukemeny.recipe.RecipeChangedEvent;
+import no.jdl.ukemeny.recipe.RecipePreferenceChangedEvent;
+import no.jdl.ukemeny.recipe.RecipeRepository;
+import no.jdl.ukemeny.weeklymenu.generation.AliasTable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.LocalDate;
+
+/**
+ * Vekt per oppskrift ved generering, som en alias-tabell over katalogindeksen.
+ *
+ * vekt = (favoritt ? favorite-multiplier : 1) * (rating / 3, nøytral uten rating) * recency
+ * der recency = 1 - 2^(-uker siden sist laget / recency-half-life-weeks), aldri under min-recency.
+ *
+ * Tabellen bygges på nytt (én spørring + O(n)) bare når noe som påvirker vektene er endret:
+ * preferanser, menyer, katalogen eller datoen (recency regnes fra i dag).
+ */
+@Component
+public class RecipeWeights {
+
+    private record Table(RecipeCatalog.Snapshot catalog, LocalDate builtFor, long builtAtGeneration, AliasTable alias) {}
+
+    private final RecipeRepository recipeRepository;
+    private final boolean enabled;
+    private final double favoriteMultiplier;
+    private final double recencyHalfLifeWeeks;
+    private final double minRecency;
+    private final Clock clock;
+
+    private volatile Table table;
+    private volatile long generation = 0;
+
+    public RecipeWeights(RecipeRepository recipeRepository,
+                         @Value("${ukemeny.generation.weights.enabled:true}") boolean enabled,
+                         @Value("${ukemeny.generation.weights.favorite-multiplier:3.0}") double favoriteMultiplier,
+                         @Value("${ukemeny.generation.weights.recency-half-life-weeks:4}") double recencyHalfLifeWeeks,
+                         @Value("${ukemeny.generation.weights.min-recency:0.1}") double minRecency) {
+        this.recipeRepository = recipeRepository;
+        this.enabled = enabled;
+        this.favoriteMultiplier = favoriteMultiplier;
+        this.recencyHalfLifeWeeks = recencyHalfLifeWeeks;
+        this.minRecency = minRecency;
+        this.clock = Clock.systemDefaultZone();
+    }
+
+    /** Alias-tabell for katalogen, eller null når vekting er slått av (lik sannsynlighet). */
+    public AliasTable table(RecipeCatalog.Snapshot catalog) {
+        if (!enabled || catalog.isEmpty()) {
+            return null;
+        }
+
+        var today = LocalDate.now(clock);
+        var current = table;
+        if (isFresh(current, catalog, today)) {
+            return current.alias();
+        }
+
+        synchronized (this) {
+            current = table;
+            if (isFresh(current, catalog, today)) {
+                return current.alias();
+            }
+
+            // Lest før spørringen: en endring underveis gjør tabellen utdatert ved neste kall
+            long builtAtGeneration = generation;
+
+            var weights = new double[catalog.size()];
+            java.util.Arrays.fill(weights, 1.0);
+            for (var row : recipeRepository.findWeightRows(today)) {
+                int i = catalog.indexOf(row.getRecipeId());
+                if (i >= 0) {
+                    weights[i] = weight(row.getFavorite(), row.getRating(), row.getDaysSinceCooked());
+                }
+            }
+
+            table = new Table(catalog, today, builtAtGeneration, new AliasTable(weights));
+            return table.alias();
+        }
+    }
+
+    double weight(Boolean favorite, Integer rating, Integer daysSinceCooked) {
+        double w = Boolean.TRUE.equals(favorite) ? favoriteMultiplier : 1.0;
+        if (rating != null) {
+            w *= rating / 3.0;
+        }
+        if (daysSinceCooked != null) {
+            double weeks = daysSinceCooked / 7.0;
+            double recency = 1.0 - Math.pow(2.0, -weeks / recencyHalfLifeWeeks);
+            w *= Math.max(minRecency, recency);
+        }
+        return w;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(RecipePreferenceChangedEvent event) {
+        generation++;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(WeeklyMenuChangedEvent event) {
+        generation++;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void on(RecipeChangedEvent event) {
+        // Ny/slettet oppskrift gir nytt katalog-snapshot uansett; dette dekker rekkefølgen på eventene
+        generation++;
+    }
+
+    private boolean isFresh(Table t, RecipeCatalog.Snapshot catalog, LocalDate today) {
+        return t != null
+                && t.catalog() == catalog
+                && t.builtFor().equals(today)
+                && t.builtAtGeneration() == generation;
+    }
+}
@@ -0,0 +1,346 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListCategoryResponse;
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListChangeResponse;
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListItemResponse;
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListItemSource;
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListResponse;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Handleliste for én ukemeny som kan patches: én linje per (ingrediens, unit) med sum og sources.
+ *
+ * Hver endring får et nytt versjonsnummer, og linjer som endres/fjernes merkes med versjonen.
+ * Da kan vi svare på "hva er endret siden versjon X" uten å sende hele lista.
+ *
+ * Summering skjer i fastkomma long (recipe_item.amount er NUMERIC(12,3)), linjer slås opp via
+ * {@link IngredientUnitIndex} uten nøkkelobjekter, og sources bygges først når en linje skal vises.
+ */
+public class ShoppingListAggregate {
+
+    // recipe_item.amount er NUMERIC(12,3)
+    private static final int AMOUNT_SCALE = 3;
+
+    private static final class Line {
+        final Long ingredientId;
+        final String ingredientName;
+        final Long categoryId;
+        final String categoryName;
+        final int categorySortOrder;
+        final String unit;
+
+        // Forhåndsberegnet, så sortering ikke bretter store/små bokstaver på nytt for hvert kall
+        final String ingredientSortKey;
+        final String categorySortKey;
+
+        long totalScaled;
+        // Radene som bidro; sources lages av disse først når linja vises
+        final ArrayList<ShoppingListRow> rows = new ArrayList<>(2);
+        long changedAtVersion;
+
+        // Memo av toItem(); nullstilles når linja endres
+        ShoppingListItemResponse item;
+
+        Line(ShoppingListRow row) {
+            this.ingredientId = row.ingredientId();
+            this.ingredientName = row.ingredientName();
+            this.categoryId = row.categoryId();
+            this.categoryName = row.categoryName();
+            this.categorySortOrder = row.categorySortOrder();
+            this.unit = row.unit();
+            this.ingredientSortKey = sortKey(ingredientName);
+            this.categorySortKey = sortKey(categoryName);
+        }
+
+        boolean present() {
+            return !rows.isEmpty();
+        }
+
+        void add(ShoppingListRow row) {
+            totalScaled += toScaled(row.amount());
+            rows.add(row);
+            item = null;
+        }
+
+        ShoppingListItemResponse toItem(boolean datedSources) {
+            if (item != null) {
+                return item;
+            }
+
+            var sorted = new ArrayList<>(rows);
+            if (datedSources) {
+                // Flere uker: sorter på faktisk dato (weekStartDate + dag)
+                sorted.sort(Comparator
+                        .comparing(ShoppingListRow::weekStartDate)
+                        .thenComparingInt(ShoppingListRow::dayOfWeek));
+            } else {
+                sorted.sort(Comparator.comparingInt(ShoppingListRow::dayOfWeek));
+            }
+
+            var sources = new ShoppingListItemSource[sorted.size()];
+            for (int i = 0; i < sources.length; i++) {
+                var row = sorted.get(i);
+                var date = datedSources ? row.weekStartDate().plusDays(row.dayOfWeek() - 1) : null;
+                sources[i] = new ShoppingListItemSource(
+                        row.dayOfWeek(), row.recipeId(), row.recipeName(), row.amount(), unit, date);
+            }
+
+            item = new ShoppingListItemResponse(ingredientId, ingredientName, fromScaled(totalScaled), unit, List.of(sources));
+            return item;
+        }
+    }
+
+    private static final Comparator<Line> CATEGORY_ORDER = Comparator
+            .comparingInt((Line l) -> l.categorySortOrder)
+            .thenComparing(l -> l.categorySortKey);
+
+    private static final Comparator<Line> INGREDIENT_ORDER = Comparator.comparing(l -> l.ingredientSortKey);
+
+    private final Long weeklyMenuId;
+    private final LocalDate weekStartDate;
+    private final long baseVersion;
+    private long version;
+
+    // lines[index.get(ingredientId, unitId)]; linjer uten bidrag blir stående som "fjernet"
+    private final IngredientUnitIndex index = new IngredientUnitIndex();
+    private final ArrayList<Line> lines = new ArrayList<>();
+    // Rader for oppskrifter uten items: gir ingen linje, men aggregatet avhenger av oppskriften likevel
+    private final ArrayList<ShoppingListRow> itemlessRows = new ArrayList<>();
+
+    // Memo av siste respons; nullstilles ved hver endring
+    private ShoppingListResponse response;
+
+    private final Object patchLock = new Object();
+
+    // true = sources får dato (handleliste over flere uker)
+    private boolean datedSources = false;
+
+    public ShoppingListAggregate(Long weeklyMenuId, LocalDate weekStartDate, long baseVersion) {
+        this.weeklyMenuId = weeklyMenuId;
+        this.weekStartDate = weekStartDate;
+        this.baseVersion = baseVersion;
+        this.version = baseVersion;
+    }
+
+    public Long weeklyMenuId() { return weeklyMenuId; }
+    Object patchLock() { return patchLock; }
+    public synchronized long version() { return version; }
+
+    /** Bygger aggregat fra flate rader (én rad per recipe_item per dag). */
+    public static ShoppingListAggregate fromRows(Long weeklyMenuId, LocalDate weekStartDate,
+                                                 List<ShoppingListRow> rows, long baseVersion) {
+        var aggregate = new ShoppingListAggregate(weeklyMenuId, weekStartDate, baseVersion);
+        for (var row : rows) {
+            aggregate.addRow(row);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Bygger aggregat for én uke der sources får dato, slik at flere uker kan slås sammen med {@link #mergeFrom}.
+     */
+    public static ShoppingListAggregate fromRowsWithDates(List<ShoppingListRow> rows) {
+        var aggregate = new ShoppingListAggregate(null, null, 0);
+        aggregate.datedSources = true;
+        for (var row : rows) {
+            aggregate.addRow(row);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Slår sammen other inn i dette aggregatet (samme nøkkel = ingrediens + unit). Returnerer this.
+     */
+    public synchronized ShoppingListAggregate mergeFrom(ShoppingListAggregate other) {
+        for (var theirs : other.lines) {
+            if (!theirs.present()) continue;
+            for (var row : theirs.rows) {
+                addRow(row);
+            }
+        }
+        itemlessRows.addAll(other.itemlessRows);
+        return this;
+    }
+
+    private void addRow(ShoppingListRow row) {
+        // Meny uten entries / oppskrift uten items gir en rad uten ingrediens
+        if (row.ingredientId() == null) {
+            if (row.recipeId() != null) itemlessRows.add(row);
+            return;
+        }
+
+        int unitId = index.unitId(row.unit());
+        int i = index.get(row.ingredientId(), unitId);
+        Line line;
+        if (i < 0) {
+            line = new Line(row);
+            index.put(row.ingredientId(), unitId, lines.size());
+            lines.add(line);
+        } else {
+            line = lines.get(i);
+        }
+
+        line.add(row);
+        line.changedAtVersion = version;
+        response = null;
+    }
+
+    /**
+     * Erstatter bidragene fra gitte dager: trekker fra det gamle og legger til radene for de nye oppskriftene.
+     * rows må være handleliste-rader for akkurat disse dagene.
+     */
+    public synchronized void replaceDays(Collection<Integer> days, long newVersion, List<ShoppingListRow> rows) {
+        version = newVersion;
+
+        for (var line : lines) {
+            var changed = false;
+
+            var it = line.rows.iterator();
+            while (it.hasNext()) {
+                var row = it.next();
+                if (days.contains(row.dayOfWeek())) {
+                    line.totalScaled -= toScaled(row.amount());
+                    it.remove();
+                    changed = true;
+                }
+            }
+
+            if (!changed) continue;
+            // Linjer som blir tomme står igjen som "fjernet" med denne versjonen
+            line.changedAtVersion = version;
+            line.item = null;
+        }
+        itemlessRows.removeIf(row -> days.contains(row.dayOfWeek()));
+
+        for (var row : rows) {
+            addRow(row);
+        }
+        response = null;
+    }
+
+    public synchronized boolean dependsOnRecipe(Long recipeId) {
+        for (var line : lines) {
+            for (var row : line.rows) {
+                if (row.recipeId().equals(recipeId)) return true;
+            }
+        }
+        for (var row : itemlessRows) {
+            if (row.recipeId().equals(recipeId)) return true;
+        }
+        return false;
+    }
+
+    public synchronized boolean dependsOnAnyIngredient(Collection<Long> ingredientIds) {
+        for (var line : lines) {
+            if (line.present() && ingredientIds.contains(line.ingredientId)) return true;
+        }
+        return false;
+    }
+
+    public synchronized boolean dependsOnCategory(Long categoryId) {
+        for (var line : lines) {
+            if (line.present() && line.categoryId.equals(categoryId)) return true;
+        }
+        return false;
+    }
+
+    public synchronized ShoppingListResponse toResponse() {
+        if (response != null) {
+            return response;
+        }
+        response = new ShoppingListResponse(weeklyMenuId, weekStartDate, categories());
+        return response;
+    }
+
+    /** Linjene gruppert og sortert per kategori (category.sortOrder, så navn). */
+    public synchronized List<ShoppingListCategoryResponse> categories() {
+        // Gruppér i innsettingsrekkefølge; sorteringene under er stabile, så like nøkler beholder den
+        var grouped = new LinkedHashMap<Long, List<Line>>();
+        for (var line : lines) {
+            if (!line.present()) continue;
+            grouped.computeIfAbsent(line.categoryId, k -> new ArrayList<>()).add(line);
+        }
+
+        var categories = new ArrayList<>(grouped.values());
+        categories.sort((a, b) -> CATEGORY_ORDER.compare(a.get(0), b.get(0)));
+
+        var result = new ArrayList<ShoppingListCategoryResponse>(categories.size());
+        for (var categoryLines : categories) {
+            categoryLines.sort(INGREDIENT_ORDER);
+            var items = new ArrayList<ShoppingListItemResponse>(categoryLines.size());
+            for (var line : categoryLines) {
+                items.add(line.toItem(datedSources));
+            }
+            result.add(new ShoppingListCategoryResponse(categoryLines.get(0).categoryName, List.copyOf(items)));
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * Linjer endret etter sinceVersion. Returnerer null hvis vi ikke kan svare presist
+     * (versjonen er eldre enn dette aggregatet eller ukjent) – da må klienten hente alt på nytt.
+     */
+    public synchronized List<ShoppingListChangeResponse> changesSince(long sinceVersion) {
+        if (sinceVersion < baseVersion || sinceVersion > version) {
+            return null;
+        }
+
+        var changes = new ArrayList<ShoppingListChangeResponse>();
+        for (var line : lines) {
+            if (line.changedAtVersion > sinceVersion) {
+                changes.add(toChange(line, !line.present()));
+            }
+        }
+        return changes;
+    }
+
+    /** Alle nåværende linjer som endringer (brukes ved full resync). */
+    public synchronized List<ShoppingListChangeResponse> allLines() {
+        var all = new ArrayList<ShoppingListChangeResponse>();
+        for (var line : lines) {
+            if (line.present()) {
+                all.add(toChange(line, false));
+            }
+        }
+        return all;
+    }
+
+    private ShoppingListChangeResponse toChange(Line line, boolean isRemoved) {
+        if (isRemoved) {
+            return new ShoppingListChangeResponse(
+                    line.ingredientId, line.ingredientName, line.categoryName, line.unit,
+                    BigDecimal.ZERO, List.of(), true);
+        }
+        var item = line.toItem(datedSources);
+        return new ShoppingListChangeResponse(
+                line.ingredientId,
+                line.ingredientName,
+                line.categoryName,
+                line.unit,
+                item.amount(),
+                item.sources(),
+                false
+        );
+    }
+
+    static long toScaled(BigDecimal amount) {
+        return amount.movePointRight(AMOUNT_SCALE).longValueExact();
+    }
+
+    static BigDecimal fromScaled(long scaled) {
+        return BigDecimal.valueOf(scaled, AMOUNT_SCALE);
+    }
+
+    /**
+     * Nøkkel med samme rekkefølge som String.CASE_INSENSITIVE_ORDER, men som kan sammenlignes med compareTo.
+     * CASE_INSENSITIVE_ORDER sammenligner toLowerCase(toUpperCase(c)) tegn for tegn.
+     */
+    static String sortKey(String s) {
+        var sb = new StringBuilder(s.length());
+        s.codePoints().forEach(cp -> sb.appendCodePoint(Character.toLowerCase(Character.toUpperCase(cp))));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Ferdig aggregert handleliste-linje fra Postgres (én rad per ingrediens + unit), med menyens id og uke.
+ * sources er en JSON-array bygget med json_agg, sortert på dayOfWeek.
+ * En meny uten ingredienser gir én rad der bare menyfeltene er satt.
+ */
+public interface ShoppingListAggregateRow {
+    Long getWeeklyMenuId();
+    LocalDate getWeekStartDate();
+    Long getCategoryId();
+    String getCategoryName();
+    Integer getCategorySortOrder();
+    Long getIngredientId();
+    String getIngredientName();
+    String getUnit();
+    BigDecimal getTotal();
+    String getSources();
+}
@@ -0,0 +1,11 @@
+package no.jdl.ukemeny.weeklymenu;
+
+/**
+ * Hvor handlelista aggregeres.
+ * APP: rader hentes flatt og summeres i Java.
+ * DB: summering (GROUP BY ingrediens + unit), sortering og sources (json_agg) gjøres i Postgres.
+ */
+public enum ShoppingListAggregation {
+    APP,
+    DB
+}
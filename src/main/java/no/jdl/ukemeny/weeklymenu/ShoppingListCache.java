@@ -0,0 +1,264 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import no.jdl.ukemeny.ingredient.CategoryChangedEvent;
+import no.jdl.ukemeny.ingredient.IngredientCategoryChangedEvent;
+import no.jdl.ukemeny.recipe.RecipeCatalog;
+import no.jdl.ukemeny.recipe.RecipeChangedEvent;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * LRU + TTL-cache for handleliste-aggregater, nøkkel = weeklyMenuId.
+ *
+ * Invalideres kun av skrivinger som faktisk kan endre innholdet: oppskrifter som inngår,
+ * ingredienser som bytter kategori og kategorier som endres. Bytte av middag(er) i en meny
+ * patcher aggregatet inkrementelt (trekk fra gamle dager, legg til nye) i stedet for å kaste det.
+ *
+ * Alt skjer etter commit, og en generasjonsteller hindrer at en beregning som startet
+ * før en endring legges i cachen etterpå.
+ *
+ * Events er bare lokale. Før et cachet aggregat brukes sjekkes det derfor mot menyens lagrede versjon
+ * (én oppslag på primærnøkkel), som økes ved hver middagsendring uansett node, og mot
+ * {@link RecipeCatalog#generation()}, som endres når en annen node har endret oppskrifter. Det som gjenstår:
+ * oppskriftsendringer fra andre noder sees etter inntil ukemeny.recipe-catalog.refresh-interval, og
+ * kategoriendringer (sortering/gruppering, ikke mengder) fra andre noder først når ttl går ut.
+ */
+@Component
+public class ShoppingListCache {
+
+    // menuVersion og recipeGeneration: det aggregatet ble bygget (eller sist patchet) fra
+    private record Entry(ShoppingListAggregate aggregate, Instant expiresAt, long menuVersion, long recipeGeneration) {}
+
+    private final WeeklyMenuRepository weeklyMenuRepository;
+    private final RecipeCatalog recipeCatalog;
+    private final int maxSize;
+    private final Duration ttl;
+    private final Clock clock;
+
+    private final LinkedHashMap<Long, Entry> entries;
+    private long generation = 0;
+
+    // Versjon = epoke << COUNTER_BITS | teller. Epoken hentes fra en sekvens i databasen, så hver node
+    // (og hver oppstart) har sitt eget tallområde. En klientversjon fra en annen node havner da alltid
+    // utenfor aggregatets [baseVersion, version] og gir full resync i stedet for feil delta.
+    // 21 + 32 bit holder versjonene under 2^53, så de er eksakte også som tall i JavaScript.
+    private static final int COUNTER_BITS = 32;
+    private static final long EPOCH_MASK = (1L << 21) - 1;
+    private long lastVersion = -1;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter patched;
+    private final Counter evictedSize;
+    private final Counter evictedExpired;
+    private final Counter evictedInvalidated;
+    private final Counter evictedStale;
+
+    public ShoppingListCache(WeeklyMenuRepository weeklyMenuRepository,
+                             RecipeCatalog recipeCatalog,
+                             MeterRegistry meterRegistry,
+                             @Value("${ukemeny.shopping-list.cache.max-size:500}") int maxSize,
+                             @Value("${ukemeny.shopping-list.cache.ttl:PT10M}") Duration ttl) {
+        this.weeklyMenuRepository = weeklyMenuRepository;
+        this.recipeCatalog = recipeCatalog;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.clock = Clock.systemUTC();
+
+        // accessOrder=true gir LRU-rekkefølge; eldste fjernes når vi passerer maxSize
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > ShoppingListCache.this.maxSize) {
+                    evictedSize.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        this.hits = Counter.builder("ukemeny.shopping-list.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("ukemeny.shopping-list.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.patched = Counter.builder("ukemeny.shopping-list.cache.patches")
+                .register(meterRegistry);
+        this.evictedSize = Counter.builder("ukemeny.shopping-list.cache.evictions")
+                .tag("cause", "size")
+                .register(meterRegistry);
+        this.evictedExpired = Counter.builder("ukemeny.shopping-list.cache.evictions")
+                .tag("cause", "expired")
+                .register(meterRegistry);
+        this.evictedInvalidated = Counter.builder("ukemeny.shopping-list.cache.evictions")
+                .tag("cause", "invalidated")
+                .register(meterRegistry);
+        this.evictedStale = Counter.builder("ukemeny.shopping-list.cache.evictions")
+                .tag("cause", "stale")
+                .register(meterRegistry);
+        meterRegistry.gauge("ukemeny.shopping-list.cache.size", this, ShoppingListCache::size);
+    }
+
+    /** Cachet aggregat, hvis det finnes og fortsatt stemmer med menyens versjon i databasen. */
+    public Optional<ShoppingListAggregate> get(Long weeklyMenuId) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(weeklyMenuId);
+            if (entry == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+            if (clock.instant().isAfter(entry.expiresAt())) {
+                entries.remove(weeklyMenuId);
+                evictedExpired.increment();
+                misses.increment();
+                return Optional.empty();
+            }
+        }
+
+        // Utenfor låsen: endret på en annen node (eller her, før eventen er behandlet)?
+        var menuVersion = weeklyMenuRepository.findVersionById(weeklyMenuId);
+        if (menuVersion.isEmpty() || menuVersion.get() != entry.menuVersion()
+                || recipeCatalog.generation() != entry.recipeGeneration()) {
+            synchronized (this) {
+                // Kan ha blitt patchet eller erstattet i mellomtiden; da er det den nye som gjelder
+                if (entries.get(weeklyMenuId) == entry) {
+                    generation++;
+                    entries.remove(weeklyMenuId);
+                    evictedStale.increment();
+                }
+                misses.increment();
+            }
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.aggregate());
+    }
+
+    /** Generasjon som må hentes før beregning og sendes med til {@link #put}. */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /** Ny versjon for et aggregat som bygges fra bunnen av, eller for en patch. */
+    public synchronized long nextVersion() {
+        if (lastVersion < 0) {
+            // Epoke 0 brukes aldri (sekvensen starter på 1), så sinceVersion=0 gir alltid full resync
+            long epoch = weeklyMenuRepository.nextShoppingListEpoch() & EPOCH_MASK;
+            lastVersion = Math.max(epoch, 1) << COUNTER_BITS;
+        }
+        return ++lastVersion;
+    }
+
+    /**
+     * menuVersion og recipeGeneration ({@link RecipeCatalog#generation()}) må leses før radene,
+     * så en endring som kommer imellom gir en omberegning for mye i stedet for et utdatert treff.
+     */
+    public synchronized void put(ShoppingListAggregate aggregate, long computedAtGeneration,
+                                 long menuVersion, long recipeGeneration) {
+        // Noe ble endret mens vi beregnet -> resultatet kan være utdatert, ikke cache det
+        if (computedAtGeneration != generation) {
+            return;
+        }
+        entries.put(aggregate.weeklyMenuId(),
+                new Entry(aggregate, clock.instant().plus(ttl), menuVersion, recipeGeneration));
+    }
+
+    public synchronized void evict(Long weeklyMenuId) {
+        generation++;
+        if (entries.remove(weeklyMenuId) != null) {
+            evictedInvalidated.increment();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(WeeklyMenuChangedEvent event) {
+        var days = event.changedDays();
+        if (days == null) {
+            evict(event.weeklyMenuId());
+            return;
+        }
+        if (days.isEmpty()) {
+            return; // kun locked/note endret, påvirker ikke handlelista
+        }
+
+        ShoppingListAggregate aggregate;
+        synchronized (this) {
+            generation++;
+            var entry = entries.get(event.weeklyMenuId());
+            if (entry == null) {
+                return;
+            }
+            aggregate = entry.aggregate();
+        }
+
+        // Patcher for samme meny serialiseres, så rader hentet tidligere aldri overskriver nyere
+        synchronized (aggregate.patchLock()) {
+            // Versjonen før radene (etter commit, så vi ser ny tilstand), som i put
+            var menuVersion = weeklyMenuRepository.findVersionById(event.weeklyMenuId());
+            if (menuVersion.isEmpty()) {
+                evict(event.weeklyMenuId());
+                return;
+            }
+            // Hent kun radene for dagene som er byttet
+            var rows = weeklyMenuRepository.findShoppingListRowsForDays(event.weeklyMenuId(), days);
+
+            synchronized (this) {
+                // Kan ha blitt kastet/erstattet mens vi hentet rader
+                var entry = entries.get(event.weeklyMenuId());
+                if (entry == null || entry.aggregate() != aggregate) {
+                    return;
+                }
+                aggregate.replaceDays(days, nextVersion(), rows);
+                entries.put(event.weeklyMenuId(),
+                        new Entry(aggregate, entry.expiresAt(), menuVersion.get(), entry.recipeGeneration()));
+                generation++;
+                patched.increment();
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(RecipeChangedEvent event) {
+        if (event.type() == RecipeChangedEvent.Type.CREATED) {
+            return; // ny oppskrift kan ikke inngå i en cachet handleliste ennå
+        }
+        evictWhere(a -> event.recipeIds().stream().anyMatch(a::dependsOnRecipe));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(IngredientCategoryChangedEvent event) {
+        evictWhere(a -> a.dependsOnAnyIngredient(event.ingredientIds()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void on(CategoryChangedEvent event) {
+        evictWhere(a -> a.dependsOnCategory(event.categoryId()));
+    }
+
+    private synchronized void evictWhere(Predicate<ShoppingListAggregate> affected) {
+        generation++;
+        var it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (affected.test(it.next().aggregate())) {
+                it.remove();
+                evictedInvalidated.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Flat rad for handlelista: én rad per recipe_item per dag i ukemenyen.
+ * Felter etter weekStartDate er null når menyen ikke har entries (left join).
+ */
+public record ShoppingListRow(
+        Long weeklyMenuId,
+        LocalDate weekStartDate,
+        Integer dayOfWeek,
+        Long recipeId,
+        String recipeName,
+        Long ingredientId,
+        String ingredientName,
+        Long categoryId,
+        String categoryName,
+        Integer categorySortOrder,
+        BigDecimal amount,
+        String unit
+) {}
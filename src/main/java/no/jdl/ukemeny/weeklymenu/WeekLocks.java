@@ -0,0 +1,48 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * PostgreSQL advisory locks per uke, så bare én transaksjon (på tvers av app-noder) oppretter
+ * meny for en gitt uke om gangen. Låsene er transaksjonsbundne (pg_advisory_xact_lock) og slippes
+ * ved commit/rollback; må derfor kalles inne i en transaksjon.
+ *
+ * Unik indeks på week_start_date er den harde garantien; låsen gjør at den som kommer sist venter
+ * og får en ryddig 409 i stedet for å generere forgjeves og feile på indeksen.
+ */
+@Component
+public class WeekLocks {
+
+    // Første nøkkel i pg_advisory_xact_lock(int, int); andre nøkkel er epochDay for mandagen
+    private static final int NAMESPACE = 0x554B4D31; // "UKM1"
+
+    private final JdbcTemplate jdbc;
+
+    public WeekLocks(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Venter til uka er ledig. */
+    public void lock(LocalDate weekStartDate) {
+        jdbc.query("select pg_advisory_xact_lock(?, ?)", rs -> null, NAMESPACE, key(weekStartDate));
+    }
+
+    /** Låser alle ukene fra og med from til og med to, i stigende rekkefølge (unngår vranglås). */
+    public void lockRange(LocalDate from, LocalDate to) {
+        jdbc.query("select pg_advisory_xact_lock(?, d) from generate_series(?, ?, 7) d",
+                rs -> null, NAMESPACE, key(from), key(to));
+    }
+
+    /** Som {@link #lock}, men gir false i stedet for å vente hvis noen andre har uka. */
+    public boolean tryLock(LocalDate weekStartDate) {
+        return Boolean.TRUE.equals(jdbc.queryForObject("select pg_try_advisory_xact_lock(?, ?)",
+                Boolean.class, NAMESPACE, key(weekStartDate)));
+    }
+
+    private static int key(LocalDate weekStartDate) {
+        return (int) weekStartDate.toEpochDay();
+    }
+}
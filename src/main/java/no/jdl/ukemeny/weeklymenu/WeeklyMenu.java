@@ -27,6 +27,10 @@ public class WeeklyMenu {
     @Column(name = "updated_at", nullable = false)
     private Instant updatedAt = Instant.now();
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     protected WeeklyMenu() {}
 
     public WeeklyMenu(LocalDate weekStartDate) {
@@ -42,6 +46,14 @@ public class WeeklyMenu {
         entries.clear();
     }
 
+    /**
+     * Markerer menyen som endret, så versjonen økes også når bare entries endres.
+     * Da er menyraden ett felles punkt for konfliktsjekk mellom samtidige endringer.
+     */
+    public void touch() {
+        updatedAt = Instant.now();
+    }
+
     @PreUpdate
     void preUpdate() {
         updatedAt = Instant.now();
@@ -50,4 +62,5 @@ public class WeeklyMenu {
     public Long getId() { return id; }
     public LocalDate getWeekStartDate () { return weekStartDate; }
     public List<WeeklyMenuEntry> getEntries() { return entries; }
+    public long getVersion() { return version; }
 }
@@ -0,0 +1,10 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Publiseres når middagene i en ukemeny er endret (opprettet, bytte av oppskrift, regenerering).
+ * changedDays er dagene der oppskriften faktisk ble byttet (tom hvis kun locked/note endret, null = alt).
+ */
+public record WeeklyMenuChangedEvent(Long weeklyMenuId, LocalDate weekStartDate, Set<Integer> changedDays) {}
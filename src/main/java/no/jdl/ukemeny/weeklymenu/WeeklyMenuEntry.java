@@ -27,6 +27,10 @@ public class WeeklyMenuEntry {
     @Column(name = "locked", nullable = false)
     private boolean locked = false;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     protected WeeklyMenuEntry() {
     }
 
@@ -0,0 +1,103 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Skriver mange ukemenyer med JDBC-batching i stedet for én INSERT per rad via Hibernate.
+ *
+ * id-kolonnene er IDENTITY, som gjør at Hibernate ikke kan batche inserts. Vi reserverer derfor
+ * id-er fra sekvensene i én spørring og setter dem selv (kolonnene er GENERATED BY DEFAULT).
+ * Må kjøres i en transaksjon; JdbcTemplate bruker samme connection som JPA.
+ */
+@Component
+public class WeeklyMenuJdbcWriter {
+
+    public record NewEntry(int dayOfWeek, long recipeId, boolean locked, String note) {}
+
+    public record NewMenu(LocalDate weekStartDate, List<NewEntry> entries) {}
+
+    private final JdbcTemplate jdbc;
+
+    public WeeklyMenuJdbcWriter(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Setter inn menyene med entries og returnerer id-ene i samme rekkefølge. */
+    public List<Long> insert(List<NewMenu> menus) {
+        if (menus.isEmpty()) {
+            return List.of();
+        }
+
+        int entryCount = 0;
+        for (var m : menus) entryCount += m.entries().size();
+
+        var menuIds = reserveIds("weekly_menu", menus.size());
+        var entryIds = reserveIds("weekly_menu_entry", entryCount);
+
+        var menuArgs = new ArrayList<Object[]>(menus.size());
+        var entryArgs = new ArrayList<Object[]>(entryCount);
+        int e = 0;
+        for (int i = 0; i < menus.size(); i++) {
+            var menu = menus.get(i);
+            menuArgs.add(new Object[]{menuIds.get(i), Date.valueOf(menu.weekStartDate())});
+            for (var entry : menu.entries()) {
+                entryArgs.add(new Object[]{
+                        entryIds.get(e++), menuIds.get(i), entry.dayOfWeek(), entry.recipeId(), entry.note(), entry.locked()
+                });
+            }
+        }
+
+        jdbc.batchUpdate("insert into weekly_menu (id, week_start_date) values (?, ?)", menuArgs);
+        jdbc.batchUpdate("""
+                insert into weekly_menu_entry (id, weekly_menu_id, day_of_week, recipe_id, note, locked)
+                values (?, ?, ?, ?, ?, ?)
+                """, entryArgs);
+
+        return menuIds;
+    }
+
+    /**
+     * Setter inn én meny med entries i én SQL-setning (én rundtur): menyraden lages i en CTE,
+     * og entries leses fra arrays med unnest. Returnerer id-en til menyen.
+     */
+    public Long insertOne(NewMenu menu) {
+        int n = menu.entries().size();
+        var days = new int[n];
+        var recipeIds = new long[n];
+        var notes = new String[n];
+        var locked = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            var entry = menu.entries().get(i);
+            days[i] = entry.dayOfWeek();
+            recipeIds[i] = entry.recipeId();
+            notes[i] = entry.note();
+            locked[i] = entry.locked();
+        }
+
+        return jdbc.queryForObject("""
+                with m as (
+                    insert into weekly_menu (week_start_date) values (?) returning id
+                ), e as (
+                    insert into weekly_menu_entry (weekly_menu_id, day_of_week, recipe_id, note, locked)
+                    select m.id, d.day_of_week, d.recipe_id, d.note, d.locked
+                    from m, unnest(?::int[], ?::bigint[], ?::text[], ?::boolean[]) as d(day_of_week, recipe_id, note, locked)
+                )
+                select id from m
+                """, Long.class, Date.valueOf(menu.weekStartDate()), days, recipeIds, notes, locked);
+    }
+
+    private List<Long> reserveIds(String table, int count) {
+        if (count == 0) {
+            return List.of();
+        }
+        return jdbc.queryForList(
+                "select nextval(pg_get_serial_sequence(?, 'id')) from generate_series(1, ?)",
+                Long.class, table, count);
+    }
+}
@@ -0,0 +1,144 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.*;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Genererer kommende ukers menyer på forhånd (om natta) og varmer handlelista deres,
+ * så mandagstoppen treffer data som allerede er lagret og cachet.
+ *
+ * Handlelista varmes bare i cachen på noden som genererte menyen (ShoppingListCache er per node);
+ * de andre nodene bygger den ved første kall som vanlig.
+ *
+ * Trygt med flere app-noder: hver uke genereres i en transaksjon som først prøver
+ * advisory-låsen for uka ({@link WeekLocks#tryLock}). Noden som ikke får låsen hopper over, og uker som
+ * allerede har meny hoppes over av alle. Låsen slippes automatisk ved commit/rollback.
+ *
+ * Metrikker: ukemeny.pregeneration.weeks{result=generated|skipped|failed},
+ * ukemeny.pregeneration.duration og ukemeny.pregeneration.lag (sekunder siden siste vellykkede kjøring
+ * på denne noden; NaN til første kjøring etter oppstart, så en omstart ikke ser ut som en fersk kjøring).
+ */
+@Component
+public class WeeklyMenuPregenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(WeeklyMenuPregenerator.class);
+
+    private final WeeklyMenuService weeklyMenuService;
+    private final WeeklyMenuRepository weeklyMenuRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final WeekLocks weekLocks;
+    private final boolean enabled;
+    private final int weeksAhead;
+    private final Clock clock;
+
+    private final Counter generated;
+    private final Counter skipped;
+    private final Counter failed;
+    private final Timer duration;
+    // null til første vellykkede kjøring
+    private volatile Instant lastSuccess;
+
+    public WeeklyMenuPregenerator(WeeklyMenuService weeklyMenuService,
+                                  WeeklyMenuRepository weeklyMenuRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  WeekLocks weekLocks,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${ukemeny.pregeneration.enabled:true}") boolean enabled,
+                                  @Value("${ukemeny.pregeneration.weeks-ahead:1}") int weeksAhead,
+                                  @Value("${ukemeny.pregeneration.zone:Europe/Oslo}") ZoneId zone) {
+        this.weeklyMenuService = weeklyMenuService;
+        this.weeklyMenuRepository = weeklyMenuRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.weekLocks = weekLocks;
+        this.enabled = enabled;
+        this.weeksAhead = weeksAhead;
+        this.clock = Clock.system(zone);
+
+        this.generated = Counter.builder("ukemeny.pregeneration.weeks")
+                .tag("result", "generated")
+                .register(meterRegistry);
+        this.skipped = Counter.builder("ukemeny.pregeneration.weeks")
+                .tag("result", "skipped")
+                .register(meterRegistry);
+        this.failed = Counter.builder("ukemeny.pregeneration.weeks")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        this.duration = Timer.builder("ukemeny.pregeneration.duration")
+                .register(meterRegistry);
+        meterRegistry.gauge("ukemeny.pregeneration.lag", this, WeeklyMenuPregenerator::lagSeconds);
+    }
+
+    @Scheduled(cron = "${ukemeny.pregeneration.cron:0 0 3 * * *}", zone = "${ukemeny.pregeneration.zone:Europe/Oslo}")
+    public void scheduled() {
+        if (!enabled) {
+            return;
+        }
+        pregenerate(LocalDate.now(clock));
+    }
+
+    /**
+     * Genererer menyer for de weeks-ahead ukene etter uka til today som ikke har meny ennå.
+     * Returnerer id-ene som ble generert av denne noden.
+     */
+    public List<Long> pregenerate(LocalDate today) {
+        return duration.record(() -> {
+            var ids = new ArrayList<Long>();
+            var nextMonday = today.with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+            boolean ok = true;
+
+            for (int w = 0; w < weeksAhead; w++) {
+                var monday = nextMonday.plusWeeks(w);
+                try {
+                    var id = generateIfMissing(monday);
+                    if (id == null) {
+                        skipped.increment();
+                        continue;
+                    }
+                    generated.increment();
+                    ids.add(id);
+                    // Etter commit: legg handlelista i cachen (kun denne nodens)
+                    weeklyMenuService.shoppingList(id, ShoppingListAggregation.APP);
+                } catch (RuntimeException e) {
+                    ok = false;
+                    failed.increment();
+                    log.warn("Pre-generation failed for week {}", monday, e);
+                }
+            }
+
+            if (ok) {
+                lastSuccess = clock.instant();
+            }
+            return ids;
+        });
+    }
+
+    /** Id til menyen som ble generert, eller null hvis en annen node har uka eller den finnes fra før. */
+    private Long generateIfMissing(LocalDate monday) {
+        return transactionTemplate.execute(status -> {
+            if (!weekLocks.tryLock(monday)) {
+                return null;
+            }
+            if (weeklyMenuRepository.existsByWeekStartDateBetween(monday, monday)) {
+                return null;
+            }
+            return weeklyMenuService.generate(monday);
+        });
+    }
+
+    private double lagSeconds() {
+        var last = lastSuccess;
+        return (last == null) ? Double.NaN : Duration.between(last, clock.instant()).toSeconds();
+    }
+}
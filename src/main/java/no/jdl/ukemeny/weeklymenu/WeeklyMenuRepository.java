@@ -8,13 +8,24 @@ import java.time.LocalDate;
 import java.util.Optional;
 
 public interface WeeklyMenuRepository  extends JpaRepository<WeeklyMenu, Long> {
+    // week_start_date er unik (V16), så sorteringen er en baklengs skanning av den indeksen
     @Query("""
         select wm from WeeklyMenu wm
         where wm.weekStartDate < :weekStartDate
-        order by wm.weekStartDate desc, wm.id desc
+        order by wm.weekStartDate desc
         """)
     java.util.List<WeeklyMenu> findPrevious(LocalDate weekStartDate, Pageable pageable);
 
+    boolean existsByWeekStartDateBetween(LocalDate from, LocalDate to);
+
+    // Unik per node og oppstart, se ShoppingListCache.nextVersion
+    @Query(value = "select nextval('shopping_list_epoch_seq')", nativeQuery = true)
+    long nextShoppingListEpoch();
+
+    // Økes ved hver endring av menyen (se WeeklyMenu.touch); ShoppingListCache sjekker cachede aggregater mot den
+    @Query("select wm.version from WeeklyMenu wm where wm.id = :id")
+    Optional<Long> findVersionById(Long id);
+
     @Query("""
         select distinct wm from WeeklyMenu wm
         left join fetch wm.entries e
@@ -22,4 +33,140 @@ public interface WeeklyMenuRepository  extends JpaRepository<WeeklyMenu, Long> {
         where wm.id = :id
         """)
     Optional<WeeklyMenu> findByIdWithEntries(Long id);
+
+    /**
+     * Inntil limit menyer med weekStartDate i [from, to], stigende, med entries og oppskrifter i samme spørring.
+     * limit ligger i subqueryen (på den unike week_start_date-indeksen), så fetch join-en ikke pagineres i minnet.
+     */
+    @Query("""
+        select distinct wm from WeeklyMenu wm
+        left join fetch wm.entries e
+        left join fetch e.recipe
+        where wm.id in (
+            select m.id from WeeklyMenu m
+            where m.weekStartDate >= :from
+              and m.weekStartDate <= :to
+            order by m.weekStartDate
+            limit :limit)
+        order by wm.weekStartDate
+        """)
+    java.util.List<WeeklyMenu> findWithEntriesBetween(LocalDate from, LocalDate to, int limit);
+
+    // Oppskrifter brukt i alle menyer med weekStartDate i [from, to) (historikk for variasjon)
+    @Query("""
+        select new no.jdl.ukemeny.weeklymenu.RecipeUse(wm.weekStartDate, e.recipe.id)
+        from WeeklyMenuEntry e
+        join e.weeklyMenu wm
+        where wm.weekStartDate >= :from
+          and wm.weekStartDate < :to
+        """)
+    java.util.List<RecipeUse> findRecipeUsesBetween(LocalDate from, LocalDate to);
+
+    // Hele handlelista i én spørring (i stedet for lazy-loading av recipe -> items -> ingredient -> category)
+    @Query("""
+        select new no.jdl.ukemeny.weeklymenu.ShoppingListRow(
+            wm.id, wm.weekStartDate, e.dayOfWeek,
+            r.id, r.name,
+            i.id, i.name,
+            c.id, c.name, c.sortOrder,
+            ri.amount, ri.unit)
+        from WeeklyMenu wm
+        left join wm.entries e
+        left join e.recipe r
+        left join r.items ri
+        left join ri.ingredient i
+        left join i.category c
+        where wm.id = :weeklyMenuId
+        order by e.id, ri.id
+        """)
+    java.util.List<ShoppingListRow> findShoppingListRows(Long weeklyMenuId);
+
+    // Samme projeksjon, men kun for gitte dager (brukes til å patche en cachet handleliste)
+    @Query("""
+        select new no.jdl.ukemeny.weeklymenu.ShoppingListRow(
+            wm.id, wm.weekStartDate, e.dayOfWeek,
+            r.id, r.name,
+            i.id, i.name,
+            c.id, c.name, c.sortOrder,
+            ri.amount, ri.unit)
+        from WeeklyMenu wm
+        join wm.entries e
+        join e.recipe r
+        left join r.items ri
+        left join ri.ingredient i
+        left join i.category c
+        where wm.id = :weeklyMenuId
+          and e.dayOfWeek in :days
+        order by e.id, ri.id
+        """)
+    java.util.List<ShoppingListRow> findShoppingListRowsForDays(Long weeklyMenuId, java.util.Collection<Integer> days);
+
+    // Samme projeksjon for alle menyer med weekStartDate i [from, to] (handleliste over flere uker)
+    @Query("""
+        select new no.jdl.ukemeny.weeklymenu.ShoppingListRow(
+            wm.id, wm.weekStartDate, e.dayOfWeek,
+            r.id, r.name,
+            i.id, i.name,
+            c.id, c.name, c.sortOrder,
+            ri.amount, ri.unit)
+        from WeeklyMenu wm
+        left join wm.entries e
+        left join e.recipe r
+        left join r.items ri
+        left join ri.ingredient i
+        left join i.category c
+        where wm.weekStartDate between :from and :to
+        order by wm.weekStartDate, wm.id, e.id, ri.id
+        """)
+    java.util.List<ShoppingListRow> findShoppingListRowsInRange(LocalDate from, LocalDate to);
+
+    // Items for oppskrifter uten meny (forhåndsvisning), samme felter som ShoppingListRow
+    @Query("""
+        select new no.jdl.ukemeny.weeklymenu.RecipeItemRow(
+            r.id, r.name,
+            i.id, i.name,
+            c.id, c.name, c.sortOrder,
+            ri.amount, ri.unit)
+        from Recipe r
+        join r.items ri
+        join ri.ingredient i
+        join i.category c
+        where r.id in :recipeIds
+        order by r.id, ri.id
+        """)
+    java.util.List<RecipeItemRow> findRecipeItemRows(java.util.Collection<Long> recipeIds);
+
+    // DB-aggregert handleliste: sum per (ingrediens, unit), sortert på kategori, sources som json_agg
+    @Query(value = """
+        select wm.id                   as "weeklyMenuId",
+               wm.week_start_date      as "weekStartDate",
+               c.id                    as "categoryId",
+               c.name                  as "categoryName",
+               c.sort_order            as "categorySortOrder",
+               i.id                    as "ingredientId",
+               cast(i.name as text)    as "ingredientName",
+               ri.unit                 as "unit",
+               sum(ri.amount)          as "total",
+               cast(json_agg(json_build_object(
+                       'dayOfWeek', e.day_of_week,
+                       'recipeId', r.id,
+                       'recipeName', r.name,
+                       'amount', ri.amount,
+                       'unit', ri.unit)
+                   order by e.day_of_week, e.id, ri.id) as text) as "sources"
+        from weekly_menu wm
+        left join weekly_menu_entry e on e.weekly_menu_id = wm.id
+        left join recipe r on r.id = e.recipe_id
+        left join recipe_item ri on ri.recipe_id = r.id
+        left join ingredient i on i.id = ri.ingredient_id
+        left join category c on c.id = i.category_id
+        where wm.id = :weeklyMenuId
+        group by wm.id, wm.week_start_date, c.id, c.name, c.sort_order, i.id, i.name, ri.unit
+        order by c.sort_order,
+                 lower(c.name) collate "C",
+                 lower(cast(i.name as text)) collate "C",
+                 -- Første rad i (e.id, ri.id)-rekkefølge, som appen: samme ingrediens i flere units står likt i begge
+                 min(array[e.id, ri.id])
+        """, nativeQuery = true)
+    java.util.List<ShoppingListAggregateRow> aggregateShoppingList(Long weeklyMenuId);
 }
\ No newline at end of file
@@ -1,14 +1,26 @@
 package no.jdl.ukemeny.weeklymenu;
 
+import no.jdl.ukemeny.common.ConflictException;
 import no.jdl.ukemeny.common.NotFoundException;
+import no.jdl.ukemeny.recipe.RecipeCatalog;
 import no.jdl.ukemeny.recipe.RecipeRepository;
+import no.jdl.ukemeny.recipe.RecipeTagIndex;
 import no.jdl.ukemeny.weeklymenu.api.*;
-
-import org.springframework.data.domain.PageRequest;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationContext;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationStrategy;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerators;
+import no.jdl.ukemeny.weeklymenu.generation.TagFilter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
 import java.time.DayOfWeek;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -17,13 +29,80 @@ import java.util.stream.Collectors;
 @Service
 public class WeeklyMenuService {
 
-    private record CatKey(Long categoryId, String categoryName, int sortOrder) {}
+    private static final TypeReference<List<ShoppingListItemSource>> SOURCES_TYPE = new TypeReference<>() {};
+
+    // Ett år holder for månedlige/kvartalsvise innkjøp
+    private static final int MAX_SHOPPING_LIST_RANGE_DAYS = 366;
+
+    // Ett år frem er mer enn nok for forhåndsplanlegging
+    private static final int MAX_GENERATE_RANGE_WEEKS = 52;
+
+    private static final int MAX_PREVIEW_ALTERNATIVES = 10;
+
+    private static final int MAX_LIST_LIMIT = 100;
+
+    // Brukes når from/to mangler i list()
+    private static final java.time.LocalDate MIN_WEEK = java.time.LocalDate.of(1, 1, 1);
+    private static final java.time.LocalDate MAX_WEEK = java.time.LocalDate.of(9999, 12, 31);
+
     private final WeeklyMenuRepository weeklyMenuRepository;
     private final RecipeRepository recipeRepository;
-
-    public WeeklyMenuService(WeeklyMenuRepository weeklyMenuRepository, RecipeRepository recipeRepository) {
+    private final ObjectMapper objectMapper;
+    private final ShoppingListAggregation defaultAggregation;
+    private final ShoppingListCache shoppingListCache;
+    private final ApplicationEventPublisher events;
+    private final MenuGenerators menuGenerators;
+    private final RecipeCatalog recipeCatalog;
+    private final RecipeHistoryCache recipeHistoryCache;
+    private final WeeklyMenuJdbcWriter weeklyMenuJdbcWriter;
+    private final RecipeWeights recipeWeights;
+    private final RecipeTagIndex recipeTagIndex;
+    private final WeekLocks weekLocks;
+    private final IdempotencyKeys idempotencyKeys;
+    private final TransactionTemplate transactionTemplate;
+    private final int regenerateMaxAttempts;
+
+    public WeeklyMenuService(WeeklyMenuRepository weeklyMenuRepository,
+                             RecipeRepository recipeRepository,
+                             ObjectMapper objectMapper,
+                             @Value("${ukemeny.shopping-list.aggregation:APP}") ShoppingListAggregation defaultAggregation,
+                             ShoppingListCache shoppingListCache,
+                             ApplicationEventPublisher events,
+                             MenuGenerators menuGenerators,
+                             RecipeCatalog recipeCatalog,
+                             RecipeHistoryCache recipeHistoryCache,
+                             WeeklyMenuJdbcWriter weeklyMenuJdbcWriter,
+                             RecipeWeights recipeWeights,
+                             RecipeTagIndex recipeTagIndex,
+                             WeekLocks weekLocks,
+                             IdempotencyKeys idempotencyKeys,
+                             TransactionTemplate transactionTemplate,
+                             @Value("${ukemeny.weekly-menu.regenerate.max-attempts:3}") int regenerateMaxAttempts) {
         this.weeklyMenuRepository = weeklyMenuRepository;
         this.recipeRepository = recipeRepository;
+        this.objectMapper = objectMapper;
+        this.defaultAggregation = defaultAggregation;
+        this.shoppingListCache = shoppingListCache;
+        this.events = events;
+        this.menuGenerators = menuGenerators;
+        this.recipeCatalog = recipeCatalog;
+        this.recipeHistoryCache = recipeHistoryCache;
+        this.weeklyMenuJdbcWriter = weeklyMenuJdbcWriter;
+        this.recipeWeights = recipeWeights;
+        this.recipeTagIndex = recipeTagIndex;
+        this.weekLocks = weekLocks;
+        this.idempotencyKeys = idempotencyKeys;
+        this.transactionTemplate = transactionTemplate;
+        this.regenerateMaxAttempts = Math.max(1, regenerateMaxAttempts);
+    }
+
+    /** Som {@link #create(CreateWeeklyMenuRequest)}; med idempotencyKey gir gjentatte kall samme meny. */
+    @Transactional
+    public Long create(CreateWeeklyMenuRequest req, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return create(req);
+        }
+        return idempotencyKeys.execute(idempotencyKey, "create", req, () -> create(req));
     }
 
     @Transactional
@@ -31,27 +110,84 @@ public class WeeklyMenuService {
         if (req.weekStartDate().getDayOfWeek() != DayOfWeek.MONDAY) {
             throw new IllegalArgumentException("weekStartDate must be a Monday");
         }
-
-        var menu = new WeeklyMenu(req.weekStartDate());
-
-        // (MVP) lar vi DB sin UNIQUE(weekly_menu_id, day_of_week) håndheve at du ikke kan ha ta middager samme dag.
+        claimWeek(req.weekStartDate());
+
+        // Oppskriftene sjekkes mot katalogen i minnet, og alt skrives i én SQL-setning
+        // (brukes også for å lagre en forhåndsvisning, så dette skal være billig)
+        var catalog = recipeCatalog.snapshot();
+        var days = new HashSet<Integer>();
+        var notInCatalog = new HashSet<Long>();
+        var entries = new ArrayList<WeeklyMenuJdbcWriter.NewEntry>(req.dinners().size());
         for (var d : req.dinners()) {
-            var recipe = recipeRepository.findById(d.recipeId())
-                    .orElseThrow(() -> new NotFoundException("Recipe not found: " + d.recipeId()));
-
-            var entry = new WeeklyMenuEntry(d.dayOfWeek(), recipe, d.note());
-            entry.setLocked(Boolean.TRUE.equals(d.locked()));
-            menu.addEntry(entry);
+            if (!days.add(d.dayOfWeek())) {
+                throw new IllegalArgumentException("Duplicate dayOfWeek: " + d.dayOfWeek());
+            }
+            if (!catalog.contains(d.recipeId())) {
+                notInCatalog.add(d.recipeId());
+            }
+            entries.add(new WeeklyMenuJdbcWriter.NewEntry(
+                    d.dayOfWeek(), d.recipeId(), Boolean.TRUE.equals(d.locked()), d.note()));
+        }
+        // Katalogen kan henge etter oppskrifter opprettet på en annen node; databasen avgjør
+        if (!notInCatalog.isEmpty()) {
+            notInCatalog.removeAll(recipeRepository.findExistingIds(notInCatalog));
+            if (!notInCatalog.isEmpty()) {
+                throw new NotFoundException("Recipe not found: " + notInCatalog.iterator().next());
+            }
         }
 
-        return weeklyMenuRepository.save(menu).getId();
+        var id = weeklyMenuJdbcWriter.insertOne(new WeeklyMenuJdbcWriter.NewMenu(req.weekStartDate(), entries));
+        events.publishEvent(new WeeklyMenuChangedEvent(id, req.weekStartDate(), null));
+        return id;
     }
 
     @Transactional(readOnly = true)
     public WeeklyMenuResponse get(Long id) {
         var menu = weeklyMenuRepository.findByIdWithEntries(id)
                 .orElseThrow(() -> new NotFoundException("Weekly menu not found: " + id));
+        return toResponse(menu);
+    }
 
+    /**
+     * Menyer for én uke (weekStartDate) eller et intervall [from, to], stigende på uke, med keyset-paginering:
+     * send nextAfter fra forrige side som after. Ingen offset, så hver side er ett indeksoppslag.
+     */
+    @Transactional(readOnly = true)
+    public WeeklyMenuListResponse list(java.time.LocalDate weekStartDate, java.time.LocalDate from,
+                                       java.time.LocalDate to, java.time.LocalDate after, int limit) {
+        if (limit < 1 || limit > MAX_LIST_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIST_LIMIT);
+        }
+        if (weekStartDate != null) {
+            if (from != null || to != null) {
+                throw new IllegalArgumentException("Use either weekStartDate or from/to");
+            }
+            from = weekStartDate;
+            to = weekStartDate;
+        }
+        if (from == null) from = MIN_WEEK;
+        if (to == null) to = MAX_WEEK;
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("to must be on or after from");
+        }
+        if (after != null && !after.isBefore(from)) {
+            from = after.plusDays(1);
+        }
+        if (to.isBefore(from)) {
+            return new WeeklyMenuListResponse(List.of(), null);
+        }
+
+        // Én ekstra rad forteller om det finnes en side til
+        var menus = weeklyMenuRepository.findWithEntriesBetween(from, to, limit + 1);
+        var hasMore = menus.size() > limit;
+        var page = hasMore ? menus.subList(0, limit) : menus;
+
+        var items = page.stream().map(this::toResponse).toList();
+        var nextAfter = hasMore ? page.get(page.size() - 1).getWeekStartDate() : null;
+        return new WeeklyMenuListResponse(items, nextAfter);
+    }
+
+    private WeeklyMenuResponse toResponse(WeeklyMenu menu) {
         var dinners = menu.getEntries().stream()
                 .sorted(Comparator.comparingInt(WeeklyMenuEntry::getDayOfWeek))
                 .map(e -> new WeeklyMenuDayResponse(
@@ -63,96 +199,121 @@ public class WeeklyMenuService {
                 ))
                 .toList();
 
-        return new WeeklyMenuResponse(menu.getId(), menu.getWeekStartDate(), dinners);
+        return new WeeklyMenuResponse(menu.getId(), menu.getWeekStartDate(), dinners, menu.getVersion());
     }
-    @Transactional
+
+    /**
+     * Ikke @Transactional: en samtidig endring av samme meny oppdages først ved commit (versjonssjekk),
+     * og da må gjeldende tilstand leses i en ny transaksjon for 409-svaret.
+     */
     public void updateDinner(Long weeklyMenuId, int dayOfWeek, UpdateWeeklyMenuDayRequest req) {
         if (dayOfWeek < 1 || dayOfWeek > 7) {
             throw new IllegalArgumentException("dayOfWeek must be between 1 and 7");
         }
+        var dinner = new WeeklyMenuEntryRequest(dayOfWeek, req.recipeId(), req.locked(), req.note());
+        inMenuTransaction(weeklyMenuId, () -> applyDinners(weeklyMenuId, List.of(dinner), req.expectedVersion()));
+    }
 
-        var menu = weeklyMenuRepository.findByIdWithEntries(weeklyMenuId)
-                .orElseThrow(() -> new NotFoundException("Weekly menu not found: " + weeklyMenuId));
-
-        var entry = menu.getEntries().stream()
-                .filter(e -> e.getDayOfWeek() == dayOfWeek)
-                .findFirst()
-                .orElseThrow(() -> new NotFoundException(
-                        "Weekly menu entry not found for dayOfWeek " + dayOfWeek + " in weekly menu " + weeklyMenuId
-                ));
-
-        var recipe = recipeRepository.findById(req.recipeId())
-                .orElseThrow(() -> new NotFoundException("Recipe not found: " + req.recipeId()));
-
-        entry.setRecipe(recipe);
-        entry.setLocked(req.locked());
-        entry.setNote(req.note());
+    /**
+     * Oppdaterer flere dager i én transaksjon: menyen lastes én gang, oppskriftene hentes med én
+     * findAllById, og endringene flushes samlet (JDBC-batchet UPDATE). Returnerer oppdatert meny.
+     */
+    public WeeklyMenuResponse updateDinners(Long weeklyMenuId, List<WeeklyMenuEntryRequest> dinners, Long expectedVersion) {
+        return inMenuTransaction(weeklyMenuId,
+                () -> get(applyDinners(weeklyMenuId, dinners, expectedVersion).getId()));
     }
-    @Transactional
-    public Long generate(java.time.LocalDate weekStartDate) {
-        if (weekStartDate.getDayOfWeek() != DayOfWeek.MONDAY){
-            throw new IllegalArgumentException("weekStartDate must be a Monday");
+
+    /** Kjører action i en egen transaksjon; en samtidig endring (også ved commit) gir 409 med gjeldende meny. */
+    private <T> T inMenuTransaction(Long weeklyMenuId, java.util.function.Supplier<T> action) {
+        try {
+            return transactionTemplate.execute(status -> action.get());
+        } catch (ConcurrencyFailureException e) {
+            throw conflict(weeklyMenuId, "Weekly menu " + weeklyMenuId + " was changed concurrently");
         }
+    }
 
-        var allIds = recipeRepository.findAllIds();
-        if (allIds.isEmpty()){
-            throw new IllegalArgumentException("No recipes exist. Create at least 1 recipe first.");
+    private WeeklyMenu applyDinners(Long weeklyMenuId, List<WeeklyMenuEntryRequest> dinners, Long expectedVersion) {
+        var seenDays = new HashSet<Integer>();
+        for (var d : dinners) {
+            if (!seenDays.add(d.dayOfWeek())) {
+                throw new IllegalArgumentException("Duplicate dayOfWeek: " + d.dayOfWeek());
+            }
         }
 
-        var previousOpt = weeklyMenuRepository
-                .findPrevious(weekStartDate, PageRequest.of(0, 1))
-                .stream()
-                .findFirst();
+        var menu = weeklyMenuRepository.findByIdWithEntries(weeklyMenuId)
+                .orElseThrow(() -> new NotFoundException("Weekly menu not found: " + weeklyMenuId));
+        checkVersion(menu, expectedVersion);
+
+        var entriesByDay = new HashMap<Integer, WeeklyMenuEntry>();
+        for (var e : menu.getEntries()) entriesByDay.put(e.getDayOfWeek(), e);
+        for (var d : dinners) {
+            if (!entriesByDay.containsKey(d.dayOfWeek())) {
+                throw new NotFoundException(
+                        "Weekly menu entry not found for dayOfWeek " + d.dayOfWeek() + " in weekly menu " + weeklyMenuId);
+            }
+        }
 
-        java.util.Set<Long> previousRecipeIds = java.util.Collections.emptySet();
-        if (previousOpt.isPresent()){
-            var prev = weeklyMenuRepository.findByIdWithEntries(previousOpt.get().getId())
-                    .orElse(previousOpt.get());
+        var byId = recipesById(dinners.stream().map(WeeklyMenuEntryRequest::recipeId).collect(Collectors.toSet()));
 
-            previousRecipeIds = prev.getEntries().stream()
-                    .map(e -> e.getRecipe().getId())
-                    .collect(Collectors.toSet());
+        var changedDays = new HashSet<Integer>();
+        for (var d : dinners) {
+            var recipe = byId.get(d.recipeId());
+            if (recipe == null) {
+                throw new NotFoundException("Recipe not found: " + d.recipeId());
+            }
+            var entry = entriesByDay.get(d.dayOfWeek());
+            if (!entry.getRecipe().getId().equals(recipe.getId())) {
+                changedDays.add(d.dayOfWeek());
+            }
+            entry.setRecipe(recipe);
+            entry.setLocked(d.locked());
+            entry.setNote(d.note());
         }
 
-        final var prevIds = previousRecipeIds;
+        // Én flush for alle dagene; order_updates + batch_size gjør det til én batch per tabell
+        menu.touch();
+        weeklyMenuRepository.saveAndFlush(menu);
+        events.publishEvent(new WeeklyMenuChangedEvent(weeklyMenuId, menu.getWeekStartDate(), changedDays));
+        return menu;
+    }
 
-        var rng = new Random();
+    @Transactional
+    public Long generate(java.time.LocalDate weekStartDate) {
+        return generate(weekStartDate, null);
+    }
 
-        // Del opp i "nye" og "brukte sist"
-        var fresh = allIds.stream()
-                .filter (id -> !prevIds.contains(id))
-                .collect(Collectors.toCollection(ArrayList::new));
+    @Transactional
+    public Long generate(java.time.LocalDate weekStartDate, MenuGenerationStrategy strategy) {
+        return generate(weekStartDate, strategy, null);
+    }
 
-        var used = allIds.stream()
-                .filter(prevIds::contains)
-                .collect(Collectors.toCollection(ArrayList::new));
+    /** Som generate(weekStartDate, strategy, tagRules); med idempotencyKey gir gjentatte kall samme meny. */
+    @Transactional
+    public Long generate(GenerateWeeklyMenuRequest req, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return generate(req.weekStartDate(), req.strategy(), req.tagRules());
+        }
+        return idempotencyKeys.execute(idempotencyKey, "generate", req,
+                () -> generate(req.weekStartDate(), req.strategy(), req.tagRules()));
+    }
 
-        Collections.shuffle(fresh, rng);
-        Collections.shuffle(used, rng);
+    @Transactional
+    public Long generate(java.time.LocalDate weekStartDate, MenuGenerationStrategy strategy, TagRulesRequest tagRules) {
+        if (weekStartDate.getDayOfWeek() != DayOfWeek.MONDAY){
+            throw new IllegalArgumentException("weekStartDate must be a Monday");
+        }
+        claimWeek(weekStartDate);
 
-        var selected = new ArrayList<Long>();
+        var selected = pickRecipes(weekStartDate, 7, Set.of(), strategy, tagRules);
 
-        if (allIds.size() >= 7) {
-            // Ingen repeats: fyll først fra fresh, så fra used
-            selected.addAll(fresh);
-            if (selected.size() < 7) {
-                selected.addAll(used);
-            }
-            selected = new ArrayList<>(selected.subList(0, 7));
-        } else {
-            // Repeats tillatt: fyll først fra fresh+used, deretter random repeats
-            selected.addAll(fresh);
-            selected.addAll(used);
-
-            while (selected.size() < 7 ) {
-                selected.add(allIds.get(rng.nextInt(allIds.size())));
-            }
-            selected = new ArrayList<>(selected.subList(0, 7));
-        }
         // Hent oppskrifter i bulk
-        var recipes = recipeRepository.findAllById(selected);
-        var byId = new HashMap<Long, no.jdl.ukemeny.recipe.Recipe>();
-        for (var r : recipes) byId.put(r.getId(), r);
+        var byId = recipesById(selected);
+        if (!byId.keySet().containsAll(selected)) {
+            // Katalogen var utdatert (oppskrift slettet på en annen node): last på nytt og trekk én gang til
+            recipeCatalog.reload();
+            selected = pickRecipes(weekStartDate, 7, Set.of(), strategy, tagRules);
+            byId = recipesById(selected);
+        }
 
         var menu = new WeeklyMenu(weekStartDate);
 
@@ -169,35 +330,184 @@ public class WeeklyMenuService {
 
         }
 
-        return weeklyMenuRepository.save(menu).getId();
+        var id = weeklyMenuRepository.save(menu).getId();
+        events.publishEvent(new WeeklyMenuChangedEvent(id, menu.getWeekStartDate(), null));
+        return id;
     }
+
+    /**
+     * Lager inntil alternatives ulike forslag til meny for uka uten å lagre noe, hver med handleliste.
+     * Read-only: generering skjer i minnet, og items for alle forslagene hentes i én spørring.
+     * Et forslag lagres ved å sende dinners til {@link #create}.
+     */
+    @Transactional(readOnly = true)
+    public List<WeeklyMenuPreviewResponse> preview(java.time.LocalDate weekStartDate, int alternatives,
+                                                   MenuGenerationStrategy strategy, TagRulesRequest tagRules) {
+        if (weekStartDate.getDayOfWeek() != DayOfWeek.MONDAY) {
+            throw new IllegalArgumentException("weekStartDate must be a Monday");
+        }
+        if (alternatives < 1 || alternatives > MAX_PREVIEW_ALTERNATIVES) {
+            throw new IllegalArgumentException("alternatives must be between 1 and " + MAX_PREVIEW_ALTERNATIVES);
+        }
+
+        var generator = menuGenerators.get(strategy);
+        var context = generationContext(weekStartDate, 7, Set.of(), tagRules);
+
+        // Samme kontekst for alle forslag; tilfeldigheten gir ulike menyer. Like forslag hoppes over.
+        var menus = new ArrayList<List<Long>>(alternatives);
+        var seen = new HashSet<List<Long>>();
+        for (int attempt = 0; attempt < alternatives * 3 && menus.size() < alternatives; attempt++) {
+            var picked = generator.generate(context);
+            if (seen.add(picked.stream().sorted().toList())) {
+                menus.add(picked);
+            }
+        }
+
+        var recipeIds = new HashSet<Long>();
+        menus.forEach(recipeIds::addAll);
+        var itemsByRecipe = new HashMap<Long, List<RecipeItemRow>>();
+        for (var row : weeklyMenuRepository.findRecipeItemRows(recipeIds)) {
+            itemsByRecipe.computeIfAbsent(row.recipeId(), k -> new ArrayList<>()).add(row);
+        }
+        var names = new HashMap<Long, String>();
+        var missing = new HashSet<Long>(recipeIds);
+        itemsByRecipe.forEach((id, rows) -> names.put(id, rows.get(0).recipeName()));
+        missing.removeAll(names.keySet());
+        if (!missing.isEmpty()) {
+            // Oppskrifter uten items har ingen rader over
+            recipeRepository.findAllById(missing).forEach(r -> names.put(r.getId(), r.getName()));
+        }
+
+        var result = new ArrayList<WeeklyMenuPreviewResponse>(menus.size());
+        for (var picked : menus) {
+            var dinners = new ArrayList<WeeklyMenuDayResponse>(7);
+            var rows = new ArrayList<ShoppingListRow>();
+            for (int day = 1; day <= 7; day++) {
+                long recipeId = picked.get(day - 1);
+                dinners.add(new WeeklyMenuDayResponse(day, recipeId, names.get(recipeId), false, null));
+                for (var item : itemsByRecipe.getOrDefault(recipeId, List.of())) {
+                    rows.add(item.onDay(weekStartDate, day));
+                }
+            }
+            var aggregate = ShoppingListAggregate.fromRows(null, weekStartDate, rows, 0);
+            var categories = aggregate.categories();
+            int itemCount = categories.stream().mapToInt(c -> c.items().size()).sum();
+            result.add(new WeeklyMenuPreviewResponse(weekStartDate, dinners, itemCount, categories));
+        }
+        return result;
+    }
+
+    /**
+     * Planlegger weeks sammenhengende uker fra fromWeekStartDate i én transaksjon.
+     * Historikken for hver uke inkluderer ukene som nettopp er planlagt, så variasjonsreglene gjelder på tvers.
+     * Katalog og historikk hentes én gang, og alt skrives med JDBC-batching.
+     */
     @Transactional
-    public WeeklyMenuResponse regenerateUnlocked(Long weeklyMenuId) {
-        var menu = weeklyMenuRepository.findByIdWithEntries(weeklyMenuId)
-                .orElseThrow(() -> new NotFoundException("Weekly menu not found: " + weeklyMenuId));
+    public List<GeneratedWeeklyMenuResponse> generateRange(java.time.LocalDate fromWeekStartDate, int weeks,
+                                                           MenuGenerationStrategy strategy, TagRulesRequest tagRules) {
+        if (fromWeekStartDate.getDayOfWeek() != DayOfWeek.MONDAY) {
+            throw new IllegalArgumentException("fromWeekStartDate must be a Monday");
+        }
+        if (weeks < 1 || weeks > MAX_GENERATE_RANGE_WEEKS) {
+            throw new IllegalArgumentException("weeks must be between 1 and " + MAX_GENERATE_RANGE_WEEKS);
+        }
+
+        var lastWeek = fromWeekStartDate.plusWeeks(weeks - 1);
+        weekLocks.lockRange(fromWeekStartDate, lastWeek);
+        if (weeklyMenuRepository.existsByWeekStartDateBetween(fromWeekStartDate, lastWeek)) {
+            throw new IllegalStateException("Weekly menus already exist between " + fromWeekStartDate + " and " + lastWeek);
+        }
 
-        // Finn hvilke oppskrifter som er brukt i forrige uke (for variasjon)
-        var previousOpt = weeklyMenuRepository
-                .findPrevious(menu.getWeekStartDate(), PageRequest.of(0, 1))
-                .stream()
-                .findFirst();
+        var menus = generateWeeks(fromWeekStartDate, weeks, strategy, tagRules);
+        var picked = menus.stream()
+                .flatMap(m -> m.entries().stream())
+                .map(WeeklyMenuJdbcWriter.NewEntry::recipeId)
+                .collect(Collectors.toSet());
+        if (recipeRepository.findExistingIds(picked).size() != picked.size()) {
+            // Utdatert katalog (oppskrift slettet på en annen node): last på nytt og generer én gang til
+            recipeCatalog.reload();
+            menus = generateWeeks(fromWeekStartDate, weeks, strategy, tagRules);
+        }
 
-        Set<Long> previousRecipeIds = Collections.emptySet();
-        if (previousOpt.isPresent()) {
-            var prev = weeklyMenuRepository.findByIdWithEntries(previousOpt.get().getId())
-                    .orElse(previousOpt.get());
+        var ids = weeklyMenuJdbcWriter.insert(menus);
 
-            previousRecipeIds = prev.getEntries().stream()
-                    .map(e -> e.getRecipe().getId())
-                    .collect(Collectors.toSet());
+        var result = new ArrayList<GeneratedWeeklyMenuResponse>(weeks);
+        for (int w = 0; w < weeks; w++) {
+            var weekStartDate = menus.get(w).weekStartDate();
+            events.publishEvent(new WeeklyMenuChangedEvent(ids.get(w), weekStartDate, null));
+            result.add(new GeneratedWeeklyMenuResponse(ids.get(w), weekStartDate));
         }
-        final Set<Long> prevIds = previousRecipeIds;
+        return result;
+    }
 
-        var allIds = recipeRepository.findAllIds();
-        if (allIds.isEmpty()) {
+    /** Genererer weeks uker i minnet; historikken rulles fremover med hver genererte uke. */
+    private List<WeeklyMenuJdbcWriter.NewMenu> generateWeeks(java.time.LocalDate fromWeekStartDate, int weeks,
+                                                              MenuGenerationStrategy strategy, TagRulesRequest tagRules) {
+        var catalog = recipeCatalog.snapshot();
+        if (catalog.isEmpty()) {
             throw new IllegalArgumentException("No recipes exist. Create at least 1 recipe first.");
         }
 
+        var generator = menuGenerators.get(strategy);
+        var tags = tagFilter(catalog, tagRules);
+        var history = recipeHistoryCache.history(fromWeekStartDate, catalog);
+        var weights = recipeWeights.table(catalog);
+        var rng = new Random();
+
+        var menus = new ArrayList<WeeklyMenuJdbcWriter.NewMenu>(weeks);
+        for (int w = 0; w < weeks; w++) {
+            var weekStartDate = fromWeekStartDate.plusWeeks(w);
+            var picked = generator.generate(MenuGenerationContext.of(catalog, 7, Set.of(), history, weights, rng, tags));
+
+            var entries = new ArrayList<WeeklyMenuJdbcWriter.NewEntry>(7);
+            var used = new BitSet(catalog.size());
+            for (int day = 1; day <= 7; day++) {
+                long recipeId = picked.get(day - 1);
+                entries.add(new WeeklyMenuJdbcWriter.NewEntry(day, recipeId, false, null)); // generert = ulåst
+                used.set(catalog.indexOf(recipeId));
+            }
+            menus.add(new WeeklyMenuJdbcWriter.NewMenu(weekStartDate, entries));
+
+            history = history.nextWeek(used);
+        }
+        return menus;
+    }
+
+    public WeeklyMenuResponse regenerateUnlocked(Long weeklyMenuId) {
+        return regenerateUnlocked(weeklyMenuId, null);
+    }
+
+    public WeeklyMenuResponse regenerateUnlocked(Long weeklyMenuId, MenuGenerationStrategy strategy) {
+        return regenerateUnlocked(weeklyMenuId, strategy, null, null);
+    }
+
+    /**
+     * Ikke @Transactional: hvert forsøk kjører i sin egen transaksjon. Menyen leses uten radlåser mens
+     * generatoren velger; endringer fra andre i mellomtiden gir versjonskonflikt ved skriving, og da
+     * prøver vi på nytt med fersk tilstand (maks ukemeny.weekly-menu.regenerate.max-attempts ganger).
+     * Med expectedVersion prøves det ikke på nytt hvis klientens versjon allerede er utdatert.
+     */
+    public WeeklyMenuResponse regenerateUnlocked(Long weeklyMenuId, MenuGenerationStrategy strategy,
+                                                 TagRulesRequest tagRules, Long expectedVersion) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(
+                        status -> regenerateUnlockedOnce(weeklyMenuId, strategy, tagRules, expectedVersion));
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= regenerateMaxAttempts) {
+                    throw conflict(weeklyMenuId, "Weekly menu " + weeklyMenuId
+                            + " was changed concurrently (" + attempt + " attempts)");
+                }
+            }
+        }
+    }
+
+    private WeeklyMenuResponse regenerateUnlockedOnce(Long weeklyMenuId, MenuGenerationStrategy strategy,
+                                                      TagRulesRequest tagRules, Long expectedVersion) {
+        var menu = weeklyMenuRepository.findByIdWithEntries(weeklyMenuId)
+                .orElseThrow(() -> new NotFoundException("Weekly menu not found: " + weeklyMenuId));
+        checkVersion(menu, expectedVersion);
+
         // Dager som skal beholdes (låste)
         var lockedRecipeIds = menu.getEntries().stream()
                 .filter(WeeklyMenuEntry::isLocked)
@@ -215,57 +525,19 @@ public class WeeklyMenuService {
             return get(menu.getId());
         }
 
-        // Kandidater: prøv først "fresh" (ikke brukt forrige uke), og ikke de som er låst denne uka
-        var rng = new Random();
-
-        var fresh = allIds.stream()
-                .filter(id -> !prevIds.contains(id))
-                .filter(id -> !lockedRecipeIds.contains(id))
-                .collect(Collectors.toCollection(ArrayList::new));
-
-        var used = allIds.stream()
-                .filter(prevIds::contains)
-                .filter(id -> !lockedRecipeIds.contains(id))
-                .collect(Collectors.toCollection(ArrayList::new));
-
-        Collections.shuffle(fresh, rng);
-        Collections.shuffle(used, rng);
-
-        // Velg nye recipeIds til ulåste dager (unngå duplikater der det er mulig)
-        var picked = new ArrayList<Long>();
-
-        var pool = new ArrayList<Long>();
-        pool.addAll(fresh);
-        pool.addAll(used);
-
-        // Hvis pool er tom (f.eks. alle oppskrifter er låst), må vi tillate bruk av låste oppskrifter også
-        if (pool.isEmpty()) {
-            pool = new ArrayList<>(allIds);
-            Collections.shuffle(pool, rng);
-        }
-
-        // Plukk så mange vi trenger
-        while (picked.size() < unlockedEntries.size()) {
-            // Hvis vi går tom og trenger flere (få oppskrifter), tillat repeats
-            if (pool.isEmpty()) {
-                picked.add(allIds.get(rng.nextInt(allIds.size())));
-                continue;
-            }
-
-            var candidate = pool.remove(0);
-
-            // Unngå repeats i picked hvis mulig
-            if (!picked.contains(candidate) || allIds.size() < unlockedEntries.size()) {
-                picked.add(candidate);
-            }
-        }
+        var picked = pickRecipes(menu.getWeekStartDate(), unlockedEntries.size(), lockedRecipeIds, strategy, tagRules);
 
         // Bulk-fetch
-        var recipes = recipeRepository.findAllById(picked);
-        var byId = new HashMap<Long, no.jdl.ukemeny.recipe.Recipe>();
-        for (var r : recipes) byId.put(r.getId(), r);
+        var byId = recipesById(picked);
+        if (!byId.keySet().containsAll(picked)) {
+            // Som i generate: utdatert katalog, prøv én gang til med fersk
+            recipeCatalog.reload();
+            picked = pickRecipes(menu.getWeekStartDate(), unlockedEntries.size(), lockedRecipeIds, strategy, tagRules);
+            byId = recipesById(picked);
+        }
 
         // Oppdater entries (kun ulåste)
+        var changedDays = new HashSet<Integer>();
         for (int i = 0; i < unlockedEntries.size(); i++) {
             var entry = unlockedEntries.get(i);
             var recipeId = picked.get(i);
@@ -273,109 +545,257 @@ public class WeeklyMenuService {
             if (recipe == null) {
                 throw new IllegalArgumentException("Recipe not found during regeneration: " + recipeId);
             }
+            if (!entry.getRecipe().getId().equals(recipeId)) {
+                changedDays.add(entry.getDayOfWeek());
+            }
             entry.setRecipe(recipe);
             // locked=false beholdes
         }
 
-        // lagre (ikke strengt nødvendig med JPA + @Transactional, men ok å være eksplisitt)
-        weeklyMenuRepository.save(menu);
+        // flush her, så versjonskonflikt oppdages før vi bygger svaret og svaret får ny versjon
+        menu.touch();
+        weeklyMenuRepository.saveAndFlush(menu);
+        events.publishEvent(new WeeklyMenuChangedEvent(menu.getId(), menu.getWeekStartDate(), changedDays));
 
         return get(menu.getId());
     }
 
-    @Transactional(readOnly = true)
-    public ShoppingListResponse shoppingList(Long weeklyMenuId) {
-        var menu = weeklyMenuRepository.findByIdWithEntries(weeklyMenuId)
-                .orElseThrow(() -> new NotFoundException("Weekly menu not found: " + weeklyMenuId));
+    private void checkVersion(WeeklyMenu menu, Long expectedVersion) {
+        if (expectedVersion != null && expectedVersion != menu.getVersion()) {
+            throw new ConflictException("Weekly menu " + menu.getId() + " has version " + menu.getVersion()
+                    + ", expected " + expectedVersion, get(menu.getId()));
+        }
+    }
 
-        // Key = ingredientsId + unit (samme ingrediens med ulike unit skal ikke blandes)
-        record Key(Long ingredientId, String unit) {
-        }
-
-        // Intern accumulator
-        class Acc {
-            Long ingredientId;
-            String ingredientName;
-            Long categoryId;
-            String categoryName;
-            int categorySortOrder;
-            String unit;
-            BigDecimal total = BigDecimal.ZERO;
-            List<ShoppingListItemSource> sources = new ArrayList<>();
-
-            Acc(Long ingredientId, String ingredientName,
-                Long categoryId, String categoryName, int categorySortOrder,
-                String unit) {
-                this.ingredientId = ingredientId;
-                this.ingredientName = ingredientName;
-                this.categoryId = categoryId;
-                this.categoryName = categoryName;
-                this.categorySortOrder = categorySortOrder;
-                this.unit = unit;
-            }
+    /** 409 med gjeldende tilstand, lest i en ny transaksjon (den som feilet er rullet tilbake). */
+    private ConflictException conflict(Long weeklyMenuId, String message) {
+        return new ConflictException(message, transactionTemplate.execute(status -> get(weeklyMenuId)));
+    }
+
+    /**
+     * Tar låsen for uka (venter på en samtidig oppretting av samme uke) og gir 409 hvis uka allerede har meny.
+     * Den unike indeksen på week_start_date stopper resten; låsen gjør at den som taper ikke gjør jobben forgjeves.
+     */
+    private void claimWeek(java.time.LocalDate weekStartDate) {
+        weekLocks.lock(weekStartDate);
+        if (weeklyMenuRepository.existsByWeekStartDateBetween(weekStartDate, weekStartDate)) {
+            throw new IllegalStateException("Weekly menu already exists for week " + weekStartDate);
+        }
+    }
+
+    /**
+     * Felles for generate/regenerate: velger slots oppskrifter med valgt (eller default) generator.
+     */
+    private List<Long> pickRecipes(java.time.LocalDate weekStartDate, int slots,
+                                   Set<Long> lockedRecipeIds, MenuGenerationStrategy strategy,
+                                   TagRulesRequest tagRules) {
+        var generator = menuGenerators.get(strategy);
+        return generator.generate(generationContext(weekStartDate, slots, lockedRecipeIds, tagRules));
+    }
 
-            void add(int dayOfWeek, Long recipeId, String recipeName, BigDecimal amount) {
-                total = total.add(amount);
-                sources.add(new ShoppingListItemSource(dayOfWeek, recipeId, recipeName, amount, unit));
+    private MenuGenerationContext generationContext(java.time.LocalDate weekStartDate, int slots,
+                                                    Set<Long> lockedRecipeIds, TagRulesRequest tagRules) {
+        // Snapshot i minnet i stedet for findAllIds() per kall
+        var catalog = recipeCatalog.snapshot();
+        if (catalog.isEmpty()) {
+            throw new IllegalArgumentException("No recipes exist. Create at least 1 recipe first.");
+        }
+
+        var tags = tagFilter(catalog, tagRules);
+        var history = recipeHistoryCache.history(weekStartDate, catalog);
+
+        return MenuGenerationContext.of(catalog, slots, lockedRecipeIds, history,
+                recipeWeights.table(catalog), new Random(), tags);
+    }
+
+    /**
+     * Oversetter tag-reglene til bitmasker over katalogens tag-masker (ingen spørring).
+     * Ukjente tagger i require/minDays kan aldri oppfylles og gir 400; ukjente i exclude ignoreres.
+     */
+    private TagFilter tagFilter(RecipeCatalog.Snapshot catalog, TagRulesRequest rules) {
+        if (rules == null) {
+            return TagFilter.NONE;
+        }
+
+        // Biter og masker fra samme tilstand i indeksen
+        var tags = recipeTagIndex.view(catalog);
+        long require = 0;
+        for (var tag : RecipeTagIndex.normalize(rules.require())) {
+            require |= knownTagBit(tags, tag);
+        }
+        long exclude = 0;
+        for (var tag : RecipeTagIndex.normalize(rules.exclude())) {
+            exclude |= tags.bit(tag);
+        }
+        if ((require & exclude) != 0) {
+            throw new IllegalArgumentException("A tag cannot be both required and excluded");
+        }
+
+        var minDays = (rules.minDays() == null) ? Map.<String, Integer>of() : rules.minDays();
+        var quotaTags = new long[minDays.size()];
+        var quotaDays = new int[minDays.size()];
+        int q = 0;
+        for (var e : new TreeMap<>(minDays).entrySet()) {
+            var tag = RecipeTagIndex.normalize(List.of(e.getKey()));
+            if (tag.isEmpty()) {
+                throw new IllegalArgumentException("minDays has a blank tag");
             }
+            quotaTags[q] = knownTagBit(tags, tag.iterator().next());
+            quotaDays[q] = e.getValue();
+            q++;
+        }
+
+        var filter = new TagFilter(tags.masks(), tags.unknown(), require, exclude, quotaTags, quotaDays);
+        if (!filter.anyAllowed(catalog.size())) {
+            throw new IllegalArgumentException("No recipes match the tag rules");
         }
+        return filter;
+    }
 
-        Map<Key, Acc> acc = new LinkedHashMap<>();
+    private static long knownTagBit(RecipeTagIndex.View tags, String tag) {
+        long bit = tags.bit(tag);
+        if (bit == 0) {
+            throw new IllegalArgumentException("Unknown tag: " + tag);
+        }
+        return bit;
+    }
 
-        for (var dayEntry : menu.getEntries()) {
-            var dayOfWeek = dayEntry.getDayOfWeek();
-            var recipe = dayEntry.getRecipe();
+    private Map<Long, no.jdl.ukemeny.recipe.Recipe> recipesById(Collection<Long> ids) {
+        var byId = new HashMap<Long, no.jdl.ukemeny.recipe.Recipe>();
+        for (var r : recipeRepository.findAllById(ids)) byId.put(r.getId(), r);
+        return byId;
+    }
 
-            var recipeId = recipe.getId();
-            var recipeName = recipe.getName();
+    public ShoppingListResponse shoppingList(Long weeklyMenuId) {
+        return shoppingList(weeklyMenuId, null);
+    }
 
-            for (var item : recipe.getItems()) {
-                var ing = item.getIngredient();
-                var unit = item.getUnit();
-                var cat = ing.getCategory();
-                var categoryId = cat.getId();
-                var categoryName = cat.getName();
-                var categorySortOrder = cat.getSortOrder();
-                var key = new Key(ing.getId(), unit);
-                var bucket = acc.get(key);
-                if (bucket == null) {
-                    bucket = new Acc(ing.getId(), ing.getName(), categoryId, categoryName, categorySortOrder, unit);
-                    acc.put(key, bucket);
-                }
+    // Ikke @Transactional: et cache-treff trenger bare versjonsoppslaget i ShoppingListCache.get.
+    // Begge aggregeringsmodusene gir samme resultat, så et cachet aggregat brukes uansett modus.
+    // DB-modus bygger svaret rett fra radene og legger ingenting i cachen.
+    public ShoppingListResponse shoppingList(Long weeklyMenuId, ShoppingListAggregation aggregation) {
+        var mode = (aggregation == null) ? defaultAggregation : aggregation;
+        if (mode == ShoppingListAggregation.DB) {
+            return shoppingListCache.get(weeklyMenuId)
+                    .map(ShoppingListAggregate::toResponse)
+                    .orElseGet(() -> shoppingListFromDb(weeklyMenuId));
+        }
+        return shoppingListAggregate(weeklyMenuId).toResponse();
+    }
 
-                bucket.add(dayOfWeek, recipeId, recipeName, item.getAmount());
+    /**
+     * Endrede handleliste-linjer siden en tidligere versjon (for synk fra mobil).
+     * Er versjonen ukjent (f.eks. cachen er bygget på nytt) får klienten alle linjer med fullResync=true.
+     */
+    public ShoppingListChangesResponse shoppingListChanges(Long weeklyMenuId, long sinceVersion) {
+        var aggregate = shoppingListAggregate(weeklyMenuId);
+
+        // version + linjer må leses konsistent, så vi holder aggregatet låst
+        synchronized (aggregate) {
+            var changes = aggregate.changesSince(sinceVersion);
+            if (changes == null) {
+                return new ShoppingListChangesResponse(weeklyMenuId, aggregate.version(), true, aggregate.allLines());
             }
+            return new ShoppingListChangesResponse(weeklyMenuId, aggregate.version(), false, changes);
         }
+    }
 
-        //Sorter sources inne i hver accumulator
-        var grouped = acc.values().stream()
-                .collect(Collectors.groupingBy(
-                        a -> new CatKey(a.categoryId, a.categoryName, a.categorySortOrder),
-                        LinkedHashMap::new,
-                        Collectors.toList()
-                ));
-
-        var categories = grouped.entrySet().stream()
-                .sorted(Comparator
-                        .comparingInt((Map.Entry<CatKey, List<Acc>> e) -> e.getKey().sortOrder())
-                        .thenComparing(e -> e.getKey().categoryName(), String.CASE_INSENSITIVE_ORDER)
-                )
-                .map(e -> {
-                    var items = e.getValue().stream()
-                            .peek(a -> a.sources.sort(Comparator.comparingInt(ShoppingListItemSource::dayOfWeek)))
-                            .sorted(Comparator.comparing(a -> a.ingredientName, String.CASE_INSENSITIVE_ORDER))
-                            .map(a -> new ShoppingListItemResponse(
-                                    a.ingredientId,
-                                    a.ingredientName,
-                                    a.total,
-                                    a.unit,
-                                    List.copyOf(a.sources)
-                            ))
-                            .toList();
-
-                    return new ShoppingListCategoryResponse(e.getKey().categoryName(), items);
-                })
-                .toList();
-        return new ShoppingListResponse(menu.getId(), menu.getWeekStartDate(), categories);
+    /**
+     * Samlet handleliste for alle ukemenyer med weekStartDate i [from, to] (f.eks. innkjøp for en måned).
+     * Samme nøkler (ingrediens + unit) og kategorigruppering som for én uke; sources får dato.
+     *
+     * Alle rader hentes i én spørring, hver uke aggregeres parallelt og resultatene slås sammen til slutt.
+     */
+    @Transactional(readOnly = true)
+    public ShoppingListRangeResponse shoppingList(java.time.LocalDate from, java.time.LocalDate to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("from and to are required");
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must be before or equal to to");
+        }
+        if (java.time.temporal.ChronoUnit.DAYS.between(from, to) > MAX_SHOPPING_LIST_RANGE_DAYS) {
+            throw new IllegalArgumentException("Range can be at most " + MAX_SHOPPING_LIST_RANGE_DAYS + " days");
+        }
+
+        var rowsByMenu = weeklyMenuRepository.findShoppingListRowsInRange(from, to).stream()
+                .collect(Collectors.groupingBy(ShoppingListRow::weeklyMenuId, LinkedHashMap::new, Collectors.toList()));
+
+        // Hver uke bygges for seg (ingen delt tilstand), og reduce slår sammen parvis i rekkefølge
+        var merged = rowsByMenu.values().parallelStream()
+                .map(ShoppingListAggregate::fromRowsWithDates)
+                .reduce(ShoppingListAggregate::mergeFrom);
+
+        return new ShoppingListRangeResponse(
+                from,
+                to,
+                List.copyOf(rowsByMenu.keySet()),
+                merged.map(ShoppingListAggregate::categories).orElse(List.of())
+        );
+    }
+
+    /** Cachet aggregat, eller et nytt bygget i appen (kan patches og gi endringer siden en versjon). */
+    private ShoppingListAggregate shoppingListAggregate(Long weeklyMenuId) {
+        var cached = shoppingListCache.get(weeklyMenuId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        var generation = shoppingListCache.generation();
+        var recipeGeneration = recipeCatalog.generation();
+        var menuVersion = weeklyMenuRepository.findVersionById(weeklyMenuId)
+                .orElseThrow(() -> new NotFoundException("Weekly menu not found: " + weeklyMenuId));
+        var version = shoppingListCache.nextVersion();
+        var aggregate = aggregateInApp(weeklyMenuId, version);
+        shoppingListCache.put(aggregate, generation, menuVersion, recipeGeneration);
+        return aggregate;
+    }
+
+    private ShoppingListResponse shoppingListFromDb(Long weeklyMenuId) {
+        // Radene kommer ferdig summert per ingrediens + unit og sortert som handlelista, med sources som JSON.
+        // Menyen er med selv uten entries (én rad uten ingrediens), så ingen egen spørring for den.
+        var rows = weeklyMenuRepository.aggregateShoppingList(weeklyMenuId);
+        if (rows.isEmpty()) {
+            throw new NotFoundException("Weekly menu not found: " + weeklyMenuId);
+        }
+
+        var byCategory = new LinkedHashMap<Long, List<ShoppingListItemResponse>>();
+        var categoryNames = new HashMap<Long, String>();
+        for (var row : rows) {
+            if (row.getIngredientId() == null) continue;
+            categoryNames.put(row.getCategoryId(), row.getCategoryName());
+            byCategory.computeIfAbsent(row.getCategoryId(), k -> new ArrayList<>()).add(new ShoppingListItemResponse(
+                    row.getIngredientId(),
+                    row.getIngredientName(),
+                    row.getTotal(),
+                    row.getUnit(),
+                    readSources(row.getSources())
+            ));
+        }
+
+        var categories = new ArrayList<ShoppingListCategoryResponse>(byCategory.size());
+        byCategory.forEach((categoryId, items) ->
+                categories.add(new ShoppingListCategoryResponse(categoryNames.get(categoryId), List.copyOf(items))));
+        var menu = rows.get(0);
+        return new ShoppingListResponse(menu.getWeeklyMenuId(), menu.getWeekStartDate(), List.copyOf(categories));
+    }
+
+    private List<ShoppingListItemSource> readSources(String json) {
+        try {
+            return objectMapper.readValue(json, SOURCES_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new java.io.UncheckedIOException("Could not read shopping list sources from database", e);
+        }
+    }
+
+    private ShoppingListAggregate aggregateInApp(Long weeklyMenuId, long version) {
+        // Én spørring: meny + entries + oppskrifter + items + ingredienser + kategorier som flate rader
+        var rows = weeklyMenuRepository.findShoppingListRows(weeklyMenuId);
+        if (rows.isEmpty()) {
+            throw new NotFoundException("Weekly menu not found: " + weeklyMenuId);
+        }
+        var menuRow = rows.get(0);
+
+        return ShoppingListAggregate.fromRows(menuRow.weeklyMenuId(), menuRow.weekStartDate(), rows, version);
     }
 }
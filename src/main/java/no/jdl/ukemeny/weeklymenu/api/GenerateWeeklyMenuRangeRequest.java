@@ -0,0 +1,18 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationStrategy;
+
+import java.time.LocalDate;
+
+public record GenerateWeeklyMenuRangeRequest(
+        @NotNull LocalDate fromWeekStartDate,
+        @NotNull @Min(1) @Max(52) Integer weeks,
+        // Valgfri; default fra ukemeny.generation.strategy
+        MenuGenerationStrategy strategy,
+        // Valgfri; gjelder hver uke
+        @Valid TagRulesRequest tagRules
+) {}
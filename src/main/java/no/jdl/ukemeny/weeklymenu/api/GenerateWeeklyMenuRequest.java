@@ -1,7 +1,15 @@
 package no.jdl.ukemeny.weeklymenu.api;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationStrategy;
 
 import java.time.LocalDate;
 
-public record GenerateWeeklyMenuRequest(@NotNull LocalDate weekStartDate) {}
\ No newline at end of file
+public record GenerateWeeklyMenuRequest(
+        @NotNull LocalDate weekStartDate,
+        // Valgfri; default fra ukemeny.generation.strategy
+        MenuGenerationStrategy strategy,
+        // Valgfri
+        @Valid TagRulesRequest tagRules
+) {}
@@ -0,0 +1,5 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import java.time.LocalDate;
+
+public record GeneratedWeeklyMenuResponse(Long id, LocalDate weekStartDate) {}
@@ -0,0 +1,19 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationStrategy;
+
+import java.time.LocalDate;
+
+public record PreviewWeeklyMenuRequest(
+        @NotNull LocalDate weekStartDate,
+        // Valgfri; default 3
+        @Min(1) @Max(10) Integer alternatives,
+        // Valgfri; default fra ukemeny.generation.strategy
+        MenuGenerationStrategy strategy,
+        // Valgfri
+        @Valid TagRulesRequest tagRules
+) {}
@@ -1,10 +1,13 @@
-// src/main/java/no/jdl/ukemeny/weeklymenu/api/RegenerateWeeklyMenuRequest.java
 package no.jdl.ukemeny.weeklymenu.api;
 
-import jakarta.validation.constraints.NotNull;
-
-import java.time.LocalDate;
+import jakarta.validation.Valid;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationStrategy;
 
 public record RegenerateWeeklyMenuRequest(
-        @NotNull LocalDate weekStartDate
-) {}
\ No newline at end of file
+        // Valgfri; overstyrer ?strategy=
+        MenuGenerationStrategy strategy,
+        // Valgfri
+        @Valid TagRulesRequest tagRules,
+        // Valgfri; versjonen fra GET. Gir 409 hvis menyen er endret siden
+        Long expectedVersion
+) {}
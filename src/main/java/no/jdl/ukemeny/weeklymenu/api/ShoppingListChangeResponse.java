@@ -0,0 +1,14 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public record ShoppingListChangeResponse(
+        Long ingredientId,
+        String ingredientName,
+        String category,
+        String unit,
+        BigDecimal amount,
+        List<ShoppingListItemSource> sources,
+        boolean removed
+) {}
@@ -0,0 +1,10 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import java.util.List;
+
+public record ShoppingListChangesResponse(
+        Long weeklyMenuId,
+        long version,
+        boolean fullResync,
+        List<ShoppingListChangeResponse> changes
+) {}
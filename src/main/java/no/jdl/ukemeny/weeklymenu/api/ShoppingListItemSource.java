@@ -1,11 +1,16 @@
 package no.jdl.ukemeny.weeklymenu.api;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.math.BigDecimal;
+import java.time.LocalDate;
 
 public record ShoppingListItemSource(
         int dayOfWeek,
         Long recipeId,
         String recipeName,
         BigDecimal amount,
-        String unit
-) {}
\ No newline at end of file
+        String unit,
+        // Kun satt for handlelister over flere uker (ellers er dayOfWeek entydig)
+        @JsonInclude(JsonInclude.Include.NON_NULL) LocalDate date
+) {}
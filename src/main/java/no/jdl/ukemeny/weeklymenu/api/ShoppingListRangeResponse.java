@@ -0,0 +1,11 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record ShoppingListRangeResponse(
+        LocalDate from,
+        LocalDate to,
+        List<Long> weeklyMenuIds,
+        List<ShoppingListCategoryResponse> categories
+) {}
@@ -0,0 +1,22 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tag-regler for generering, f.eks. "minst 2 fiskedager, aldri svin":
+ * {"minDays": {"fisk": 2}, "exclude": ["svin"]}. Alle felter er valgfrie.
+ *
+ * @param require alle middager må ha disse taggene (f.eks. ["vegetar"])
+ * @param exclude ingen middager kan ha noen av disse
+ * @param minDays minst så mange dager i uka med taggen; låste dager teller med
+ */
+public record TagRulesRequest(
+        List<String> require,
+        List<String> exclude,
+        Map<String, @NotNull @Min(1) @Max(7) Integer> minDays
+) {}
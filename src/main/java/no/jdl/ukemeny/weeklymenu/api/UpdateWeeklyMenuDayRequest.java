@@ -5,5 +5,7 @@ import jakarta.validation.constraints.NotNull;
 public record UpdateWeeklyMenuDayRequest(
         @NotNull Long recipeId,
         @NotNull Boolean locked,
-        String note
+        String note,
+        // Valgfri; versjonen fra GET. Gir 409 hvis menyen er endret siden
+        Long expectedVersion
 ) {}
\ No newline at end of file
@@ -0,0 +1,13 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record UpdateWeeklyMenuDinnersRequest(
+        @NotEmpty @Size(max = 7) @Valid List<WeeklyMenuEntryRequest> dinners,
+        // Valgfri; versjonen fra GET. Gir 409 hvis menyen er endret siden
+        Long expectedVersion
+) {}
@@ -4,10 +4,16 @@ package no.jdl.ukemeny.weeklymenu.api;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import no.jdl.ukemeny.weeklymenu.ShoppingListAggregation;
 import no.jdl.ukemeny.weeklymenu.WeeklyMenuService;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationStrategy;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.util.List;
+
 @RestController
 @RequestMapping("/weekly-menus")
 @Tag(name = "Weekly menus", description = "Ukemenyer + handleliste")
@@ -23,36 +29,85 @@ public class WeeklyMenuController {
     @ResponseStatus(HttpStatus.CREATED)
     @Operation(
             summary = "Opprett ukemeny (manuelt)",
-            description = "Oppretter ukemeny for en uke. weekStartDate må være mandag. dinners inneholder dayOfWeek (1-7), recipeId, locked og ev. note."
+            description = "Oppretter ukemeny for en uke. weekStartDate må være mandag. dinners inneholder dayOfWeek (1-7), recipeId, locked og ev. note. Gir 409 hvis uka allerede har en meny. Med header Idempotency-Key gir gjentatte kall med samme nøkkel og body samme id (annen body med samme nøkkel gir 400)."
     )
-    public CreateWeeklyMenuResponse create(@Valid @RequestBody CreateWeeklyMenuRequest request) {
-        return new CreateWeeklyMenuResponse(service.create(request));
+    public CreateWeeklyMenuResponse create(
+            @Valid @RequestBody CreateWeeklyMenuRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
+    ) {
+        return new CreateWeeklyMenuResponse(service.create(request, idempotencyKey));
     }
 
     @PostMapping("/generate")
     @ResponseStatus(HttpStatus.CREATED)
     @Operation(
             summary = "Generer ukemeny automatisk",
-            description = "Genererer en ukemeny for en uke (weekStartDate må være mandag). Prøver å variere fra forrige uke når mulig."
+            description = "Genererer en ukemeny for en uke (weekStartDate må være mandag). strategy=CONSTRAINT unngår oppskrifter fra de siste ukene og for mange middager med samme hovedingrediens; strategy=RANDOM varierer kun fra forrige uke; strategy=OVERLAP er som CONSTRAINT, men foretrekker middager som deler ingredienser (kortere handleliste). Default fra ukemeny.generation.strategy. tagRules: require (alle middager må ha taggene), exclude (aldri disse) og minDays (minst N dager med taggen), f.eks. {\"minDays\":{\"fisk\":2},\"exclude\":[\"svin\"]}. Ukjente tagger i require/minDays gir 400. Gir 409 hvis uka allerede har en meny; samtidige kall for samme uke venter på hverandre. Med header Idempotency-Key gir et nytt forsøk samme meny i stedet for 409."
+    )
+    public CreateWeeklyMenuResponse generate(
+            @Valid @RequestBody GenerateWeeklyMenuRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey
+    ) {
+        return new CreateWeeklyMenuResponse(service.generate(request, idempotencyKey));
+    }
+
+    @PostMapping("/preview")
+    @Operation(
+            summary = "Forhåndsvis genererte ukemenyer (lagrer ingenting)",
+            description = "Returnerer inntil alternatives (1-10, default 3) ulike forslag for uka, hver med handleliste. Samme strategy/tagRules som generate. Lagre et forslag ved å sende dinners til POST /weekly-menus."
     )
-    public CreateWeeklyMenuResponse generate(@Valid @RequestBody GenerateWeeklyMenuRequest request) {
-        return new CreateWeeklyMenuResponse(service.generate(request.weekStartDate()));
+    public List<WeeklyMenuPreviewResponse> preview(@Valid @RequestBody PreviewWeeklyMenuRequest request) {
+        int alternatives = (request.alternatives() == null) ? 3 : request.alternatives();
+        return service.preview(request.weekStartDate(), alternatives, request.strategy(), request.tagRules());
+    }
+
+    @PostMapping("/generate-range")
+    @ResponseStatus(HttpStatus.CREATED)
+    @Operation(
+            summary = "Generer ukemenyer for flere uker",
+            description = "Planlegger weeks (1-52) sammenhengende uker fra fromWeekStartDate (mandag) i én transaksjon. Variasjonsreglene gjelder også mellom ukene som genereres. Gir 409 hvis det allerede finnes en ukemeny i perioden."
+    )
+    public List<GeneratedWeeklyMenuResponse> generateRange(@Valid @RequestBody GenerateWeeklyMenuRangeRequest request) {
+        return service.generateRange(request.fromWeekStartDate(), request.weeks(), request.strategy(), request.tagRules());
     }
 
     @PostMapping("/{id}/regenerate")
     @ResponseStatus(HttpStatus.OK)
     @Operation(
             summary = "Regenerer ukemeny (kun ulåste dager)",
-            description = "Bytter kun ut middager der locked=false. Låste dager beholdes."
+            description = "Bytter kun ut middager der locked=false. Låste dager beholdes. strategy=RANDOM|CONSTRAINT|OVERLAP og ev. tagRules (i body) som for generate; låste dager teller med i minDays. Prøver automatisk på nytt hvis menyen endres samtidig; gir 409 med gjeldende meny (current) hvis det fortsatt kolliderer, eller hvis expectedVersion (i body) ikke lenger stemmer."
     )
-    public WeeklyMenuResponse regenerate(@PathVariable Long id) {
-        return service.regenerateUnlocked(id);
+    public WeeklyMenuResponse regenerate(
+            @PathVariable Long id,
+            @RequestParam(required = false) MenuGenerationStrategy strategy,
+            @Valid @RequestBody(required = false) RegenerateWeeklyMenuRequest request
+    ) {
+        if (request == null) {
+            return service.regenerateUnlocked(id, strategy);
+        }
+        var effective = (request.strategy() != null) ? request.strategy() : strategy;
+        return service.regenerateUnlocked(id, effective, request.tagRules(), request.expectedVersion());
+    }
+
+    @GetMapping
+    @Operation(
+            summary = "List ukemenyer for uke eller periode",
+            description = "Henter menyen for weekStartDate, eller alle menyer med weekStartDate mellom from og to (inklusive, begge valgfrie), stigende på uke og med middager. Paginering med limit (1-100, default 20) og after: send nextAfter fra forrige svar for neste side (null = siste side)."
+    )
+    public WeeklyMenuListResponse list(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate weekStartDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate after,
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        return service.list(weekStartDate, from, to, after, limit);
     }
 
     @GetMapping("/{id}")
     @Operation(
             summary = "Hent ukemeny",
-            description = "Henter ukemeny med alle middager (dinners), sortert på dayOfWeek."
+            description = "Henter ukemeny med alle middager (dinners), sortert på dayOfWeek. version økes ved hver endring."
     )
     public WeeklyMenuResponse get(@PathVariable Long id) {
         return service.get(id);
@@ -62,7 +117,7 @@ public class WeeklyMenuController {
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Operation(
             summary = "Oppdater middag (bytt recipe + locked + note)",
-            description = "Oppdaterer én dag i ukemenyen. dayOfWeek er 1-7. Setter recipeId/locked/note."
+            description = "Oppdaterer én dag i ukemenyen. dayOfWeek er 1-7. Setter recipeId/locked/note. Send med expectedVersion (version fra GET) for å ikke overskrive andres endringer; gir da 409 med gjeldende meny (current) hvis den er endret i mellomtiden."
     )
     public void updateDinner(
             @PathVariable Long id,
@@ -72,12 +127,51 @@ public class WeeklyMenuController {
         service.updateDinner(id, dayOfWeek, request);
     }
 
+    @PatchMapping("/{id}/dinners")
+    @Operation(
+            summary = "Oppdater flere middager samtidig",
+            description = "Oppdaterer alle dagene i dinners (dayOfWeek 1-7, recipeId, locked, note) i én transaksjon og returnerer oppdatert meny. Dager som ikke er med, beholdes. Samme dag to ganger gir 400. expectedVersion som for enkeltdag (409 med current ved konflikt)."
+    )
+    public WeeklyMenuResponse updateDinners(
+            @PathVariable Long id,
+            @Valid @RequestBody UpdateWeeklyMenuDinnersRequest request
+    ) {
+        return service.updateDinners(id, request.dinners(), request.expectedVersion());
+    }
+
+    @GetMapping("/shopping-list")
+    @Operation(
+            summary = "Hent samlet handleliste for flere uker",
+            description = "Slår sammen handlelistene til alle ukemenyer med weekStartDate mellom from og to (inklusive). Samme aggregering (ingrediens + unit) og kategorisortering som for én uke; hver source har i tillegg 'date'. Maks 366 dager."
+    )
+    public ShoppingListRangeResponse shoppingListRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to
+    ) {
+        return service.shoppingList(from, to);
+    }
+
     @GetMapping("/{id}/shopping-list")
     @Operation(
             summary = "Hent handleliste for ukemeny",
-            description = "Returnerer handleliste aggregert på ingrediens + unit, gruppert og sortert etter kategori (category.sortOrder). Inkluderer 'sources' per linje (hvilke dager/oppskrifter som bidro)."
+            description = "Returnerer handleliste aggregert på ingrediens + unit, gruppert og sortert etter kategori (category.sortOrder). Inkluderer 'sources' per linje (hvilke dager/oppskrifter som bidro). aggregation=APP|DB velger om summeringen gjøres i appen eller i databasen (default fra ukemeny.shopping-list.aggregation)."
     )
-    public ShoppingListResponse shoppingList(@PathVariable Long id) {
-        return service.shoppingList(id);
+    public ShoppingListResponse shoppingList(
+            @PathVariable Long id,
+            @RequestParam(required = false) ShoppingListAggregation aggregation
+    ) {
+        return service.shoppingList(id, aggregation);
+    }
+
+    @GetMapping("/{id}/shopping-list/changes")
+    @Operation(
+            summary = "Hent endringer i handleliste siden en versjon",
+            description = "Returnerer kun linjer endret etter sinceVersion (removed=true for linjer som har forsvunnet), pluss ny version. Ukjent/utdatert versjon (også en versjon fra en annen node) gir fullResync=true med alle linjer. Start med sinceVersion=0."
+    )
+    public ShoppingListChangesResponse shoppingListChanges(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "0") long sinceVersion
+    ) {
+        return service.shoppingListChanges(id, sinceVersion);
     }
 }
@@ -0,0 +1,10 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record WeeklyMenuListResponse(
+        List<WeeklyMenuResponse> items,
+        // weekStartDate til siste meny på siden; send som after for neste side. null = ingen flere
+        LocalDate nextAfter
+) {}
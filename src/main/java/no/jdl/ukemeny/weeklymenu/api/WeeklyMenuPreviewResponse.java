@@ -0,0 +1,14 @@
+package no.jdl.ukemeny.weeklymenu.api;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Et forslag til ukemeny som ikke er lagret. itemCount = antall linjer i handlelista.
+ */
+public record WeeklyMenuPreviewResponse(
+        LocalDate weekStartDate,
+        List<WeeklyMenuDayResponse> dinners,
+        int itemCount,
+        List<ShoppingListCategoryResponse> categories
+) {}
@@ -6,5 +6,7 @@ import java.util.List;
 public record WeeklyMenuResponse (
         Long id,
         LocalDate weekStartDate,
-        List<WeeklyMenuDayResponse> dinners
+        List<WeeklyMenuDayResponse> dinners,
+        // Sendes tilbake som expectedVersion ved endring
+        long version
 ) {}
@@ -0,0 +1,72 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import java.util.Random;
+
+/**
+ * Vektet trekning i O(1) med Vose sin alias-metode. Bygges i O(n) fra vektene.
+ * Uforanderlig etter bygging, så den kan deles mellom tråder.
+ */
+public final class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+    private final double[] weights;
+
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        this.weights = weights.clone();
+        this.probability = new double[n];
+        this.alias = new int[n];
+        if (n == 0) {
+            return;
+        }
+
+        double sum = 0;
+        for (double w : weights) {
+            if (w < 0 || Double.isNaN(w)) throw new IllegalArgumentException("weights must be >= 0");
+            sum += w;
+        }
+
+        // Skaler så snittet er 1; alle like hvis summen er 0
+        var scaled = new double[n];
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (sum > 0) ? weights[i] * n / sum : 1.0;
+        }
+
+        var small = new int[n];
+        var large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (scaled[i] < 1.0) small[smallCount++] = i;
+            else large[largeCount++] = i;
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            probability[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) small[smallCount++] = l;
+            else large[largeCount++] = l;
+        }
+        // Rester (avrundingsfeil) får sannsynlighet 1
+        while (largeCount > 0) probability[large[--largeCount]] = 1.0;
+        while (smallCount > 0) probability[small[--smallCount]] = 1.0;
+    }
+
+    public int size() {
+        return probability.length;
+    }
+
+    public double weight(int index) {
+        return weights[index];
+    }
+
+    /** Indeks trukket med sannsynlighet proporsjonal med vekten. */
+    public int sample(Random rng) {
+        int i = rng.nextInt(probability.length);
+        return rng.nextDouble() < probability[i] ? i : alias[i];
+    }
+}
@@ -0,0 +1,21 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Innstillingene (ukemeny.generation.*) som {@link ConstraintMenuGenerator} og subklassene deler,
+ * samlet ett sted så en ny innstilling ikke må legges til i hver konstruktør.
+ */
+@Component
+public record ConstraintGenerationProperties(
+        @Value("${ukemeny.generation.avoid-weeks:6}") int avoidWeeks,
+        @Value("${ukemeny.generation.prefer-fresh-weeks:13}") int preferFreshWeeks,
+        @Value("${ukemeny.generation.max-shared-main-ingredient:2}") int maxSharedMainIngredient,
+        @Value("${ukemeny.generation.candidate-pool-size:256}") int candidatePoolSize,
+        @Value("${ukemeny.generation.max-iterations:2000}") int maxIterations,
+        @Value("${ukemeny.generation.time-budget:5ms}") Duration timeBudget,
+        @Value("${ukemeny.generation.max-similarity:0.6}") double maxSimilarity) {
+}
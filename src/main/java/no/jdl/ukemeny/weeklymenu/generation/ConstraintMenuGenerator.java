@@ -0,0 +1,361 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import no.jdl.ukemeny.recipe.RecipeIngredientIndex;
+import no.jdl.ukemeny.recipe.RecipeSimilarityIndex;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Planlegger som scorer en hel uke mot begrensninger og forbedrer den med begrenset lokalt søk.
+ *
+ * Begrensninger (som straffepoeng, lavest er best):
+ *  - samme oppskrift to ganger i uka / samme som en låst dag (i praksis forbudt)
+ *  - to nesten like oppskrifter i samme uke (estimert Jaccard over max-similarity, se {@link RecipeSimilarityIndex})
+ *  - oppskrift brukt de siste avoid-weeks ukene (nyere = verre)
+ *  - litt straff for oppskrifter brukt de siste prefer-fresh-weeks ukene (foretrekk det vi ikke har spist på lenge)
+ *  - for få dager med en tag som har kvote ("minst 2 fiskedager"); låste dager teller med
+ *  - mer enn K middager med samme hovedingrediens (første item i oppskriften), låste dager teller med
+ *  - (bare i subklasser som slår det på) hver distinkte ingrediens uka trenger, se {@link OverlapMenuGenerator}
+ *
+ * Låste dager røres ikke: vi fyller bare de ledige plassene.
+ * Oppskrifter som ikke slipper gjennom tag-filteret (påkrevde/ekskluderte tagger) kommer aldri med i utvalget,
+ * og utvalget får alltid med kandidater for hver kvote-tag.
+ * Kandidatene trekkes vektet når konteksten har vekter, så favoritter oftere er med i utvalget.
+ * Søket jobber på et tilfeldig utvalg kandidater (ikke hele katalogen) og stopper ved 0 straff,
+ * etter maks antall iterasjoner eller når tidsbudsjettet er brukt – så kostnaden er uavhengig av katalogstørrelsen.
+ */
+@Component
+public class ConstraintMenuGenerator implements MenuGenerator {
+
+    private static final int DUPLICATE_PENALTY = 10_000;
+    private static final int NEAR_DUPLICATE_PENALTY = 1_000;
+    private static final int QUOTA_PENALTY = 5_000;
+    private static final int REPEAT_PENALTY = 100;
+    // Lavere enn MAIN_INGREDIENT_PENALTY så lenge prefer-fresh-weeks ikke er mye større enn avoid-weeks
+    private static final int STALE_PENALTY = 1;
+    private static final int MAIN_INGREDIENT_PENALTY = 10;
+
+    // Hvor mange kandidater grådig start ser på per dag før den tar beste hittil
+    private static final int GREEDY_SCAN = 64;
+
+    private final RecipeIngredientIndex ingredientIndex;
+    private final RecipeSimilarityIndex similarityIndex;
+    private final int avoidWeeks;
+    private final int preferFreshWeeks;
+    private final int maxSharedMainIngredient;
+    private final int candidatePoolSize;
+    private final int maxIterations;
+    private final long timeBudgetNanos;
+    private final double maxSimilarity;
+
+    public ConstraintMenuGenerator(RecipeIngredientIndex ingredientIndex,
+                                   RecipeSimilarityIndex similarityIndex,
+                                   ConstraintGenerationProperties properties) {
+        this.ingredientIndex = ingredientIndex;
+        this.similarityIndex = similarityIndex;
+        this.avoidWeeks = properties.avoidWeeks();
+        this.preferFreshWeeks = properties.preferFreshWeeks();
+        this.maxSharedMainIngredient = properties.maxSharedMainIngredient();
+        this.candidatePoolSize = properties.candidatePoolSize();
+        this.maxIterations = properties.maxIterations();
+        this.timeBudgetNanos = properties.timeBudget().toNanos();
+        this.maxSimilarity = properties.maxSimilarity();
+    }
+
+    @Override
+    public MenuGenerationStrategy strategy() {
+        return MenuGenerationStrategy.CONSTRAINT;
+    }
+
+    /** Straff per distinkte ingrediens i uka (låste dager teller med). 0 = ingrediensoverlapp betyr ingenting. */
+    protected int distinctIngredientPenalty() {
+        return 0;
+    }
+
+    @Override
+    public List<Long> generate(MenuGenerationContext context) {
+        int slots = context.slots();
+        if (slots == 0) {
+            return List.of();
+        }
+
+        var pool = samplePool(context);
+        var problem = new Problem(context, pool);
+        var rng = context.random();
+        long deadline = System.nanoTime() + timeBudgetNanos;
+
+        // Grådig start: for hver dag, første kandidat som ikke øker straffen (ellers beste vi så)
+        var solution = new int[slots];
+        int current = 0;
+        int next = 0;
+        for (int s = 0; s < slots; s++) {
+            int best = -1;
+            int bestPenalty = Integer.MAX_VALUE;
+            for (int tries = 0; tries < Math.min(pool.length, GREEDY_SCAN); tries++) {
+                int c = (next + tries) % pool.length;
+                solution[s] = c;
+                int p = problem.penalty(solution, s + 1);
+                if (p < bestPenalty) {
+                    best = c;
+                    bestPenalty = p;
+                    if (p == current) break;
+                }
+            }
+            solution[s] = best;
+            current = bestPenalty;
+            next = best + 1;
+        }
+
+        // Lokalt søk: bytt én dag til en tilfeldig kandidat, behold hvis ikke verre
+        int iterations = 0;
+        while (current > 0 && iterations < maxIterations) {
+            if ((iterations & 31) == 0 && System.nanoTime() > deadline) {
+                break;
+            }
+            iterations++;
+
+            int s = rng.nextInt(slots);
+            int c = rng.nextInt(pool.length);
+            int old = solution[s];
+            if (old == c) continue;
+
+            solution[s] = c;
+            int p = problem.penalty(solution, slots);
+            if (p <= current) {
+                current = p;
+            } else {
+                solution[s] = old;
+            }
+        }
+
+        var picked = new ArrayList<Long>(slots);
+        for (int c : solution) {
+            picked.add(pool[c]);
+        }
+        return picked;
+    }
+
+    /** Tilfeldig utvalg (uten låste) på inntil candidatePoolSize tillatte oppskrifter, trukket rett fra katalogen. */
+    private long[] samplePool(MenuGenerationContext context) {
+        var catalog = context.catalog();
+        var tags = context.tags();
+        var rng = context.random();
+        int n = catalog.size();
+
+        var pool = new long[Math.min(n, candidatePoolSize)];
+        int size = 0;
+        var seen = new BitSet(n);
+
+        // Kvote-tagger først, så utvalget har nok å velge blant selv om taggen er sjelden
+        for (int q = 0; q < tags.quotas(); q++) {
+            var candidates = tags.allowedWithTag(tags.quotaTag(q));
+            int wanted = Math.min(candidates.length, context.slots() * 4);
+            for (int j = 0; j < wanted && size < pool.length; j++) {
+                int r = j + rng.nextInt(candidates.length - j);
+                int c = candidates[r];
+                candidates[r] = candidates[j];
+                candidates[j] = c;
+                if (seen.get(c)) continue;
+                seen.set(c);
+                long id = catalog.idAt(c);
+                if (!context.isLocked(id)) pool[size++] = id;
+            }
+        }
+
+        if (n <= candidatePoolSize * 2) {
+            // Liten katalog: alle i (vektet) tilfeldig rekkefølge
+            for (int i : context.shuffledIndexes()) {
+                if (size == pool.length) break;
+                if (seen.get(i) || !tags.allowedAt(i)) continue;
+                long id = catalog.idAt(i);
+                if (!context.isLocked(id)) pool[size++] = id;
+            }
+        } else {
+            // Stor katalog: trekk (vektede) tilfeldige posisjoner i stedet for å kopiere alt
+            int attempts = 0;
+            while (size < pool.length && attempts++ < candidatePoolSize * 4) {
+                int i = context.sampleIndex();
+                if (seen.get(i)) continue;
+                seen.set(i);
+                if (!tags.allowedAt(i)) continue;
+                long id = catalog.idAt(i);
+                if (!context.isLocked(id)) pool[size++] = id;
+            }
+        }
+
+        // Alle tillatte oppskrifter er låst: da må vi tillate dem (straffes som duplikater)
+        if (size == 0) {
+            for (int i = 0; i < pool.length; i++) {
+                int index = context.sampleAllowedIndex();
+                pool[i] = catalog.idAt(index >= 0 ? index : rng.nextInt(n));
+            }
+            return pool;
+        }
+        return Arrays.copyOf(pool, size);
+    }
+
+    /** Kandidatene og begrensningene forhåndsberegnet til int-arrays, så scoring er billig. */
+    private final class Problem {
+        final int[] repeatPenalty;
+        final boolean[] lockedThisWeek;
+        final int[] mainIngredient;   // tett indeks, -1 = ingen items
+        final int[] lockedMainCounts; // per tett ingrediensindeks
+        final int[] counts;           // kladd for penalty()
+        final long[] tagMasks;        // tag-maske per kandidat
+        final long[] quotaTags;
+        final int[] quotaNeed;        // dager som mangler når låste er trukket fra
+        final int[][] signatures;     // MinHash per kandidat (null = ingen ingredienser)
+        final boolean[] similarToLocked;
+        final byte[] similarPairs;    // memo pool x pool: 0 = ukjent, 1 = ulike, 2 = nesten like
+        final int ingredientPenalty;
+        final long[][] ingredients;   // ingrediens-bitset per kandidat (kun når ingredientPenalty > 0)
+        final long[] lockedIngredientBits;
+        final long[] union;           // kladd for penalty()
+
+        Problem(MenuGenerationContext context, long[] pool) {
+            var history = context.history();
+            var denseIngredient = new HashMap<Long, Integer>();
+
+            repeatPenalty = new int[pool.length];
+            lockedThisWeek = new boolean[pool.length];
+            mainIngredient = new int[pool.length];
+
+            for (int i = 0; i < pool.length; i++) {
+                int weeksAgo = history.weeksSinceUsed(pool[i]);
+                if (weeksAgo <= avoidWeeks) {
+                    repeatPenalty[i] = REPEAT_PENALTY * (avoidWeeks - weeksAgo + 1);
+                } else if (weeksAgo <= preferFreshWeeks) {
+                    repeatPenalty[i] = STALE_PENALTY * (preferFreshWeeks - weeksAgo + 1);
+                }
+                lockedThisWeek[i] = context.isLocked(pool[i]);
+
+                var ingredientId = ingredientIndex.mainIngredient(pool[i]);
+                mainIngredient[i] = (ingredientId == null)
+                        ? -1
+                        : denseIngredient.computeIfAbsent(ingredientId, k -> denseIngredient.size());
+            }
+
+            var lockedIngredients = new ArrayList<Integer>();
+            for (long recipeId : context.lockedRecipeIds()) {
+                var ingredientId = ingredientIndex.mainIngredient(recipeId);
+                if (ingredientId != null) {
+                    lockedIngredients.add(denseIngredient.computeIfAbsent(ingredientId, k -> denseIngredient.size()));
+                }
+            }
+
+            lockedMainCounts = new int[denseIngredient.size()];
+            for (int m : lockedIngredients) lockedMainCounts[m]++;
+            counts = lockedMainCounts.clone();
+
+            var tags = context.tags();
+            tagMasks = new long[pool.length];
+            for (int i = 0; i < pool.length; i++) {
+                tagMasks[i] = tags.maskAt(context.catalog().indexOf(pool[i]));
+            }
+            quotaTags = new long[tags.quotas()];
+            quotaNeed = new int[tags.quotas()];
+            for (int q = 0; q < tags.quotas(); q++) {
+                quotaTags[q] = tags.quotaTag(q);
+                quotaNeed[q] = tags.quotaDays(q) - context.lockedWithTag(quotaTags[q]);
+            }
+
+            signatures = new int[pool.length][];
+            similarToLocked = new boolean[pool.length];
+            var lockedSignatures = Arrays.stream(context.lockedRecipeIds())
+                    .mapToObj(similarityIndex::signature)
+                    .toArray(int[][]::new);
+            for (int i = 0; i < pool.length; i++) {
+                signatures[i] = similarityIndex.signature(pool[i]);
+                for (var locked : lockedSignatures) {
+                    // Samme oppskrift som en låst dag straffes allerede som duplikat
+                    if (!lockedThisWeek[i] && RecipeSimilarityIndex.similarity(signatures[i], locked) > maxSimilarity) {
+                        similarToLocked[i] = true;
+                    }
+                }
+            }
+            // Parene regnes først når søket treffer dem; de fleste av pool² blir aldri sjekket
+            similarPairs = new byte[pool.length * pool.length];
+
+            ingredientPenalty = distinctIngredientPenalty();
+            if (ingredientPenalty > 0) {
+                ingredients = new long[pool.length][];
+                int words = 0;
+                for (int i = 0; i < pool.length; i++) {
+                    ingredients[i] = ingredientIndex.bits(pool[i]);
+                    words = Math.max(words, ingredients[i].length);
+                }
+                var locked = new long[0];
+                for (long recipeId : context.lockedRecipeIds()) {
+                    var bits = ingredientIndex.bits(recipeId);
+                    if (bits.length > locked.length) locked = Arrays.copyOf(locked, bits.length);
+                    for (int w = 0; w < bits.length; w++) locked[w] |= bits[w];
+                }
+                lockedIngredientBits = locked;
+                union = new long[Math.max(words, locked.length)];
+            } else {
+                ingredients = null;
+                lockedIngredientBits = null;
+                union = null;
+            }
+        }
+
+        /** Straff for de n første dagene i solution. */
+        int penalty(int[] solution, int n) {
+            int p = 0;
+            for (int s = 0; s < n; s++) {
+                int c = solution[s];
+                p += repeatPenalty[c];
+                if (lockedThisWeek[c]) p += DUPLICATE_PENALTY;
+                if (similarToLocked[c]) p += NEAR_DUPLICATE_PENALTY;
+                for (int t = 0; t < s; t++) {
+                    if (solution[t] == c) p += DUPLICATE_PENALTY;
+                    else if (similar(solution[t], c)) p += NEAR_DUPLICATE_PENALTY;
+                }
+                int m = mainIngredient[c];
+                if (m >= 0 && ++counts[m] > maxSharedMainIngredient) {
+                    p += MAIN_INGREDIENT_PENALTY;
+                }
+            }
+            // Nullstill kladden til låste tellinger
+            for (int s = 0; s < n; s++) {
+                int m = mainIngredient[solution[s]];
+                if (m >= 0) counts[m] = lockedMainCounts[m];
+            }
+            for (int q = 0; q < quotaTags.length; q++) {
+                int missing = quotaNeed[q];
+                for (int s = 0; s < n && missing > 0; s++) {
+                    if ((tagMasks[solution[s]] & quotaTags[q]) != 0) missing--;
+                }
+                if (missing > 0) p += QUOTA_PENALTY * missing;
+            }
+            if (ingredientPenalty > 0) {
+                p += ingredientPenalty * distinctIngredients(solution, n);
+            }
+            return p;
+        }
+
+        private boolean similar(int a, int b) {
+            int key = a * signatures.length + b;
+            if (similarPairs[key] == 0) {
+                byte v = RecipeSimilarityIndex.similarity(signatures[a], signatures[b]) > maxSimilarity ? (byte) 2 : (byte) 1;
+                similarPairs[key] = v;
+                similarPairs[b * signatures.length + a] = v;
+            }
+            return similarPairs[key] == 2;
+        }
+
+        /** Antall ulike ingredienser i de n første dagene pluss de låste: OR av bitsetene + popcount. */
+        private int distinctIngredients(int[] solution, int n) {
+            Arrays.fill(union, 0L);
+            System.arraycopy(lockedIngredientBits, 0, union, 0, lockedIngredientBits.length);
+            for (int s = 0; s < n; s++) {
+                var bits = ingredients[solution[s]];
+                for (int w = 0; w < bits.length; w++) union[w] |= bits[w];
+            }
+            int count = 0;
+            for (long word : union) count += Long.bitCount(word);
+            return count;
+        }
+    }
+}
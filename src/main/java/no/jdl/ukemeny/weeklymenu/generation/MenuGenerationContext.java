@@ -0,0 +1,101 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import no.jdl.ukemeny.recipe.RecipeCatalog;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Input til en {@link MenuGenerator}.
+ *
+ * @param catalog          alle oppskrifter som kan velges
+ * @param slots            antall dager som skal fylles
+ * @param lockedRecipeIds  oppskrifter som allerede ligger på låste dager denne uka (sortert)
+ * @param history          bruk i tidligere uker
+ * @param weights          vekter per katalogindeks, eller null for lik sannsynlighet
+ * @param tags             tag-regler (inkluder/ekskluder/minst N dager), {@link TagFilter#NONE} hvis ingen
+ */
+public record MenuGenerationContext(
+        RecipeCatalog.Snapshot catalog,
+        int slots,
+        long[] lockedRecipeIds,
+        MenuHistory history,
+        AliasTable weights,
+        Random random,
+        TagFilter tags
+) {
+
+    public static MenuGenerationContext of(RecipeCatalog.Snapshot catalog, int slots, Collection<Long> lockedRecipeIds,
+                                           MenuHistory history, AliasTable weights, Random random, TagFilter tags) {
+        var locked = lockedRecipeIds.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        return new MenuGenerationContext(catalog, slots, locked, history, weights, random, tags);
+    }
+
+    public boolean isLocked(long recipeId) {
+        return Arrays.binarySearch(lockedRecipeIds, recipeId) >= 0;
+    }
+
+    /** Tilfeldig katalogindeks, vektet hvis vi har vekter. O(1). */
+    public int sampleIndex() {
+        return (weights == null) ? random.nextInt(catalog.size()) : weights.sample(random);
+    }
+
+    /**
+     * Som {@link #sampleIndex()}, men bare indekser som slipper gjennom tag-filteret.
+     * Faller tilbake til et lineært søk fra en tilfeldig posisjon når filteret er strengt. -1 hvis ingen.
+     */
+    public int sampleAllowedIndex() {
+        for (int attempt = 0; attempt < 64; attempt++) {
+            int i = sampleIndex();
+            if (tags.allowedAt(i)) return i;
+        }
+        int n = catalog.size();
+        int start = random.nextInt(n);
+        for (int j = 0; j < n; j++) {
+            int i = (start + j) % n;
+            if (tags.allowedAt(i)) return i;
+        }
+        return -1;
+    }
+
+    /** Hvor mange av de låste oppskriftene som har taggen. */
+    public int lockedWithTag(long tag) {
+        int count = 0;
+        for (long id : lockedRecipeIds) {
+            if ((tags.maskAt(catalog.indexOf(id)) & tag) != 0) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Alle katalogindekser i tilfeldig rekkefølge der tunge oppskrifter havner tidligere
+     * (Efraimidis–Spirakis: sorter på -ln(u)/vekt). O(n log n), brukes bare når katalogen er liten.
+     */
+    public int[] shuffledIndexes() {
+        return weightedShuffle(weights, catalog.size(), random);
+    }
+
+    /** Kjernen i {@link #shuffledIndexes()}; weights kan være null. */
+    static int[] weightedShuffle(AliasTable weights, int n, Random random) {
+        // Nøkkel og indeks pakkes i én long: positive doubles sorteres riktig på bitmønsteret,
+        // og de laveste bitene erstattes med indeksen (gir bare tilfeldig tie-break).
+        int indexBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, n - 1));
+        long mask = (1L << indexBits) - 1;
+
+        var packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            double key = (weights == null)
+                    ? random.nextDouble()
+                    : -Math.log(1.0 - random.nextDouble()) / weights.weight(i);
+            packed[i] = (Double.doubleToRawLongBits(key) & ~mask) | i;
+        }
+        Arrays.sort(packed);
+
+        var order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) (packed[i] & mask);
+        }
+        return order;
+    }
+}
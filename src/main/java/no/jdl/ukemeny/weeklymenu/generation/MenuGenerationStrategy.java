@@ -0,0 +1,10 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+public enum MenuGenerationStrategy {
+    // Stokk "nye" (ikke i forrige meny) først, så "brukte" – den opprinnelige varianten
+    RANDOM,
+    // Lokalt søk mot konfigurerbare begrensninger (ingen repeats på N uker, maks K per hovedingrediens, ...)
+    CONSTRAINT,
+    // Som CONSTRAINT, men foretrekker middager som deler ingredienser (kortere handleliste)
+    OVERLAP
+}
@@ -0,0 +1,16 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import java.util.List;
+
+/**
+ * Velger oppskrifter til dagene som skal fylles i en ukemeny.
+ *
+ * Låste dager er allerede tatt ut: generatoren får bare antall ledige plasser og oppskriftene som er låst,
+ * og returnerer nøyaktig {@link MenuGenerationContext#slots()} recipeId-er i dagsrekkefølge.
+ */
+public interface MenuGenerator {
+
+    MenuGenerationStrategy strategy();
+
+    List<Long> generate(MenuGenerationContext context);
+}
@@ -0,0 +1,30 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slår opp generator for en strategi; null gir default fra ukemeny.generation.strategy.
+ */
+@Component
+public class MenuGenerators {
+
+    private final Map<MenuGenerationStrategy, MenuGenerator> byStrategy = new EnumMap<>(MenuGenerationStrategy.class);
+    private final MenuGenerationStrategy defaultStrategy;
+
+    public MenuGenerators(List<MenuGenerator> generators,
+                          @Value("${ukemeny.generation.strategy:CONSTRAINT}") MenuGenerationStrategy defaultStrategy) {
+        for (var g : generators) {
+            byStrategy.put(g.strategy(), g);
+        }
+        this.defaultStrategy = defaultStrategy;
+    }
+
+    public MenuGenerator get(MenuGenerationStrategy strategy) {
+        return byStrategy.get(strategy == null ? defaultStrategy : strategy);
+    }
+}
@@ -0,0 +1,78 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import no.jdl.ukemeny.recipe.RecipeCatalog;
+
+import java.util.BitSet;
+
+/**
+ * Hvilke oppskrifter som er brukt i ukene før uka vi genererer for, som én bitset per uke
+ * over den tette indeksen i {@link RecipeCatalog.Snapshot}.
+ */
+public final class MenuHistory {
+
+    public static final MenuHistory EMPTY = new MenuHistory(null, new BitSet[0]);
+
+    private final RecipeCatalog.Snapshot catalog;
+    // weeks[i] = oppskrifter brukt for i+1 uker siden (tom hvis ingen meny den uka)
+    private final BitSet[] weeks;
+    // Nærmeste uke med meny, eller null
+    private final BitSet previousMenu;
+
+    public MenuHistory(RecipeCatalog.Snapshot catalog, BitSet[] weeks) {
+        this.catalog = catalog;
+        this.weeks = weeks;
+
+        BitSet previous = null;
+        for (var week : weeks) {
+            if (!week.isEmpty()) {
+                previous = week;
+                break;
+            }
+        }
+        this.previousMenu = previous;
+    }
+
+    /**
+     * Historikk for uka etter, når denne uka har fått oppskriftene i thisWeek (tett katalogindeks).
+     * Vinduet beholder lengden: eldste uke faller ut. Brukes når flere uker planlegges i ett kall.
+     */
+    public MenuHistory nextWeek(BitSet thisWeek) {
+        if (weeks.length == 0) {
+            return this;
+        }
+        var shifted = new BitSet[weeks.length];
+        shifted[0] = thisWeek;
+        System.arraycopy(weeks, 0, shifted, 1, weeks.length - 1);
+        return new MenuHistory(catalog, shifted);
+    }
+
+    /** Antall uker siden oppskriften sist ble brukt, eller Integer.MAX_VALUE hvis ikke innenfor vinduet. */
+    public int weeksSinceUsed(long recipeId) {
+        if (weeks.length == 0) {
+            return Integer.MAX_VALUE;
+        }
+        return weeksSinceUsedAt(catalog.indexOf(recipeId));
+    }
+
+    /** Som {@link #weeksSinceUsed(long)}, men med tett katalogindeks. */
+    public int weeksSinceUsedAt(int index) {
+        if (index < 0) {
+            return Integer.MAX_VALUE;
+        }
+        for (int i = 0; i < weeks.length; i++) {
+            if (weeks[i].get(index)) {
+                return i + 1;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /** Brukt i nærmeste tidligere meny innenfor vinduet. */
+    public boolean inPreviousMenu(long recipeId) {
+        return previousMenu != null && inPreviousMenuAt(catalog.indexOf(recipeId));
+    }
+
+    public boolean inPreviousMenuAt(int index) {
+        return previousMenu != null && index >= 0 && previousMenu.get(index);
+    }
+}
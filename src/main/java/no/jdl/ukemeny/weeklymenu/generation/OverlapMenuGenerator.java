@@ -0,0 +1,38 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import no.jdl.ukemeny.recipe.RecipeIngredientIndex;
+import no.jdl.ukemeny.recipe.RecipeSimilarityIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Som {@link ConstraintMenuGenerator}, men straffer også hver distinkte ingrediens uka trenger,
+ * så middager som deler ingredienser (samme pose tortilla to ganger) vinner og handlelista blir kortere.
+ *
+ * Overlappet regnes på ingrediens-bitsets fra {@link RecipeIngredientIndex} (OR + popcount),
+ * aldri med spørringer under søket. Straffen per ingrediens bør ligge under straffen for
+ * hovedingrediens og repeats, så variasjon fortsatt går foran en kortere handleliste.
+ */
+@Component
+public class OverlapMenuGenerator extends ConstraintMenuGenerator {
+
+    private final int distinctIngredientPenalty;
+
+    public OverlapMenuGenerator(RecipeIngredientIndex ingredientIndex,
+                                RecipeSimilarityIndex similarityIndex,
+                                ConstraintGenerationProperties properties,
+                                @Value("${ukemeny.generation.overlap.distinct-ingredient-penalty:2}") int distinctIngredientPenalty) {
+        super(ingredientIndex, similarityIndex, properties);
+        this.distinctIngredientPenalty = distinctIngredientPenalty;
+    }
+
+    @Override
+    public MenuGenerationStrategy strategy() {
+        return MenuGenerationStrategy.OVERLAP;
+    }
+
+    @Override
+    protected int distinctIngredientPenalty() {
+        return distinctIngredientPenalty;
+    }
+}
@@ -0,0 +1,184 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import no.jdl.ukemeny.recipe.RecipeCatalog;
+import no.jdl.ukemeny.recipe.RecipeSimilarityIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Den opprinnelige strategien: stokk oppskriftene som ikke var i forrige meny ("fresh") og ta dem først,
+ * deretter de som var med ("used"). Oppskrifter på låste dager unngås.
+ * Trekkingen er vektet (favoritter, rating, hvor lenge siden) når konteksten har vekter.
+ * Tag-regler respekteres: bare tillatte oppskrifter trekkes, og kvoter ("minst 2 fiskedager") fylles først.
+ * Nesten like oppskrifter (estimert Jaccard over max-similarity mot valgte/låste) hoppes over så lenge det finnes andre.
+ * Er det for få oppskrifter tillates repeats.
+ */
+@Component
+public class RandomMenuGenerator implements MenuGenerator {
+
+    // Tilfeldige trekk per plass før vi faller tilbake til å gå gjennom hele katalogen
+    private static final int ATTEMPTS_PER_SLOT = 32;
+
+    private final RecipeSimilarityIndex similarityIndex;
+    private final double maxSimilarity;
+
+    public RandomMenuGenerator(RecipeSimilarityIndex similarityIndex,
+                               @Value("${ukemeny.generation.max-similarity:0.6}") double maxSimilarity) {
+        this.similarityIndex = similarityIndex;
+        this.maxSimilarity = maxSimilarity;
+    }
+
+    @Override
+    public MenuGenerationStrategy strategy() {
+        return MenuGenerationStrategy.RANDOM;
+    }
+
+    @Override
+    public List<Long> generate(MenuGenerationContext context) {
+        var catalog = context.catalog();
+        int slots = context.slots();
+
+        var picked = new long[slots];
+        int k = fillQuotas(context, picked, 0);
+        boolean hadQuotas = k > 0;
+
+        // Stor katalog: trekk tilfeldige posisjoner og godta bare "fresh" – ingen kopi av katalogen
+        int attempts = slots * ATTEMPTS_PER_SLOT;
+        while (k < slots && attempts-- > 0) {
+            int i = context.sampleIndex();
+            if (!context.tags().allowedAt(i)) continue;
+            long id = catalog.idAt(i);
+            if (isFresh(context, i, id) && !contains(picked, k, id) && !tooSimilar(context, picked, k, id)) {
+                picked[k++] = id;
+            }
+        }
+
+        // Liten/tett katalog: gå gjennom alt i stokket rekkefølge, fresh før used
+        if (k < slots) {
+            k = fillFromShuffled(context, picked, k);
+        }
+
+        // For få oppskrifter: fyll opp med tilfeldige repeats
+        while (k < slots) {
+            int i = context.sampleAllowedIndex();
+            picked[k++] = catalog.idAt(i >= 0 ? i : context.sampleIndex());
+        }
+
+        // Kvotene ble fylt først; stokk så de ikke alltid havner på mandag/tirsdag
+        if (hadQuotas) {
+            var rng = context.random();
+            for (int i = slots - 1; i > 0; i--) {
+                int j = rng.nextInt(i + 1);
+                long tmp = picked[i];
+                picked[i] = picked[j];
+                picked[j] = tmp;
+            }
+        }
+
+        var result = new ArrayList<Long>(slots);
+        for (long id : picked) result.add(id);
+        return result;
+    }
+
+    /** Plukker tillatte oppskrifter med kvote-taggene til hver kvote er oppfylt (låste dager teller med). */
+    private int fillQuotas(MenuGenerationContext context, long[] picked, int k) {
+        var tags = context.tags();
+        var catalog = context.catalog();
+        var rng = context.random();
+
+        for (int q = 0; q < tags.quotas() && k < picked.length; q++) {
+            long tag = tags.quotaTag(q);
+            int need = tags.quotaDays(q) - context.lockedWithTag(tag);
+            for (int i = 0; i < k; i++) {
+                if ((tags.maskAt(catalog.indexOf(picked[i])) & tag) != 0) need--;
+            }
+
+            // Delvis Fisher–Yates over kandidatene: tilfeldig rekkefølge uten å stokke alt
+            var candidates = tags.allowedWithTag(tag);
+            for (int j = 0; j < candidates.length && need > 0 && k < picked.length; j++) {
+                int r = j + rng.nextInt(candidates.length - j);
+                int c = candidates[r];
+                candidates[r] = candidates[j];
+                candidates[j] = c;
+
+                long id = catalog.idAt(c);
+                if (!context.isLocked(id) && !contains(picked, k, id) && !tooSimilar(context, picked, k, id)) {
+                    picked[k++] = id;
+                    need--;
+                }
+            }
+        }
+        return k;
+    }
+
+    private int fillFromShuffled(MenuGenerationContext context, long[] picked, int k) {
+        var catalog = context.catalog();
+        var order = context.shuffledIndexes();
+
+        // Del opp i "nye" og "brukte sist" (uten de som er låst denne uka), i stokket rekkefølge
+        var fresh = new long[order.length];
+        var used = new long[order.length];
+        int freshCount = 0;
+        int usedCount = 0;
+        for (int i : order) {
+            if (!context.tags().allowedAt(i)) continue;
+            long id = catalog.idAt(i);
+            if (context.isLocked(id)) continue;
+            if (context.history().inPreviousMenuAt(i)) {
+                used[usedCount++] = id;
+            } else {
+                fresh[freshCount++] = id;
+            }
+        }
+
+        // Hvis pool er tom (f.eks. alle oppskrifter er låst), må vi tillate bruk av låste oppskrifter også
+        if (freshCount + usedCount == 0) {
+            for (int i : order) {
+                if (context.tags().allowedAt(i)) fresh[freshCount++] = catalog.idAt(i);
+            }
+        }
+
+        // Først uten nesten-duplikater, så med hvis det ikke var nok
+        for (boolean avoidSimilar : new boolean[] {true, false}) {
+            for (int i = 0; i < freshCount && k < picked.length; i++) {
+                if (accept(context, picked, k, fresh[i], avoidSimilar)) picked[k++] = fresh[i];
+            }
+            for (int i = 0; i < usedCount && k < picked.length; i++) {
+                if (accept(context, picked, k, used[i], avoidSimilar)) picked[k++] = used[i];
+            }
+        }
+        return k;
+    }
+
+    private boolean accept(MenuGenerationContext context, long[] picked, int k, long id, boolean avoidSimilar) {
+        return !contains(picked, k, id) && !(avoidSimilar && tooSimilar(context, picked, k, id));
+    }
+
+    private boolean tooSimilar(MenuGenerationContext context, long[] picked, int k, long id) {
+        var signature = similarityIndex.signature(id);
+        if (signature == null) {
+            return false;
+        }
+        for (int i = 0; i < k; i++) {
+            if (RecipeSimilarityIndex.similarity(signature, similarityIndex.signature(picked[i])) > maxSimilarity) return true;
+        }
+        for (long locked : context.lockedRecipeIds()) {
+            if (RecipeSimilarityIndex.similarity(signature, similarityIndex.signature(locked)) > maxSimilarity) return true;
+        }
+        return false;
+    }
+
+    private static boolean isFresh(MenuGenerationContext context, int index, long id) {
+        return !context.isLocked(id) && !context.history().inPreviousMenuAt(index);
+    }
+
+    private static boolean contains(long[] ids, int length, long id) {
+        for (int i = 0; i < length; i++) {
+            if (ids[i] == id) return true;
+        }
+        return false;
+    }
+}
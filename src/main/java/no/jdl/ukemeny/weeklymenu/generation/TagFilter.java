@@ -0,0 +1,93 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Tag-regler for en generering, uttrykt som bitmasker over tag-maskene i katalogrekkefølge
+ * (se {@link no.jdl.ukemeny.recipe.RecipeTagIndex}).
+ *
+ *  - require: oppskriften må ha alle disse taggene
+ *  - exclude: oppskriften kan ikke ha noen av disse; oppskrifter med ukjente tagger er også utelukket
+ *  - kvoter: minst quotaDays(q) dager i uka med taggen quotaTag(q); låste dager teller med
+ *
+ * Alt er primitive long-operasjoner, så filtrering av hele katalogen er én AND per oppskrift.
+ */
+public final class TagFilter {
+
+    public static final TagFilter NONE = new TagFilter(null, null, 0L, 0L, new long[0], new int[0]);
+
+    private final long[] masks;
+    private final BitSet unknown;
+    private final long requireMask;
+    private final long excludeMask;
+    private final long[] quotaTags;
+    private final int[] quotaDays;
+
+    /**
+     * @param masks     tag-maske per katalogindeks (null = ingen oppskrift har tagger)
+     * @param unknown   katalogindekser der taggene ikke er kjent (null = ingen)
+     * @param quotaTags én bit per kvote
+     * @param quotaDays minste antall dager per kvote, samme rekkefølge som quotaTags
+     */
+    public TagFilter(long[] masks, BitSet unknown, long requireMask, long excludeMask, long[] quotaTags, int[] quotaDays) {
+        if (quotaTags.length != quotaDays.length) {
+            throw new IllegalArgumentException("quotaTags and quotaDays must have the same length");
+        }
+        this.masks = masks;
+        this.unknown = unknown;
+        this.requireMask = requireMask;
+        this.excludeMask = excludeMask;
+        this.quotaTags = quotaTags;
+        this.quotaDays = quotaDays;
+    }
+
+    public boolean allowedAt(int index) {
+        if (excludeMask != 0 && unknown != null && index >= 0 && unknown.get(index)) {
+            return false;
+        }
+        long m = maskAt(index);
+        return (m & requireMask) == requireMask && (m & excludeMask) == 0;
+    }
+
+    /** Tag-masken til oppskriften på katalogindeksen (0 for ukjent/negativ indeks). */
+    public long maskAt(int index) {
+        return (masks == null || index < 0) ? 0L : masks[index];
+    }
+
+    /** Finnes det minst én oppskrift som slipper gjennom filteret? */
+    public boolean anyAllowed(int catalogSize) {
+        for (int i = 0; i < catalogSize; i++) {
+            if (allowedAt(i)) return true;
+        }
+        return false;
+    }
+
+    /** Tillatte katalogindekser som også har taggen. */
+    public int[] allowedWithTag(long tag) {
+        if (masks == null) {
+            return new int[0];
+        }
+        var result = new int[16];
+        int size = 0;
+        for (int i = 0; i < masks.length; i++) {
+            if ((masks[i] & tag) != 0 && allowedAt(i)) {
+                if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                result[size++] = i;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    public int quotas() {
+        return quotaTags.length;
+    }
+
+    public long quotaTag(int q) {
+        return quotaTags[q];
+    }
+
+    public int quotaDays(int q) {
+        return quotaDays[q];
+    }
+}
@@ -0,0 +1,4 @@
+-- Preferanser som vekter oppskriften ved generering
+ALTER TABLE recipe
+    ADD COLUMN favorite BOOLEAN NOT NULL DEFAULT FALSE,
+    ADD COLUMN rating SMALLINT NULL CHECK (rating BETWEEN 1 AND 5);
@@ -0,0 +1,6 @@
+-- Fritekst-tagger per oppskrift (vegetar, fisk, rask, ...), normalisert til små bokstaver i appen
+CREATE TABLE recipe_tag (
+    recipe_id BIGINT NOT NULL REFERENCES recipe(id) ON DELETE CASCADE,
+    tag TEXT NOT NULL,
+    PRIMARY KEY (recipe_id, tag)
+);
@@ -0,0 +1,14 @@
+-- Én meny per uke. Finnes det allerede duplikater feiler migreringen her; de må ryddes
+-- manuelt (med backup) før deploy, vi sletter ikke brukerdata i en skjemamigrering.
+CREATE UNIQUE INDEX ux_weekly_menu_week_start_date ON weekly_menu(week_start_date);
+
+-- Idempotency-Key for create/generate: samme nøkkel gir samme meny i stedet for en ny
+CREATE TABLE idempotency_key (
+    key TEXT PRIMARY KEY,
+    operation TEXT NOT NULL,
+    request_hash TEXT NOT NULL,
+    weekly_menu_id BIGINT NULL REFERENCES weekly_menu(id) ON DELETE CASCADE,
+    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX ix_idempotency_key_created_at ON idempotency_key(created_at);
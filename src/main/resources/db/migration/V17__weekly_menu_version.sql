@@ -0,0 +1,3 @@
+-- Optimistisk låsing: versjonen økes ved hver endring av menyen
+alter table weekly_menu add column version bigint not null default 0;
+alter table weekly_menu_entry add column version bigint not null default 0;
@@ -0,0 +1,5 @@
+-- Trigram-indeks for navnesøk: dekker både lower(name) LIKE '%x%' og likhetsoperatoren %,
+-- som en vanlig B-tree ikke kan brukes til
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX ix_recipe_name_trgm ON recipe USING gin (lower(name) gin_trgm_ops);
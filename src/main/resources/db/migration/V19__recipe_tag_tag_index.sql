@@ -0,0 +1,2 @@
+-- Grensen på 64 distinkte tagger sjekkes mot databasen før lagring; indeksen gjør oppslaget per tag billig
+CREATE INDEX ix_recipe_tag_tag ON recipe_tag(tag);
@@ -0,0 +1,2 @@
+-- Økes ved hver endring av en oppskrift; summen inngår i stempelet andre noder sjekker katalogen mot
+alter table recipe add column revision bigint not null default 0;
@@ -0,0 +1,2 @@
+-- Hver node henter ett tall ved første handleliste; det blir de høye bitene i handleliste-versjonene
+create sequence shopping_list_epoch_seq;
@@ -2,11 +2,13 @@ package no.jdl.ukemeny;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import no.jdl.ukemeny.weeklymenu.ShoppingListCache;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.math.BigDecimal;
@@ -21,6 +23,8 @@ class ShoppingListIntegrationTests {
 
     @Autowired TestRestTemplate http;
     @Autowired ObjectMapper om;
+    @Autowired ShoppingListCache shoppingListCache;
+    @Autowired JdbcTemplate jdbc;
 
     @Test
     void shoppingList_groupsByCategorySortOrder_andAggregatesPerIngredientAndUnit_withSortedSources() throws Exception {
@@ -69,7 +73,7 @@ class ShoppingListIntegrationTests {
         ));
 
         // 5) Opprett en ukemeny deterministisk (to dager) – viktig for stabil test
-        long menuId = postWeeklyMenu(LocalDate.of(2025, 12, 22), List.of(
+        long menuId = postWeeklyMenu(randomMonday(), List.of(
                 dinner(1, r1, false, null),
                 dinner(2, r2, false, null)
         ));
@@ -132,6 +136,276 @@ class ShoppingListIntegrationTests {
         }
         assertThat(days).containsExactly(1, 2);
     }
+    @Test
+    void shoppingList_dbAggregation_matchesAppAggregation() throws Exception {
+        long r1 = postRecipe("Agg Taco A", "Test", List.of(
+                item("Kjøttdeig", new BigDecimal("400"), "g", null),
+                item("Tortilla", new BigDecimal("8"), "stk", null),
+                item("Ost", new BigDecimal("150"), "g", null)
+        ));
+        long r2 = postRecipe("Agg Quesadilla", "Test", List.of(
+                item("Tortilla", new BigDecimal("6"), "stk", null),
+                item("Ost", new BigDecimal("1"), "pose", null),
+                item("Løk", new BigDecimal("1.5"), "stk", null)
+        ));
+
+        long menuId = postWeeklyMenu(randomMonday(), List.of(
+                dinner(3, r2, false, null),
+                dinner(1, r1, false, null),
+                dinner(5, r1, true, null)
+        ));
+
+        ResponseEntity<String> app = http.getForEntity("/weekly-menus/" + menuId + "/shopping-list?aggregation=APP", String.class);
+        shoppingListCache.evict(menuId); // ellers serveres DB-kallet fra cachen
+        ResponseEntity<String> db = http.getForEntity("/weekly-menus/" + menuId + "/shopping-list?aggregation=DB", String.class);
+
+        assertThat(app.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(db.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(db.getBody()).isEqualTo(app.getBody());
+        // DB-modus bygger svaret rett fra radene og fyller ikke cachen
+        assertThat(shoppingListCache.get(menuId)).isEmpty();
+
+        ResponseEntity<String> missing = http.getForEntity("/weekly-menus/999999999/shopping-list?aggregation=DB", String.class);
+        assertThat(missing.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void shoppingList_sameIngredientInSeveralUnits_isOrderedAlikeInDbAndApp() throws Exception {
+        String romme = "Rømme " + UUID.randomUUID().toString().substring(0, 8);
+        // A sitt item får lavest id; B bruker ingrediensen i to units, "stk" før "g"
+        long a = postRecipe("Units A", "Test", List.of(item(romme, new BigDecimal("100"), "g", null)));
+        long b = postRecipe("Units B", "Test", List.of(
+                item(romme, new BigDecimal("1"), "stk", null),
+                item(romme, new BigDecimal("50"), "g", null)
+        ));
+
+        // B får laveste entry-id. Første rad i (entry, item)-rekkefølge er B sin "stk", selv om "g" har
+        // både laveste entry-id (B) og laveste item-id (A) hver for seg.
+        long menuId = postWeeklyMenu(randomMonday(), List.of(
+                dinner(1, b, false, null),
+                dinner(2, a, false, null)
+        ));
+
+        ResponseEntity<String> app = http.getForEntity("/weekly-menus/" + menuId + "/shopping-list?aggregation=APP", String.class);
+        shoppingListCache.evict(menuId);
+        ResponseEntity<String> db = http.getForEntity("/weekly-menus/" + menuId + "/shopping-list?aggregation=DB", String.class);
+
+        assertThat(app.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(db.getStatusCode()).isEqualTo(HttpStatus.OK);
+        List<String> units = new ArrayList<>();
+        for (JsonNode c : om.readTree(app.getBody()).get("categories")) {
+            for (JsonNode it : c.get("items")) units.add(it.get("unit").asText());
+        }
+        assertThat(units).containsExactly("stk", "g");
+        assertThat(db.getBody()).isEqualTo(app.getBody());
+    }
+
+    @Test
+    void shoppingList_isRecomputedAfterDinnerAndRecipeChanges() throws Exception {
+        long r1 = postRecipe("Cache Taco A", "Test", List.of(
+                item("Kjøttdeig", new BigDecimal("400"), "g", null)
+        ));
+        long r2 = postRecipe("Cache Pasta B", "Test", List.of(
+                item("Pasta", new BigDecimal("500"), "g", null)
+        ));
+
+        long menuId = postWeeklyMenu(randomMonday(), List.of(
+                dinner(1, r1, false, null)
+        ));
+
+        // Første kall fyller cachen
+        assertThat(ingredientNames(getJson("/weekly-menus/" + menuId + "/shopping-list"))).containsExactly("Kjøttdeig");
+
+        // Bytte middag skal invalidere
+        patchJson("/weekly-menus/" + menuId + "/dinners/1", Map.of(
+                "recipeId", r2,
+                "locked", false
+        ));
+        assertThat(ingredientNames(getJson("/weekly-menus/" + menuId + "/shopping-list"))).containsExactly("Pasta");
+
+        // Endring av oppskriften som inngår skal også invalidere
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("name", "Cache Pasta B");
+        update.put("description", "Test");
+        update.put("items", List.of(item("Ris", new BigDecimal("300"), "g", null)));
+        HttpHeaders h = new HttpHeaders();
+        h.setContentType(MediaType.APPLICATION_JSON);
+        ResponseEntity<Void> put = http.exchange("/recipes/" + r2, HttpMethod.PUT,
+                new HttpEntity<>(om.writeValueAsString(update), h), Void.class);
+        assertThat(put.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        assertThat(ingredientNames(getJson("/weekly-menus/" + menuId + "/shopping-list"))).containsExactly("Ris");
+    }
+
+    @Test
+    void shoppingList_isRecomputedAfterChangesOnAnotherNode() throws Exception {
+        long r1 = postRecipe("Node Taco", "Test", List.of(
+                item("Kjøttdeig", new BigDecimal("400"), "g", null)
+        ));
+        long r2 = postRecipe("Node Pasta", "Test", List.of(
+                item("Pasta", new BigDecimal("500"), "g", null)
+        ));
+        long menuId = postWeeklyMenu(randomMonday(), List.of(
+                dinner(1, r1, false, null)
+        ));
+        assertThat(ingredientNames(getJson("/weekly-menus/" + menuId + "/shopping-list"))).containsExactly("Kjøttdeig");
+
+        // Middagen byttes på en annen node: ingen event her, men menyversjonen økes som ved WeeklyMenu.touch
+        jdbc.update("update weekly_menu_entry set recipe_id = ? where weekly_menu_id = ? and day_of_week = 1", r2, menuId);
+        jdbc.update("update weekly_menu set version = version + 1 where id = ?", menuId);
+
+        assertThat(ingredientNames(getJson("/weekly-menus/" + menuId + "/shopping-list"))).containsExactly("Pasta");
+
+        // Oppskriften endres på en annen node: fanges opp når katalogen ser ny revisjon
+        jdbc.update("update recipe_item set amount = 900 where recipe_id = ?", r2);
+        jdbc.update("update recipe set revision = revision + 1 where id = ?", r2);
+        Thread.sleep(1_100); // ukemeny.recipe-catalog.refresh-interval=PT1S i testprofilen
+
+        JsonNode list = getJson("/weekly-menus/" + menuId + "/shopping-list");
+        assertThat(list.get("categories").get(0).get("items").get(0).get("amount").decimalValue())
+                .isEqualByComparingTo("900");
+    }
+
+    @Test
+    void shoppingList_isRecomputedWhenRecipeWithoutItemsChanges() throws Exception {
+        long r1 = postRecipe("Tom Suppe", "Test", List.of(
+                item("Løk", new BigDecimal("1"), "stk", null)
+        ));
+        long menuId = postWeeklyMenu(randomMonday(), List.of(
+                dinner(1, r1, false, null)
+        ));
+
+        // Oppskriften mister alle items (f.eks. fra en annen node), og handlelista caches uten linjer
+        jdbc.update("delete from recipe_item where recipe_id = ?", r1);
+        shoppingListCache.evict(menuId);
+        assertThat(ingredientNames(getJson("/weekly-menus/" + menuId + "/shopping-list"))).isEmpty();
+
+        // Cachen må likevel vite at den avhenger av oppskriften
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("name", "Tom Suppe");
+        update.put("description", "Test");
+        update.put("items", List.of(item("Purre", new BigDecimal("2"), "stk", null)));
+        HttpHeaders h = new HttpHeaders();
+        h.setContentType(MediaType.APPLICATION_JSON);
+        ResponseEntity<Void> put = http.exchange("/recipes/" + r1, HttpMethod.PUT,
+                new HttpEntity<>(om.writeValueAsString(update), h), Void.class);
+        assertThat(put.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        assertThat(ingredientNames(getJson("/weekly-menus/" + menuId + "/shopping-list"))).containsExactly("Purre");
+    }
+
+    @Test
+    void shoppingListChanges_returnsOnlyLinesChangedByDinnerSwap() throws Exception {
+        long r1 = postRecipe("Delta Taco", "Test", List.of(
+                item("Kjøttdeig", new BigDecimal("400"), "g", null),
+                item("Tortilla", new BigDecimal("8"), "stk", null)
+        ));
+        long r2 = postRecipe("Delta Quesadilla", "Test", List.of(
+                item("Tortilla", new BigDecimal("6"), "stk", null),
+                item("Ost", new BigDecimal("200"), "g", null)
+        ));
+        long r3 = postRecipe("Delta Pasta", "Test", List.of(
+                item("Pasta", new BigDecimal("400"), "g", null)
+        ));
+
+        long menuId = postWeeklyMenu(randomMonday(), List.of(
+                dinner(1, r1, false, null),
+                dinner(2, r2, false, null)
+        ));
+
+        // Ukjent versjon -> alt
+        JsonNode initial = getJson("/weekly-menus/" + menuId + "/shopping-list/changes?sinceVersion=0");
+        assertThat(initial.get("fullResync").asBoolean()).isTrue();
+        assertThat(initial.get("changes").size()).isEqualTo(3);
+        long version = initial.get("version").asLong();
+
+        // Bytt dag 2 (Quesadilla -> Pasta): Tortilla endres, Ost forsvinner, Pasta kommer til
+        patchJson("/weekly-menus/" + menuId + "/dinners/2", Map.of(
+                "recipeId", r3,
+                "locked", false
+        ));
+
+        JsonNode delta = getJson("/weekly-menus/" + menuId + "/shopping-list/changes?sinceVersion=" + version);
+        assertThat(delta.get("fullResync").asBoolean()).isFalse();
+        assertThat(delta.get("version").asLong()).isGreaterThan(version);
+
+        Map<String, JsonNode> byName = new HashMap<>();
+        for (JsonNode c : delta.get("changes")) byName.put(c.get("ingredientName").asText(), c);
+        assertThat(byName.keySet()).containsExactlyInAnyOrder("Tortilla", "Ost", "Pasta");
+        assertThat(byName.get("Tortilla").get("amount").decimalValue()).isEqualByComparingTo(new BigDecimal("8"));
+        assertThat(byName.get("Ost").get("removed").asBoolean()).isTrue();
+        assertThat(byName.get("Pasta").get("removed").asBoolean()).isFalse();
+
+        // En versjon fra en annen node (annen epoke i de høye bitene) gir full resync, ikke en delta
+        long otherNode = delta.get("version").asLong() + (1L << 32);
+        JsonNode foreign = getJson("/weekly-menus/" + menuId + "/shopping-list/changes?sinceVersion=" + otherNode);
+        assertThat(foreign.get("fullResync").asBoolean()).isTrue();
+        assertThat(foreign.get("changes").size()).isEqualTo(3);
+        long olderNode = version - (1L << 32);
+        assertThat(getJson("/weekly-menus/" + menuId + "/shopping-list/changes?sinceVersion=" + olderNode)
+                .get("fullResync").asBoolean()).isTrue();
+
+        // Den patchede lista skal være lik en full omberegning
+        String patched = http.getForEntity("/weekly-menus/" + menuId + "/shopping-list", String.class).getBody();
+        shoppingListCache.evict(menuId);
+        String recomputed = http.getForEntity("/weekly-menus/" + menuId + "/shopping-list", String.class).getBody();
+        assertThat(patched).isEqualTo(recomputed);
+    }
+
+    @Test
+    void shoppingListRange_mergesWeeksPerIngredientAndUnit_withDatedSources() throws Exception {
+        long r1 = postRecipe("Range Taco", "Test", List.of(
+                item("Kjøttdeig", new BigDecimal("400"), "g", null),
+                item("Tortilla", new BigDecimal("8"), "stk", null)
+        ));
+        long r2 = postRecipe("Range Lasagne", "Test", List.of(
+                item("Kjøttdeig", new BigDecimal("500"), "g", null)
+        ));
+
+        LocalDate monday = randomMonday();
+        long week1 = postWeeklyMenu(monday, List.of(dinner(5, r1, false, null)));
+        long week2 = postWeeklyMenu(monday.plusWeeks(1), List.of(dinner(2, r2, false, null)));
+
+        JsonNode range = getJson("/weekly-menus/shopping-list?from=" + monday + "&to=" + monday.plusDays(13));
+        List<Long> menuIds = new ArrayList<>();
+        range.get("weeklyMenuIds").forEach(n -> menuIds.add(n.asLong()));
+        assertThat(menuIds).contains(week1, week2);
+
+        JsonNode kjottdeig = null;
+        for (JsonNode cat : range.get("categories")) {
+            for (JsonNode it : cat.get("items")) {
+                if (it.get("ingredientName").asText().equals("Kjøttdeig") && it.get("unit").asText().equals("g")) {
+                    kjottdeig = it;
+                }
+            }
+        }
+        assertThat(kjottdeig).isNotNull();
+
+        // Kun våre to oppskrifter (andre tester kan i teorien ha menyer i samme uker)
+        List<String> ours = new ArrayList<>();
+        BigDecimal ourSum = BigDecimal.ZERO;
+        for (JsonNode src : kjottdeig.get("sources")) {
+            long recipeId = src.get("recipeId").asLong();
+            if (recipeId == r1 || recipeId == r2) {
+                ours.add(src.get("date").asText());
+                ourSum = ourSum.add(src.get("amount").decimalValue());
+            }
+        }
+        assertThat(ours).containsExactly(monday.plusDays(4).toString(), monday.plusDays(8).toString());
+        assertThat(ourSum).isEqualByComparingTo(new BigDecimal("900"));
+
+        // Ukeslista har fortsatt ingen date på sources
+        JsonNode single = getJson("/weekly-menus/" + week1 + "/shopping-list");
+        assertThat(single.get("categories").get(0).get("items").get(0).get("sources").get(0).has("date")).isFalse();
+    }
+
+    @Test
+    void shoppingListRange_rejectsFromAfterTo() {
+        ResponseEntity<String> res = http.getForEntity(
+                "/weekly-menus/shopping-list?from=2024-02-01&to=2024-01-01", String.class);
+        assertThat(res.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
     @Test
     void patchDinner_updatesRecipeLockedAndNote() throws Exception {
         // Lag to oppskrifter
@@ -236,6 +510,16 @@ class ShoppingListIntegrationTests {
 
     // ---------- helpers ----------
 
+    private List<String> ingredientNames(JsonNode shoppingList) {
+        List<String> names = new ArrayList<>();
+        for (JsonNode c : shoppingList.get("categories")) {
+            for (JsonNode it : c.get("items")) {
+                names.add(it.get("ingredientName").asText());
+            }
+        }
+        return names;
+    }
+
     private Map<String, Object> item(String ingredientName, BigDecimal amount, String unit, String note) {
         Map<String, Object> m = new LinkedHashMap<>();
         m.put("ingredientName", ingredientName);
@@ -307,12 +591,13 @@ class ShoppingListIntegrationTests {
         ResponseEntity<Void> res = http.exchange(path, HttpMethod.PATCH, req, Void.class);
         assertThat(res.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
     }
+    // week_start_date er unik: tilfeldig startuke per testklasse (~7000 år spenn), deretter fortløpende
+    // med 8 ukers mellomrom, så tester som bruker naboukene (±uker) aldri treffer hverandre
+    private static final java.util.concurrent.atomic.AtomicLong NEXT_WEEK =
+            new java.util.concurrent.atomic.AtomicLong(Math.floorMod(UUID.randomUUID().hashCode(), 52 * 7000));
+
     private LocalDate randomMonday() {
-        // Velg en tilfeldig dato, og "snap" den til nærmeste mandag (samme eller neste).
-        int days = Math.floorMod(UUID.randomUUID().hashCode(), 365 * 50); // ~50 år spenn
-        return LocalDate.of(2000, 1, 1)
-                .plusDays(days)
-                .with(java.time.temporal.TemporalAdjusters.nextOrSame(java.time.DayOfWeek.MONDAY));
+        return LocalDate.of(2000, 1, 3).plusWeeks(NEXT_WEEK.getAndAdd(8)); // 2000-01-03 er en mandag
     }
 
 }
\ No newline at end of file
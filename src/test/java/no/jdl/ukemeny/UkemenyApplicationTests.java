@@ -1,5 +1,7 @@
 package no.jdl.ukemeny;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import no.jdl.ukemeny.ingredient.api.IngredientResponse;
 import no.jdl.ukemeny.recipe.api.*;
 
@@ -9,6 +11,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.math.BigDecimal;
@@ -25,6 +28,15 @@ class UkemenyApplicationTests {
 	@Autowired
 	TestRestTemplate http;
 
+	@Autowired
+	ObjectMapper om;
+
+	@Autowired
+	MeterRegistry meters;
+
+	@Autowired
+	JdbcTemplate jdbc;
+
 	@Test
 	void createRecipe_autoCreatesIngredient_withDefaultCategoryDiverse() {
 		var suffix = UUID.randomUUID().toString().substring(0, 8);
@@ -39,7 +51,7 @@ class UkemenyApplicationTests {
 						new BigDecimal("1.0"),
 						"stk",
 						null
-				))
+				)), null
 		);
 
 		var create = http.postForEntity("/recipes", req, CreateRecipeResponse.class);
@@ -76,7 +88,7 @@ class UkemenyApplicationTests {
 				List.of(
 						new CreateRecipeItemRequest("Kjøttdeig-" + suffix, new BigDecimal("400"), "g", null),
 						new CreateRecipeItemRequest("Tacokrydder-" + suffix, new BigDecimal("1"), "pose", null)
-				)
+				), null
 		);
 
 		var created = http.postForEntity("/recipes", createReq, CreateRecipeResponse.class);
@@ -88,7 +100,7 @@ class UkemenyApplicationTests {
 		var updateReq = new UpdateRecipeRequest(
 				recipeName + " (oppdatert)",
 				"Nå bare ett item",
-				List.of(new CreateRecipeItemRequest("Kylling-" + suffix, new BigDecimal("500"), "g", null))
+				List.of(new CreateRecipeItemRequest("Kylling-" + suffix, new BigDecimal("500"), "g", null)), null
 		);
 
 		var updateResp = http.exchange("/recipes/" + id, HttpMethod.PUT, new HttpEntity<>(updateReq), Void.class);
@@ -114,7 +126,7 @@ class UkemenyApplicationTests {
 		var createReq = new CreateRecipeRequest(
 				recipeName,
 				"Ingrediensen skal ikke kunne slettes",
-				List.of(new CreateRecipeItemRequest(ingName, new BigDecimal("1"), "stk", null))
+				List.of(new CreateRecipeItemRequest(ingName, new BigDecimal("1"), "stk", null)), null
 		);
 
 		var created = http.postForEntity("/recipes", createReq, CreateRecipeResponse.class);
@@ -150,7 +162,7 @@ class UkemenyApplicationTests {
 		var created = http.postForEntity("/recipes", new CreateRecipeRequest(
 				"Recipe " + suffix,
 				"Skaper ingrediens",
-				List.of(new CreateRecipeItemRequest(ingName, new BigDecimal("1"), "stk", null))
+				List.of(new CreateRecipeItemRequest(ingName, new BigDecimal("1"), "stk", null)), null
 		), CreateRecipeResponse.class);
 
 		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
@@ -176,4 +188,330 @@ class UkemenyApplicationTests {
 		var ingredients = List.of(Objects.requireNonNullElse(ingredientsResp.getBody(), new IngredientResponse[0]));
 		assertThat(ingredients.stream().anyMatch(i -> i.id().equals(ingredientId))).isFalse();
 	}
-}
\ No newline at end of file
+
+	@Test
+	void updateRecipePreferences_setsFavoriteAndRating_andRejectsInvalidRating() {
+		var suffix = UUID.randomUUID().toString().substring(0, 8);
+		var created = http.postForEntity("/recipes", new CreateRecipeRequest(
+				"Favoritt " + suffix,
+				"Preferanser",
+				List.of(new CreateRecipeItemRequest("Pref-" + suffix, new BigDecimal("1"), "stk", null)), null
+		), CreateRecipeResponse.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		var recipeId = Objects.requireNonNull(created.getBody()).id();
+
+		var update = http.exchange("/recipes/" + recipeId + "/preferences", HttpMethod.PATCH,
+				new HttpEntity<>(new UpdateRecipePreferencesRequest(true, 5)), Void.class);
+		assertThat(update.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+		var details = http.getForEntity("/recipes/" + recipeId, RecipeDetailsResponse.class);
+		assertThat(details.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(Objects.requireNonNull(details.getBody()).favorite()).isTrue();
+		assertThat(details.getBody().rating()).isEqualTo(5);
+
+		var invalid = http.exchange("/recipes/" + recipeId + "/preferences", HttpMethod.PATCH,
+				new HttpEntity<>(new UpdateRecipePreferencesRequest(null, 6)), String.class);
+		assertThat(invalid.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	void similarRecipes_findsRecipesWithSameIngredients_mostSimilarFirst() {
+		var suffix = UUID.randomUUID().toString().substring(0, 8);
+		var taco = List.of(
+				new CreateRecipeItemRequest("Tortilla-" + suffix, new BigDecimal("8"), "stk", null),
+				new CreateRecipeItemRequest("Kjøttdeig-" + suffix, new BigDecimal("400"), "g", null),
+				new CreateRecipeItemRequest("Salsa-" + suffix, new BigDecimal("1"), "glass", null)
+		);
+		var tacoId = createRecipe("Taco " + suffix, taco);
+		var bowlId = createRecipe("Taco bowl " + suffix, taco);
+		var otherId = createRecipe("Suppe " + suffix, List.of(
+				new CreateRecipeItemRequest("Tomat-" + suffix, new BigDecimal("2"), "boks", null)));
+
+		var res = http.getForEntity("/recipes/" + tacoId + "/similar", SimilarRecipeResponse[].class);
+		assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+		var similar = List.of(Objects.requireNonNull(res.getBody()));
+		assertThat(similar).isNotEmpty();
+		assertThat(similar.get(0).id()).isEqualTo(bowlId);
+		assertThat(similar.get(0).similarity()).isEqualTo(1.0);
+		assertThat(similar.stream().map(SimilarRecipeResponse::id)).doesNotContain(tacoId, otherId);
+
+		var missing = http.getForEntity("/recipes/999999999/similar", String.class);
+		assertThat(missing.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	void searchRecipes_ranksBySimilarity_toleratesTypos_andPagesWithCursor() {
+		// Kun bokstaver, så tokenet gir egne trigrammer og ikke treffer andre testers oppskrifter
+		var token = UUID.randomUUID().toString().replaceAll("[^a-f]", "") + "qx";
+		var items = List.of(new CreateRecipeItemRequest("Pasta-" + token, new BigDecimal("1"), "pk", null));
+		var exactId = createRecipe(token + " lasagne", items);
+		var longerId = createRecipe(token + " lasagne med spinat", items);
+
+		var first = http.getForEntity("/recipes/search?name=" + token + " lasagne&limit=1", RecipeSearchResponse.class);
+		assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+		var page1 = Objects.requireNonNull(first.getBody());
+		assertThat(page1.items()).extracting(RecipeSummary::id).containsExactly(exactId);
+		assertThat(page1.nextCursor()).isNotNull();
+
+		var page2 = Objects.requireNonNull(http.getForEntity(
+				"/recipes/search?name=" + token + " lasagne&limit=1&cursor=" + page1.nextCursor(), RecipeSearchResponse.class).getBody());
+		assertThat(page2.items()).extracting(RecipeSummary::id).containsExactly(longerId);
+
+		// Skrivefeil gir fortsatt treff, og ingen substring-match kreves
+		var typo = Objects.requireNonNull(http.getForEntity(
+				"/recipes/search?name=" + token + " lasange", RecipeSearchResponse.class).getBody());
+		assertThat(typo.items()).extracting(RecipeSummary::id).contains(exactId, longerId);
+
+		// GET /recipes?name= er fortsatt en ren liste (Top 10), rangert likt
+		var top = Objects.requireNonNull(http.getForEntity(
+				"/recipes?name=" + token + " lasagne", RecipeSummary[].class).getBody());
+		assertThat(top).extracting(RecipeSummary::id).startsWith(exactId, longerId);
+
+		var invalid = http.getForEntity("/recipes/search?name=x&cursor=not-a-cursor", String.class);
+		assertThat(invalid.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	void similarRecipes_seesRecipesWrittenOnAnotherNode() throws Exception {
+		var suffix = UUID.randomUUID().toString().substring(0, 8);
+		var tacoId = createRecipe("Taco " + suffix,
+				List.of(new CreateRecipeItemRequest("Tortilla-" + suffix, new BigDecimal("8"), "stk", null)));
+		var tortillaId = ingredientIdOf(tacoId);
+		assertThat(similar(tacoId)).isEmpty();
+
+		// Opprettet på en annen node: ingen lokal event
+		var copyId = jdbc.queryForObject("insert into recipe (name) values (?) returning id", Long.class, "Taco kopi " + suffix);
+		jdbc.update("insert into recipe_item (recipe_id, ingredient_id, amount, unit) values (?, ?, 8, 'stk')", copyId, tortillaId);
+		Thread.sleep(1_100); // ukemeny.recipe-catalog.refresh-interval=PT1S i testprofilen
+		assertThat(similar(tacoId)).containsExactly(copyId);
+
+		// Endret på en annen node (revisjonen økes som i RecipeService.update): bøttene følger med
+		jdbc.update("delete from recipe_item where recipe_id = ?", copyId);
+		jdbc.update("update recipe set revision = revision + 1 where id = ?", copyId);
+		Thread.sleep(1_100);
+		assertThat(similar(tacoId)).isEmpty();
+	}
+
+	@Test
+	void autocomplete_foldsNorwegianLetters_matchesInsideWords_andFollowsDeletes() {
+		var token = UUID.randomUUID().toString().replaceAll("[^a-f]", "") + "qx";
+		var items = List.of(new CreateRecipeItemRequest("Rømme" + token, new BigDecimal("1"), "beger", null));
+		var cakeId = createRecipe("Bløtkake " + token, items);
+
+		// Uten ø, og "kake" inni "bløtkake"
+		assertThat(autocomplete("/recipes/autocomplete?query=blotkake " + token)).containsExactly(cakeId);
+		assertThat(autocomplete("/recipes/autocomplete?query=kake " + token.substring(0, 4))).contains(cakeId);
+		assertThat(autocomplete("/recipes/autocomplete?query=BLØT " + token)).contains(cakeId);
+
+		// Ingrediensen ble opprettet av oppskriften og er søkbar med og uten ø
+		var ingredient = http.getForEntity("/ingredients/autocomplete?query=romme" + token, String.class);
+		assertThat(ingredient.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(ingredient.getBody()).contains("Rømme" + token);
+
+		http.delete("/recipes/" + cakeId);
+		assertThat(autocomplete("/recipes/autocomplete?query=blotkake " + token)).isEmpty();
+	}
+
+	@Test
+	void autocomplete_seesNamesWrittenOnAnotherNode() throws Exception {
+		var token = UUID.randomUUID().toString().replaceAll("[^a-f]", "") + "qz";
+
+		// Skrevet på en annen node: ingen lokale eventer
+		var recipeId = jdbc.queryForObject("insert into recipe (name) values (?) returning id", Long.class, "Fjernsuppe " + token);
+		jdbc.update("insert into ingredient (name, category_id) values (?, (select id from category where name = 'Diverse'))",
+				"Fjernløk" + token);
+		// Katalogen og autocomplete sjekker hvert sitt sekund i testprofilen
+		Thread.sleep(2_100);
+		assertThat(autocomplete("/recipes/autocomplete?query=fjernsuppe " + token)).containsExactly(recipeId);
+		assertThat(http.getForObject("/ingredients/autocomplete?query=fjernlok" + token, String.class))
+				.contains("Fjernløk" + token);
+
+		// Omdøpt på en annen node (revisjonen økes som i RecipeService.update)
+		jdbc.update("update recipe set name = ?, revision = revision + 1 where id = ?", "Fjerngryte " + token, recipeId);
+		Thread.sleep(2_100);
+		assertThat(autocomplete("/recipes/autocomplete?query=fjernsuppe " + token)).isEmpty();
+		assertThat(autocomplete("/recipes/autocomplete?query=fjerngryte " + token)).containsExactly(recipeId);
+	}
+
+	@Test
+	void byIngredients_ranksByMatchedIngredients_filtersCoverage_andFollowsUpdates() {
+		var token = UUID.randomUUID().toString();
+		var x = new CreateRecipeItemRequest("Ingrediens X " + token, new BigDecimal("1"), "stk", null);
+		var y = new CreateRecipeItemRequest("Ingrediens Y " + token, new BigDecimal("1"), "stk", null);
+		var z = new CreateRecipeItemRequest("Ingrediens Z " + token, new BigDecimal("1"), "stk", null);
+		var a = createRecipe("Rett A " + token, List.of(x, y));
+		var b = createRecipe("Rett B " + token, List.of(x, y, z));
+
+		var ingredientIds = new java.util.HashMap<String, Long>();
+		for (var item : Objects.requireNonNull(http.getForObject("/recipes/" + b, RecipeDetailsResponse.class)).items()) {
+			ingredientIds.put(item.ingredientName().substring(11, 12).toUpperCase(), item.ingredientId());
+		}
+		var xId = ingredientIds.get("X");
+		var yId = ingredientIds.get("Y");
+		var zId = ingredientIds.get("Z");
+
+		// Begge bruker X og Y; A har full dekning og kommer først
+		assertThat(byIngredients("ids=" + xId + "," + yId)).containsExactly(a, b);
+		assertThat(byIngredients("ids=" + xId + "," + yId + "&minCoverage=0.9")).containsExactly(a);
+		assertThat(byIngredients("ids=" + xId + "," + zId + "&all=true")).containsExactly(b);
+
+		// Etter oppdatering bruker A bare X
+		var update = new UpdateRecipeRequest("Rett A " + token, null, List.of(x), null);
+		assertThat(http.exchange("/recipes/" + a, HttpMethod.PUT, new HttpEntity<>(update), Void.class).getStatusCode())
+				.isEqualTo(HttpStatus.NO_CONTENT);
+		assertThat(byIngredients("ids=" + yId)).containsExactly(b);
+		assertThat(byIngredients("ids=" + xId + "&all=true")).containsExactly(a, b);
+
+		assertThat(http.getForEntity("/recipes/by-ingredients?ids=" + xId + "&minCoverage=2", String.class).getStatusCode())
+				.isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	void byIngredients_seesRecipesWrittenOnAnotherNode() throws Exception {
+		var token = UUID.randomUUID().toString();
+		var x = new CreateRecipeItemRequest("Ingrediens N " + token, new BigDecimal("1"), "stk", null);
+		var a = createRecipe("Rett N " + token, List.of(x));
+		var xId = ingredientIdOf(a);
+		assertThat(byIngredients("ids=" + xId)).containsExactly(a);
+
+		// Opprettet på en annen node: ingen lokal event
+		var b = jdbc.queryForObject("insert into recipe (name) values (?) returning id", Long.class, "Rett N2 " + token);
+		jdbc.update("insert into recipe_item (recipe_id, ingredient_id, amount, unit) values (?, ?, 1, 'stk')", b, xId);
+		Thread.sleep(1_100); // ukemeny.recipe-catalog.refresh-interval=PT1S i testprofilen
+		assertThat(byIngredients("ids=" + xId)).containsExactlyInAnyOrder(a, b);
+
+		// Endret på en annen node (revisjonen økes som i RecipeService.update)
+		jdbc.update("delete from recipe_item where recipe_id = ?", b);
+		jdbc.update("update recipe set revision = revision + 1 where id = ?", b);
+		Thread.sleep(1_100);
+		assertThat(byIngredients("ids=" + xId)).containsExactly(a);
+	}
+
+	@Test
+	void importNdjson_reportsEachLine_reusesIngredients_andKeepsGoodLinesWhenOneFails() throws Exception {
+		var token = UUID.randomUUID().toString().substring(0, 8);
+		var existing = createRecipe("Før import " + token,
+				List.of(new CreateRecipeItemRequest("Importmel " + token, new BigDecimal("1"), "dl", null)));
+		var flourId = Objects.requireNonNull(http.getForObject("/recipes/" + existing, RecipeDetailsResponse.class))
+				.items().get(0).ingredientId();
+
+		var first = new CreateRecipeRequest("Import A " + token, null, List.of(
+				new CreateRecipeItemRequest("IMPORTMEL " + token, new BigDecimal("3"), "dl", null),
+				new CreateRecipeItemRequest("Importsukker " + token, new BigDecimal("1"), "dl", null)), List.of("Bakst"));
+		var invalid = new CreateRecipeRequest("", null, List.of(), null);
+		var tooLarge = new CreateRecipeRequest("Import C " + token, null, List.of(
+				new CreateRecipeItemRequest("Importsukker " + token, new BigDecimal("1e20"), "dl", null)), null);
+		var last = new CreateRecipeRequest("Import D " + token, null, List.of(
+				new CreateRecipeItemRequest("importsukker " + token, new BigDecimal("2"), "dl", null)), null);
+		var body = String.join("\n",
+				om.writeValueAsString(first),
+				"{ikke json",
+				"",
+				om.writeValueAsString(invalid),
+				om.writeValueAsString(tooLarge),
+				om.writeValueAsString(last)) + "\n";
+
+		var headers = new HttpHeaders();
+		headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+		var res = http.postForEntity("/recipes/import", new HttpEntity<>(body, headers), String.class);
+		assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		var results = new java.util.ArrayList<RecipeImportLineResult>();
+		for (var line : Objects.requireNonNull(res.getBody()).split("\n")) {
+			results.add(om.readValue(line, RecipeImportLineResult.class));
+		}
+		assertThat(results).extracting(RecipeImportLineResult::line).containsExactlyInAnyOrder(1, 2, 4, 5, 6);
+		var byLine = new java.util.HashMap<Integer, RecipeImportLineResult>();
+		results.forEach(r -> byLine.put(r.line(), r));
+		assertThat(byLine.get(2).error()).startsWith("Invalid JSON");
+		assertThat(byLine.get(4).error()).contains("name").contains("items");
+		// Linje 5 feiler i databasen; resten av biten lagres likevel
+		assertThat(byLine.get(5).id()).isNull();
+		assertThat(byLine.get(5).error()).isNotBlank();
+
+		var a = Objects.requireNonNull(http.getForObject("/recipes/" + byLine.get(1).id(), RecipeDetailsResponse.class));
+		var d = Objects.requireNonNull(http.getForObject("/recipes/" + byLine.get(6).id(), RecipeDetailsResponse.class));
+		assertThat(a.tags()).containsExactly("bakst");
+		var aIngredients = a.items().stream().map(RecipeItemResponse::ingredientId).toList();
+		assertThat(aIngredients).contains(flourId).hasSize(2);
+		// Samme ingrediens uansett store/små bokstaver, og ingen dobbel rad
+		assertThat(aIngredients).contains(d.items().get(0).ingredientId());
+
+		// Indeksene i minnet oppdateres av én samlet event for hele biten
+		assertThat(autocomplete("/recipes/autocomplete?query=import " + token))
+				.contains(byLine.get(1).id(), byLine.get(6).id());
+	}
+
+	@Test
+	void ingredientCache_hitsOnRepeatedNames_andForgetsDeletedIngredients() {
+		var token = UUID.randomUUID().toString().substring(0, 8);
+		var hits = meters.counter("ukemeny.ingredient.cache.requests", "result", "hit");
+		var items = List.of(new CreateRecipeItemRequest("Cachetest " + token, new BigDecimal("1"), "stk", null));
+
+		var first = createRecipe("Cache 1 " + token, items);
+		var hitsBefore = hits.count();
+		var second = createRecipe("Cache 2 " + token, List.of(
+				new CreateRecipeItemRequest("CACHETEST " + token, new BigDecimal("2"), "stk", null)));
+		assertThat(hits.count()).isGreaterThan(hitsBefore);
+
+		var ingredientId = ingredientIdOf(first);
+		assertThat(ingredientIdOf(second)).isEqualTo(ingredientId);
+
+		// Slettet ingrediens skal ikke gis ut fra cachen igjen
+		http.delete("/recipes/" + first);
+		http.delete("/recipes/" + second);
+		var deleted = http.exchange("/ingredients/" + ingredientId, HttpMethod.DELETE, null, Void.class);
+		assertThat(deleted.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+		var third = createRecipe("Cache 3 " + token, items);
+		assertThat(ingredientIdOf(third)).isNotEqualTo(ingredientId);
+	}
+
+	@Test
+	void ingredientCache_confirmsCachedIds_whenIngredientIsDeletedBehindItsBack() {
+		var token = UUID.randomUUID().toString().substring(0, 8);
+		var stale = meters.counter("ukemeny.ingredient.cache.stale");
+		var items = List.of(new CreateRecipeItemRequest("Bortesløyd " + token, new BigDecimal("1"), "stk", null));
+
+		var first = createRecipe("Stale 1 " + token, items);
+		var ingredientId = ingredientIdOf(first);
+		http.delete("/recipes/" + first);
+
+		// Slettet av en annen node: ingen event her, så id-en ligger fortsatt i cachen
+		jdbc.update("delete from ingredient where id = ?", ingredientId);
+		var staleBefore = stale.count();
+
+		var second = createRecipe("Stale 2 " + token, items);
+		assertThat(ingredientIdOf(second)).isNotEqualTo(ingredientId);
+		assertThat(stale.count()).isGreaterThan(staleBefore);
+	}
+
+	private Long ingredientIdOf(Long recipeId) {
+		var recipe = http.getForObject("/recipes/" + recipeId, RecipeDetailsResponse.class);
+		return Objects.requireNonNull(recipe).items().get(0).ingredientId();
+	}
+
+	private List<Long> byIngredients(String query) {
+		var res = http.getForEntity("/recipes/by-ingredients?" + query, RecipeIngredientMatchResponse[].class);
+		assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+		return java.util.Arrays.stream(Objects.requireNonNull(res.getBody())).map(RecipeIngredientMatchResponse::id).toList();
+	}
+
+	private List<Long> similar(Long recipeId) {
+		var res = http.getForEntity("/recipes/" + recipeId + "/similar", SimilarRecipeResponse[].class);
+		assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+		return java.util.Arrays.stream(Objects.requireNonNull(res.getBody())).map(SimilarRecipeResponse::id).toList();
+	}
+
+	private List<Long> autocomplete(String path) {
+		var res = http.getForEntity(path, RecipeSummary[].class);
+		assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+		return java.util.Arrays.stream(Objects.requireNonNull(res.getBody())).map(RecipeSummary::id).toList();
+	}
+
+	private Long createRecipe(String name, List<CreateRecipeItemRequest> items) {
+		var created = http.postForEntity("/recipes", new CreateRecipeRequest(name, null, items, null), CreateRecipeResponse.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		return Objects.requireNonNull(created.getBody()).id();
+	}
+}
@@ -0,0 +1,691 @@
+package no.jdl.ukemeny;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import no.jdl.ukemeny.recipe.RecipeCatalog;
+import no.jdl.ukemeny.recipe.RecipeIngredientIndex;
+import no.jdl.ukemeny.recipe.RecipeTagIndex;
+import no.jdl.ukemeny.weeklymenu.RecipeHistoryCache;
+import no.jdl.ukemeny.weeklymenu.ShoppingListCache;
+import no.jdl.ukemeny.weeklymenu.WeeklyMenuPregenerator;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationContext;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerationStrategy;
+import no.jdl.ukemeny.weeklymenu.generation.MenuGenerators;
+import no.jdl.ukemeny.weeklymenu.generation.MenuHistory;
+import no.jdl.ukemeny.weeklymenu.generation.TagFilter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class WeeklyMenuGenerationIntegrationTests {
+
+    @Autowired TestRestTemplate http;
+    @Autowired ObjectMapper om;
+    @Autowired WeeklyMenuPregenerator pregenerator;
+    @Autowired ShoppingListCache shoppingListCache;
+    @Autowired RecipeCatalog recipeCatalog;
+    @Autowired RecipeTagIndex recipeTagIndex;
+    @Autowired RecipeIngredientIndex recipeIngredientIndex;
+    @Autowired MenuGenerators menuGenerators;
+    @Autowired RecipeHistoryCache recipeHistoryCache;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired MeterRegistry meters;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"RANDOM", "CONSTRAINT", "OVERLAP"})
+    void generate_fillsAllDaysWithoutDuplicates(String strategy) throws Exception {
+        ensureRecipes(strategy, 8);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("strategy", strategy);
+        long menuId = postJson("/weekly-menus/generate", body, HttpStatus.CREATED).get("id").asLong();
+
+        JsonNode menu = getJson("/weekly-menus/" + menuId);
+        List<Integer> days = new ArrayList<>();
+        Set<Long> recipeIds = new HashSet<>();
+        for (JsonNode d : menu.get("dinners")) {
+            days.add(d.get("dayOfWeek").asInt());
+            recipeIds.add(d.get("recipeId").asLong());
+            assertThat(d.get("locked").asBoolean()).isFalse();
+        }
+        assertThat(days).containsExactly(1, 2, 3, 4, 5, 6, 7);
+        assertThat(recipeIds).hasSize(7);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"RANDOM", "CONSTRAINT", "OVERLAP"})
+    void regenerate_keepsLockedDaysAndDoesNotReuseLockedRecipe(String strategy) throws Exception {
+        var ids = ensureRecipes("Regen " + strategy, 8);
+        long locked = ids.get(0);
+
+        List<Map<String, Object>> dinners = new ArrayList<>();
+        dinners.add(dinner(1, locked, true));
+        for (int day = 2; day <= 7; day++) {
+            dinners.add(dinner(day, ids.get(day - 1), false));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("dinners", dinners);
+        long menuId = postJson("/weekly-menus", body, HttpStatus.CREATED).get("id").asLong();
+
+        JsonNode menu = postJson("/weekly-menus/" + menuId + "/regenerate?strategy=" + strategy, null, HttpStatus.OK);
+
+        Set<Long> recipeIds = new HashSet<>();
+        for (JsonNode d : menu.get("dinners")) {
+            long recipeId = d.get("recipeId").asLong();
+            if (d.get("dayOfWeek").asInt() == 1) {
+                assertThat(recipeId).isEqualTo(locked);
+                assertThat(d.get("locked").asBoolean()).isTrue();
+            } else {
+                assertThat(recipeId).isNotEqualTo(locked);
+            }
+            recipeIds.add(recipeId);
+        }
+        assertThat(recipeIds).hasSize(7);
+    }
+
+    @Test
+    void generate_constraint_avoidsRecipesFromRecentWeeks() throws Exception {
+        var recent = ensureRecipes("Nylig", 7);
+        ensureRecipes("Lenge siden", 8);
+
+        LocalDate monday = randomMonday();
+        List<Map<String, Object>> dinners = new ArrayList<>();
+        for (int day = 1; day <= 7; day++) {
+            dinners.add(dinner(day, recent.get(day - 1), false));
+        }
+        Map<String, Object> old = new LinkedHashMap<>();
+        old.put("weekStartDate", monday.minusWeeks(2).toString());
+        old.put("dinners", dinners);
+        postJson("/weekly-menus", old, HttpStatus.CREATED);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", monday.toString());
+        body.put("strategy", "CONSTRAINT");
+        long menuId = postJson("/weekly-menus/generate", body, HttpStatus.CREATED).get("id").asLong();
+
+        List<Long> picked = new ArrayList<>();
+        for (JsonNode d : getJson("/weekly-menus/" + menuId).get("dinners")) {
+            picked.add(d.get("recipeId").asLong());
+        }
+        assertThat(picked).hasSize(7).doesNotContainAnyElementsOf(recent);
+    }
+
+    @Test
+    void generateRange_plansConsecutiveWeeksWithoutRepeatsAcrossWeeks() throws Exception {
+        ensureRecipes("Range", 28);
+
+        LocalDate monday = randomMonday();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("fromWeekStartDate", monday.toString());
+        body.put("weeks", 4);
+        body.put("strategy", "CONSTRAINT");
+        JsonNode generated = postJson("/weekly-menus/generate-range", body, HttpStatus.CREATED);
+
+        assertThat(generated.size()).isEqualTo(4);
+        List<Long> allPicked = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            JsonNode g = generated.get(w);
+            assertThat(g.get("weekStartDate").asText()).isEqualTo(monday.plusWeeks(w).toString());
+
+            JsonNode menu = getJson("/weekly-menus/" + g.get("id").asLong());
+            assertThat(menu.get("dinners").size()).isEqualTo(7);
+            for (JsonNode d : menu.get("dinners")) {
+                allPicked.add(d.get("recipeId").asLong());
+            }
+        }
+        assertThat(new HashSet<>(allPicked)).hasSize(28);
+
+        // Samme periode en gang til -> 409
+        postJson("/weekly-menus/generate-range", body, HttpStatus.CONFLICT);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"RANDOM", "CONSTRAINT", "OVERLAP"})
+    void generate_respectsTagRules_minDaysAndExclude(String strategy) throws Exception {
+        ensureRecipes("Fisk " + strategy, 3, List.of("fisk"));
+        ensureRecipes("Svin " + strategy, 3, List.of("svin"));
+
+        Map<String, Object> tagRules = new LinkedHashMap<>();
+        tagRules.put("minDays", Map.of("Fisk", 2)); // normaliseres til små bokstaver
+        tagRules.put("exclude", List.of("svin"));
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("strategy", strategy);
+        body.put("tagRules", tagRules);
+        long menuId = postJson("/weekly-menus/generate", body, HttpStatus.CREATED).get("id").asLong();
+
+        int fishDays = 0;
+        for (JsonNode d : getJson("/weekly-menus/" + menuId).get("dinners")) {
+            List<String> tags = new ArrayList<>();
+            getJson("/recipes/" + d.get("recipeId").asLong()).get("tags").forEach(t -> tags.add(t.asText()));
+            assertThat(tags).doesNotContain("svin");
+            if (tags.contains("fisk")) fishDays++;
+        }
+        assertThat(fishDays).isGreaterThanOrEqualTo(2);
+
+        // Ukjent tag i require kan aldri oppfylles -> 400
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("tagRules", Map.of("require", List.of("finnes-ikke-" + UUID.randomUUID())));
+        postJson("/weekly-menus/generate", body, HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void tags_capIsCheckedAgainstDatabase_andBitsOfRemovedTagsAreReused() throws Exception {
+        ensureRecipes("Taggbase", 7);
+        int free = RecipeTagIndex.MAX_TAGS
+                - jdbc.queryForObject("select count(distinct tag) from recipe_tag", Integer.class);
+        List<String> filler = new ArrayList<>();
+        for (int i = 0; i < free; i++) filler.add("fyll-" + i + "-" + UUID.randomUUID());
+        long fillerId = ensureRecipes("Taggfyll", 1, filler).get(0);
+
+        // Databasen har 64 distinkte tagger -> en ny tag avvises
+        String fresh = "ny-" + UUID.randomUUID();
+        Map<String, Object> item = Map.of("ingredientName", "Taggny ingrediens", "amount", 1, "unit", "stk");
+        Map<String, Object> body = Map.of("name", "Taggny " + UUID.randomUUID(), "items", List.of(item),
+                "tags", List.of(fresh));
+        postJson("/recipes", body, HttpStatus.BAD_REQUEST);
+
+        // Fyll-taggene forsvinner -> plass igjen, og indeksen nummererer på nytt i stedet for å gå tom for biter
+        http.delete("/recipes/" + fillerId);
+        long freshId = postJson("/recipes", body, HttpStatus.CREATED).get("id").asLong();
+
+        Map<String, Object> generate = new LinkedHashMap<>();
+        generate.put("weekStartDate", randomMonday().toString());
+        generate.put("tagRules", Map.of("minDays", Map.of(fresh, 1)));
+        long menuId = postJson("/weekly-menus/generate", generate, HttpStatus.CREATED).get("id").asLong();
+        List<Long> picked = new ArrayList<>();
+        getJson("/weekly-menus/" + menuId).get("dinners").forEach(d -> picked.add(d.get("recipeId").asLong()));
+        assertThat(picked).contains(freshId);
+    }
+
+    @Test
+    void overlapStrategy_usesFewerDistinctIngredients_thanRandomAndConstraint() throws Exception {
+        // Klynge: 7 oppskrifter som deler tre ingredienser (ulik hovedingrediens, så ingen straffes for det).
+        // Spredt: 14 oppskrifter med bare egne ingredienser. En tag avgrenser genereringen til disse.
+        String run = UUID.randomUUID().toString().substring(0, 8);
+        String tag = "overlapp-" + run;
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            ids.add(recipeWithIngredients("Klynge " + i + " " + run, tag,
+                    "Klynge hoved " + i + " " + run, "Klynge side " + i + " " + run,
+                    "Felles A " + run, "Felles B " + run, "Felles C " + run));
+        }
+        for (int i = 0; i < 14; i++) {
+            var ingredients = new String[5];
+            for (int j = 0; j < 5; j++) ingredients[j] = "Spredt " + i + "-" + j + " " + run;
+            ids.add(recipeWithIngredients("Spredt " + i + " " + run, tag, ingredients));
+        }
+
+        var catalog = recipeCatalog.snapshot();
+        assertThat(ids).allMatch(catalog::contains);
+        var tags = recipeTagIndex.view(catalog);
+        var onlyThese = new TagFilter(tags.masks(), tags.unknown(), tags.bit(tag), 0L, new long[0], new int[0]);
+
+        Map<MenuGenerationStrategy, Integer> distinct = new EnumMap<>(MenuGenerationStrategy.class);
+        for (var strategy : MenuGenerationStrategy.values()) {
+            var context = MenuGenerationContext.of(catalog, 7, List.of(), MenuHistory.EMPTY, null, new Random(42), onlyThese);
+            var picked = menuGenerators.get(strategy).generate(context);
+            assertThat(picked).hasSize(7).allMatch(ids::contains);
+            distinct.put(strategy, jdbc.queryForObject(
+                    "select count(distinct ingredient_id) from recipe_item where recipe_id = any(?)",
+                    Integer.class, (Object) picked.toArray(new Long[0])));
+        }
+
+        assertThat(distinct.get(MenuGenerationStrategy.OVERLAP))
+                .as("distinkte ingredienser per strategi: " + distinct)
+                .isLessThan(distinct.get(MenuGenerationStrategy.RANDOM))
+                .isLessThan(distinct.get(MenuGenerationStrategy.CONSTRAINT));
+    }
+
+    @Test
+    void preview_returnsAlternativesWithShoppingList_andCanBeSavedAsIs() throws Exception {
+        ensureRecipes("Preview", 14);
+        LocalDate monday = randomMonday();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", monday.toString());
+        body.put("alternatives", 3);
+        JsonNode previews = postJson("/weekly-menus/preview", body, HttpStatus.OK);
+
+        assertThat(previews.size()).isBetween(1, 3);
+        for (JsonNode p : previews) {
+            assertThat(p.get("weekStartDate").asText()).isEqualTo(monday.toString());
+            assertThat(p.get("dinners").size()).isEqualTo(7);
+            assertThat(p.get("itemCount").asInt()).isPositive();
+            assertThat(p.get("categories").size()).isPositive();
+        }
+
+        // Lagre første forslag uendret
+        List<Map<String, Object>> dinners = new ArrayList<>();
+        List<Long> expected = new ArrayList<>();
+        for (JsonNode d : previews.get(0).get("dinners")) {
+            dinners.add(dinner(d.get("dayOfWeek").asInt(), d.get("recipeId").asLong(), false));
+            expected.add(d.get("recipeId").asLong());
+        }
+        Map<String, Object> create = new LinkedHashMap<>();
+        create.put("weekStartDate", monday.toString());
+        create.put("dinners", dinners);
+        long menuId = postJson("/weekly-menus", create, HttpStatus.CREATED).get("id").asLong();
+
+        List<Long> saved = new ArrayList<>();
+        for (JsonNode d : getJson("/weekly-menus/" + menuId).get("dinners")) {
+            saved.add(d.get("recipeId").asLong());
+        }
+        assertThat(saved).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void pregenerate_generatesNextWeekOnce_andWarmsShoppingList() throws Exception {
+        ensureRecipes("Pregen", 8);
+        // Andre tester skriver rett i databasen; en omlasting av katalogen midt i testen ville (med rette)
+        // kaste den oppvarmede handlelista
+        recipeCatalog.reload();
+        // Langt utenfor randomMonday() sitt spenn, så ingen andre tester bruker uka
+        LocalDate today = LocalDate.of(9100, 1, 1).plusDays(Math.floorMod(UUID.randomUUID().hashCode(), 3650));
+
+        List<Long> first = pregenerator.pregenerate(today);
+        assertThat(first).hasSize(1);
+        long menuId = first.get(0);
+
+        JsonNode menu = getJson("/weekly-menus/" + menuId);
+        LocalDate monday = LocalDate.parse(menu.get("weekStartDate").asText());
+        assertThat(monday.getDayOfWeek()).isEqualTo(java.time.DayOfWeek.MONDAY);
+        assertThat(monday).isAfter(today).isBeforeOrEqualTo(today.plusDays(7));
+        assertThat(shoppingListCache.get(menuId)).isPresent();
+
+        // Uka har meny nå -> ingenting å gjøre
+        assertThat(pregenerator.pregenerate(today)).isEmpty();
+
+        // Lag måles fra siste vellykkede kjøring på denne noden
+        assertThat(meters.get("ukemeny.pregeneration.lag").gauge().value()).isBetween(0.0, 60.0);
+    }
+
+    @Test
+    void recipeCatalog_picksUpRecipesCreatedAndDeletedOnAnotherNode() throws Exception {
+        recipeCatalog.snapshot();
+
+        // Skrevet rett i databasen, som fra en annen node: ingen lokal event
+        Long id = jdbc.queryForObject("insert into recipe (name) values (?) returning id", Long.class,
+                "Annen node " + UUID.randomUUID());
+        Thread.sleep(1_100); // ukemeny.recipe-catalog.refresh-interval=PT1S i testprofilen
+        assertThat(recipeCatalog.snapshot().contains(id)).isTrue();
+
+        jdbc.update("delete from recipe where id = ?", id);
+        Thread.sleep(1_100);
+        assertThat(recipeCatalog.snapshot().contains(id)).isFalse();
+    }
+
+    @Test
+    void tagIndex_seesTagsWrittenOnAnotherNode() throws Exception {
+        String pork = "svin-" + UUID.randomUUID().toString().substring(0, 8);
+        long known = ensureRecipes("Svin", 1, List.of(pork)).get(0);
+        long plain = ensureRecipes("Usvin", 1).get(0);
+        var before = recipeTagIndex.view(recipeCatalog.snapshot());
+        long bit = before.bit(pork);
+        assertThat(before.masks()[before.catalog().indexOf(known)]).isEqualTo(bit);
+
+        // Skrevet rett i databasen, som fra en annen node: ny oppskrift med taggen, og taggen lagt på en
+        // eksisterende oppskrift (revisjonen økes som i RecipeService.update). Ingen lokale events.
+        Long created = jdbc.queryForObject("insert into recipe (name) values (?) returning id", Long.class,
+                "Svin annen node " + UUID.randomUUID());
+        jdbc.update("insert into recipe_tag (recipe_id, tag) values (?, ?)", created, pork);
+        jdbc.update("insert into recipe_tag (recipe_id, tag) values (?, ?)", plain, pork);
+        jdbc.update("update recipe set revision = revision + 1 where id = ?", plain);
+        Thread.sleep(1_100); // ukemeny.recipe-catalog.refresh-interval=PT1S i testprofilen
+
+        var catalog = recipeCatalog.snapshot();
+        var tags = recipeTagIndex.view(catalog);
+        var noPork = new TagFilter(tags.masks(), tags.unknown(), 0L, tags.bit(pork), new long[0], new int[0]);
+        assertThat(noPork.allowedAt(catalog.indexOf(created))).isFalse();
+        assertThat(noPork.allowedAt(catalog.indexOf(plain))).isFalse();
+        assertThat(noPork.allowedAt(catalog.indexOf(known))).isFalse();
+        assertThat(tags.unknown().isEmpty()).isTrue();
+    }
+
+    @Test
+    void ingredientIndex_seesIngredientsWrittenOnAnotherNode() throws Exception {
+        long known = ensureRecipes("Hovedingrediens", 1).get(0);
+        Long main = recipeIngredientIndex.mainIngredient(known);
+        assertThat(main).isNotNull();
+
+        // Skrevet rett i databasen, som fra en annen node: ny oppskrift med samme hovedingrediens
+        Long created = jdbc.queryForObject("insert into recipe (name) values (?) returning id", Long.class,
+                "Hovedingrediens annen node " + UUID.randomUUID());
+        jdbc.update("insert into recipe_item (recipe_id, ingredient_id, amount, unit) values (?, ?, 1, 'stk')", created, main);
+        Thread.sleep(1_100); // ukemeny.recipe-catalog.refresh-interval=PT1S i testprofilen
+
+        assertThat(recipeIngredientIndex.mainIngredient(created)).isEqualTo(main);
+        assertThat(RecipeIngredientIndex.overlap(
+                recipeIngredientIndex.bits(created), recipeIngredientIndex.bits(known))).isEqualTo(1);
+    }
+
+    @Test
+    void create_acceptsRecipeTheCatalogHasNotSeenYet() throws Exception {
+        recipeCatalog.snapshot();
+        // Opprettet på en annen node: katalogen her får ingen event og har ikke lastet på nytt ennå
+        Long id = jdbc.queryForObject("insert into recipe (name) values (?) returning id", Long.class,
+                "Ukjent her " + UUID.randomUUID());
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("dinners", List.of(dinner(1, id, false)));
+        postJson("/weekly-menus", body, HttpStatus.CREATED);
+
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("dinners", List.of(dinner(1, Long.MAX_VALUE, false)));
+        postJson("/weekly-menus", body, HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void historyCache_seesMenusWrittenByAnotherNodeAfterTtl() throws Exception {
+        var recipeId = ensureRecipes("Historikk", 1).get(0);
+        LocalDate monday = randomMonday();
+        var catalog = recipeCatalog.snapshot();
+        assertThat(recipeHistoryCache.history(monday, catalog).inPreviousMenu(recipeId)).isFalse();
+
+        // Uka før skrives rett i databasen, som fra en annen node: ingen lokal event
+        Long menuId = jdbc.queryForObject("insert into weekly_menu (week_start_date) values (?) returning id",
+                Long.class, java.sql.Date.valueOf(monday.minusWeeks(1)));
+        jdbc.update("insert into weekly_menu_entry (weekly_menu_id, day_of_week, recipe_id, locked) values (?, 1, ?, false)",
+                menuId, recipeId);
+
+        Thread.sleep(1_100); // ukemeny.generation.history-cache.ttl=PT1S i testprofilen
+        assertThat(recipeHistoryCache.history(monday, recipeCatalog.snapshot()).inPreviousMenu(recipeId)).isTrue();
+    }
+
+    @Test
+    void generate_sameWeekTwice_conflicts_butSameIdempotencyKeyReturnsSameMenu() throws Exception {
+        ensureRecipes("Idem", 8);
+        LocalDate monday = randomMonday();
+        Map<String, Object> body = Map.of("weekStartDate", monday.toString(), "strategy", "RANDOM");
+        String key = UUID.randomUUID().toString();
+
+        long first = postJson("/weekly-menus/generate", body, key, HttpStatus.CREATED).get("id").asLong();
+        long retry = postJson("/weekly-menus/generate", body, key, HttpStatus.CREATED).get("id").asLong();
+        assertThat(retry).isEqualTo(first);
+
+        // Uten nøkkel -> uka har allerede meny
+        postJson("/weekly-menus/generate", body, HttpStatus.CONFLICT);
+
+        // Samme nøkkel, annen body -> 400
+        Map<String, Object> other = Map.of("weekStartDate", monday.plusWeeks(1).toString(), "strategy", "RANDOM");
+        postJson("/weekly-menus/generate", other, key, HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void generate_concurrentCallsForSameWeek_createExactlyOneMenu() throws Exception {
+        ensureRecipes("Race", 8);
+        LocalDate monday = randomMonday();
+        Map<String, Object> body = Map.of("weekStartDate", monday.toString(), "strategy", "CONSTRAINT");
+
+        var pool = java.util.concurrent.Executors.newFixedThreadPool(4);
+        try {
+            List<java.util.concurrent.Future<HttpStatusCode>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(pool.submit(() -> post("/weekly-menus/generate", body, null).getStatusCode()));
+            }
+            int created = 0;
+            for (var r : results) {
+                HttpStatusCode status = r.get();
+                if (status == HttpStatus.CREATED) {
+                    created++;
+                } else {
+                    assertThat(status).isEqualTo(HttpStatus.CONFLICT);
+                }
+            }
+            assertThat(created).isEqualTo(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void updateDinner_withStaleExpectedVersion_conflictsWithCurrentState() throws Exception {
+        var ids = ensureRecipes("Version", 3);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("dinners", List.of(dinner(1, ids.get(0), false)));
+        long menuId = postJson("/weekly-menus", body, HttpStatus.CREATED).get("id").asLong();
+
+        long version = getJson("/weekly-menus/" + menuId).get("version").asLong();
+
+        // Første husstandsmedlem bytter middag
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("recipeId", ids.get(1));
+        first.put("locked", false);
+        first.put("expectedVersion", version);
+        assertThat(patch("/weekly-menus/" + menuId + "/dinners/1", first).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+        // Andre har samme (nå utdaterte) versjon -> 409 med gjeldende meny, ingenting overskrevet
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("recipeId", ids.get(2));
+        second.put("locked", true);
+        second.put("expectedVersion", version);
+        ResponseEntity<String> res = patch("/weekly-menus/" + menuId + "/dinners/1", second);
+        assertThat(res.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        JsonNode current = om.readTree(res.getBody()).get("current");
+        assertThat(current.get("version").asLong()).isGreaterThan(version);
+        assertThat(current.get("dinners").get(0).get("recipeId").asLong()).isEqualTo(ids.get(1));
+
+        // Regenerate med utdatert versjon -> 409
+        postJson("/weekly-menus/" + menuId + "/regenerate", Map.of("expectedVersion", version), HttpStatus.CONFLICT);
+
+        // Med gjeldende versjon går det
+        second.put("expectedVersion", current.get("version").asLong());
+        assertThat(patch("/weekly-menus/" + menuId + "/dinners/1", second).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(getJson("/weekly-menus/" + menuId).get("dinners").get(0).get("recipeId").asLong()).isEqualTo(ids.get(2));
+    }
+
+    @Test
+    void regenerate_concurrentCalls_retryInsteadOfLosingUpdates() throws Exception {
+        var ids = ensureRecipes("Concurrent regen", 10);
+        List<Map<String, Object>> dinners = new ArrayList<>();
+        for (int day = 1; day <= 7; day++) {
+            dinners.add(dinner(day, ids.get(day - 1), false));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("dinners", dinners);
+        long menuId = postJson("/weekly-menus", body, HttpStatus.CREATED).get("id").asLong();
+        long version = getJson("/weekly-menus/" + menuId).get("version").asLong();
+
+        // 3 samtidige kall og 3 forsøk: hvert kall vinner senest i sitt tredje forsøk
+        int calls = 3;
+        var pool = java.util.concurrent.Executors.newFixedThreadPool(calls);
+        try {
+            List<java.util.concurrent.Future<HttpStatusCode>> results = new ArrayList<>();
+            for (int i = 0; i < calls; i++) {
+                results.add(pool.submit(() -> post("/weekly-menus/" + menuId + "/regenerate", null, null).getStatusCode()));
+            }
+            for (var r : results) {
+                assertThat(r.get()).isEqualTo(HttpStatus.OK);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Hver regenerering ble skrevet (og talt) én gang
+        assertThat(getJson("/weekly-menus/" + menuId).get("version").asLong()).isEqualTo(version + calls);
+    }
+
+    @Test
+    void updateDinners_changesSeveralDaysInOneCall() throws Exception {
+        var ids = ensureRecipes("Batch", 6);
+        List<Map<String, Object>> dinners = new ArrayList<>();
+        for (int day = 1; day <= 3; day++) {
+            dinners.add(dinner(day, ids.get(day - 1), false));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("weekStartDate", randomMonday().toString());
+        body.put("dinners", dinners);
+        long menuId = postJson("/weekly-menus", body, HttpStatus.CREATED).get("id").asLong();
+        long version = getJson("/weekly-menus/" + menuId).get("version").asLong();
+
+        Map<String, Object> day1 = dinner(1, ids.get(3), true);
+        day1.put("note", "Gjester");
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("dinners", List.of(day1, dinner(3, ids.get(4), false)));
+        update.put("expectedVersion", version);
+        ResponseEntity<String> res = patch("/weekly-menus/" + menuId + "/dinners", update);
+        assertThat(res.getStatusCode()).as(res.getBody()).isEqualTo(HttpStatus.OK);
+
+        JsonNode menu = om.readTree(res.getBody());
+        assertThat(menu.get("version").asLong()).isEqualTo(version + 1);
+        JsonNode saved = menu.get("dinners");
+        assertThat(saved.get(0).get("recipeId").asLong()).isEqualTo(ids.get(3));
+        assertThat(saved.get(0).get("locked").asBoolean()).isTrue();
+        assertThat(saved.get(0).get("note").asText()).isEqualTo("Gjester");
+        assertThat(saved.get(1).get("recipeId").asLong()).isEqualTo(ids.get(1)); // ikke med -> uendret
+        assertThat(saved.get(2).get("recipeId").asLong()).isEqualTo(ids.get(4));
+
+        // Samme dag to ganger -> 400
+        update.put("dinners", List.of(dinner(2, ids.get(5), false), dinner(2, ids.get(0), false)));
+        update.remove("expectedVersion");
+        assertThat(patch("/weekly-menus/" + menuId + "/dinners", update).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+        // Ukjent oppskrift -> 404, og ingen av dagene endres
+        update.put("dinners", List.of(dinner(2, ids.get(5), false), dinner(3, Long.MAX_VALUE, false)));
+        assertThat(patch("/weekly-menus/" + menuId + "/dinners", update).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(getJson("/weekly-menus/" + menuId).get("dinners").get(1).get("recipeId").asLong()).isEqualTo(ids.get(1));
+    }
+
+    @Test
+    void list_byWeekAndRange_withKeysetPagination() throws Exception {
+        var ids = ensureRecipes("List", 3);
+        LocalDate monday = randomMonday();
+        List<Long> menuIds = new ArrayList<>();
+        for (int w = 0; w < 3; w++) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("weekStartDate", monday.plusWeeks(w).toString());
+            body.put("dinners", List.of(dinner(1, ids.get(w), false)));
+            menuIds.add(postJson("/weekly-menus", body, HttpStatus.CREATED).get("id").asLong());
+        }
+
+        JsonNode week = getJson("/weekly-menus?weekStartDate=" + monday.plusWeeks(1));
+        assertThat(week.get("items")).hasSize(1);
+        assertThat(week.get("items").get(0).get("id").asLong()).isEqualTo(menuIds.get(1));
+        assertThat(week.get("items").get(0).get("dinners").get(0).get("recipeId").asLong()).isEqualTo(ids.get(1));
+        assertThat(week.get("nextAfter").isNull()).isTrue();
+
+        String range = "/weekly-menus?from=" + monday + "&to=" + monday.plusWeeks(2) + "&limit=2";
+        JsonNode page1 = getJson(range);
+        assertThat(page1.get("items")).hasSize(2);
+        assertThat(page1.get("items").get(0).get("id").asLong()).isEqualTo(menuIds.get(0));
+        assertThat(page1.get("items").get(1).get("id").asLong()).isEqualTo(menuIds.get(1));
+        assertThat(page1.get("nextAfter").asText()).isEqualTo(monday.plusWeeks(1).toString());
+
+        JsonNode page2 = getJson(range + "&after=" + page1.get("nextAfter").asText());
+        assertThat(page2.get("items")).hasSize(1);
+        assertThat(page2.get("items").get(0).get("id").asLong()).isEqualTo(menuIds.get(2));
+        assertThat(page2.get("nextAfter").isNull()).isTrue();
+
+        assertThat(http.getForEntity("/weekly-menus?weekStartDate=" + monday + "&from=" + monday, String.class)
+                .getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    // ---------- helpers ----------
+
+    private List<Long> ensureRecipes(String prefix, int count) throws Exception {
+        return ensureRecipes(prefix, count, List.of());
+    }
+
+    private List<Long> ensureRecipes(String prefix, int count, List<String> tags) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("ingredientName", prefix + " ingrediens " + i);
+            item.put("amount", new BigDecimal("1"));
+            item.put("unit", "stk");
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("name", prefix + " oppskrift " + i + " " + UUID.randomUUID());
+            body.put("description", "Test");
+            body.put("items", List.of(item));
+            body.put("tags", tags);
+            ids.add(postJson("/recipes", body, HttpStatus.CREATED).get("id").asLong());
+        }
+        return ids;
+    }
+
+    private long recipeWithIngredients(String name, String tag, String... ingredientNames) throws Exception {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (var ingredientName : ingredientNames) {
+            items.add(Map.of("ingredientName", ingredientName, "amount", new BigDecimal("1"), "unit", "stk"));
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", name);
+        body.put("items", items);
+        body.put("tags", List.of(tag));
+        return postJson("/recipes", body, HttpStatus.CREATED).get("id").asLong();
+    }
+
+    private Map<String, Object> dinner(int dayOfWeek, long recipeId, boolean locked) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("dayOfWeek", dayOfWeek);
+        m.put("recipeId", recipeId);
+        m.put("locked", locked);
+        return m;
+    }
+
+    private JsonNode getJson(String path) throws Exception {
+        ResponseEntity<String> res = http.getForEntity(path, String.class);
+        assertThat(res.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return om.readTree(res.getBody());
+    }
+
+    private JsonNode postJson(String path, Object body, HttpStatus expected) throws Exception {
+        return postJson(path, body, null, expected);
+    }
+
+    private JsonNode postJson(String path, Object body, String idempotencyKey, HttpStatus expected) throws Exception {
+        ResponseEntity<String> res = post(path, body, idempotencyKey);
+        assertThat(res.getStatusCode())
+                .as("POST " + path + " body=" + res.getBody())
+                .isEqualTo(expected);
+        return om.readTree(res.getBody());
+    }
+
+    private ResponseEntity<String> patch(String path, Object body) throws Exception {
+        HttpHeaders h = new HttpHeaders();
+        h.setContentType(MediaType.APPLICATION_JSON);
+        HttpEntity<String> req = new HttpEntity<>(om.writeValueAsString(body), h);
+        return http.exchange(path, HttpMethod.PATCH, req, String.class);
+    }
+
+    private ResponseEntity<String> post(String path, Object body, String idempotencyKey) throws Exception {
+        HttpHeaders h = new HttpHeaders();
+        h.setContentType(MediaType.APPLICATION_JSON);
+        if (idempotencyKey != null) {
+            h.set("Idempotency-Key", idempotencyKey);
+        }
+        HttpEntity<String> req = new HttpEntity<>(body == null ? null : om.writeValueAsString(body), h);
+        return http.postForEntity(path, req, String.class);
+    }
+
+    // week_start_date er unik: tilfeldig startuke per testklasse (~7000 år spenn), deretter fortløpende
+    // med 8 ukers mellomrom, så tester som bruker naboukene (±uker) aldri treffer hverandre
+    private static final java.util.concurrent.atomic.AtomicLong NEXT_WEEK =
+            new java.util.concurrent.atomic.AtomicLong(Math.floorMod(UUID.randomUUID().hashCode(), 52 * 7000));
+
+    private LocalDate randomMonday() {
+        return LocalDate.of(2000, 1, 3).plusWeeks(NEXT_WEEK.getAndAdd(8)); // 2000-01-03 er en mandag
+    }
+}
@@ -0,0 +1,46 @@
+package no.jdl.ukemeny.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AutocompleteIndexTests {
+
+    @Test
+    void changes_areVisibleImmediately_andRankedTogetherWithTheSnapshot() {
+        var index = new AutocompleteIndex();
+        index.replaceAll(Map.of(1L, "Bløtkake", 2L, "Kakemiks"));
+
+        index.put(3L, "Kake");
+        index.put(1L, "Sjokoladekake");
+        index.remove(2L);
+
+        // "Kake" starter med søket og er kortest; snapshotets gamle navn for 1 og 2 er skjult
+        assertThat(index.suggest("kake", 10)).extracting(AutocompleteIndex.Suggestion::id).containsExactly(3L, 1L);
+        assertThat(index.suggest("blot", 10)).isEmpty();
+    }
+
+    @Test
+    void manyChanges_areRebuiltInTheBackground_withoutLosingAny() throws Exception {
+        var index = new AutocompleteIndex();
+        var all = new HashMap<Long, String>();
+        for (long id = 1; id <= 1_000; id++) {
+            all.put(id, "Rett " + id);
+        }
+        index.replaceAll(all);
+
+        for (long id = 1; id <= 1_000; id += 2) {
+            index.put(id, "Gryte " + id);
+        }
+        assertThat(index.suggest("gryte", 1_000)).hasSize(500);
+
+        // Ombyggingen starter etter 256 ventende endringer; resultatet skal være det samme før og etter
+        Thread.sleep(500);
+        assertThat(index.suggest("gryte", 1_000)).hasSize(500);
+        assertThat(index.suggest("rett", 1_000)).hasSize(500);
+        assertThat(index.suggest("gryte 999", 10)).extracting(AutocompleteIndex.Suggestion::id).containsExactly(999L);
+    }
+}
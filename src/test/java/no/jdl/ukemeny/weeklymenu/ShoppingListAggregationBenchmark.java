@@ -0,0 +1,148 @@
+package no.jdl.ukemeny.weeklymenu;
+
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListCategoryResponse;
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListItemResponse;
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListItemSource;
+import no.jdl.ukemeny.weeklymenu.api.ShoppingListResponse;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Handleliste-aggregering i appen: dagens kjerne ({@link ShoppingListAggregate}, fastkomma long,
+ * {@link IngredientUnitIndex} og sources bygget ved visning) mot den forrige (Map&lt;LineKey, Line&gt;
+ * med BigDecimal-summer og ferdige sources per rad), fra flate rader til ferdig respons.
+ *
+ * 70 rader er en vanlig uke (7 middager x 10 items); de større gir handleliste over flere uker.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShoppingListAggregationBenchmark {
+
+    private static final String[] UNITS = {"g", "stk", "dl", "ss", "ts", "pk"};
+    private static final int INGREDIENTS = 300;
+    private static final int CATEGORIES = 20;
+
+    @Param({"70", "1000", "10000"})
+    int rows;
+
+    private List<ShoppingListRow> input;
+    private LocalDate monday;
+
+    @Setup
+    public void setup() {
+        var rng = new Random(42);
+        monday = LocalDate.of(2025, 1, 6);
+        input = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            long ingredientId = 1 + rng.nextInt(INGREDIENTS);
+            long categoryId = 1 + ingredientId % CATEGORIES;
+            long recipeId = 1 + i / 10;
+            input.add(new ShoppingListRow(
+                    1L, monday, 1 + (int) (recipeId % 7),
+                    recipeId, "Oppskrift " + recipeId,
+                    ingredientId, "Ingrediens " + ingredientId,
+                    categoryId, "Kategori " + categoryId, (int) categoryId,
+                    BigDecimal.valueOf(1 + rng.nextInt(500_000), 3),
+                    UNITS[(int) (ingredientId % UNITS.length)]));
+        }
+    }
+
+    @Benchmark
+    public ShoppingListResponse current() {
+        return ShoppingListAggregate.fromRows(1L, monday, input, 0).toResponse();
+    }
+
+    @Benchmark
+    public ShoppingListResponse previous() {
+        return new ShoppingListResponse(1L, monday, PreviousAggregation.fromRows(input).categories());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ShoppingListAggregationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /** Aggregeringen slik den var før fastkomma-kjernen, kun delen som bygger responsen. */
+    private static final class PreviousAggregation {
+
+        private record CatKey(Long categoryId, String categoryName, int sortOrder) {}
+
+        private record LineKey(Long ingredientId, String unit) {}
+
+        private static final class Line {
+            final Long ingredientId;
+            final String ingredientName;
+            final Long categoryId;
+            final String categoryName;
+            final int categorySortOrder;
+            final String unit;
+            BigDecimal total = BigDecimal.ZERO;
+            final List<ShoppingListItemSource> sources = new ArrayList<>();
+
+            Line(ShoppingListRow row) {
+                this.ingredientId = row.ingredientId();
+                this.ingredientName = row.ingredientName();
+                this.categoryId = row.categoryId();
+                this.categoryName = row.categoryName();
+                this.categorySortOrder = row.categorySortOrder();
+                this.unit = row.unit();
+            }
+
+            ShoppingListItemResponse toItem() {
+                var sorted = new ArrayList<>(sources);
+                sorted.sort(SOURCE_ORDER);
+                return new ShoppingListItemResponse(ingredientId, ingredientName, total, unit, List.copyOf(sorted));
+            }
+        }
+
+        private static final Comparator<ShoppingListItemSource> SOURCE_ORDER = Comparator
+                .comparing(ShoppingListItemSource::date, Comparator.nullsFirst(Comparator.<LocalDate>naturalOrder()))
+                .thenComparingInt(ShoppingListItemSource::dayOfWeek);
+
+        private final Map<LineKey, Line> lines = new LinkedHashMap<>();
+
+        static PreviousAggregation fromRows(List<ShoppingListRow> rows) {
+            var aggregation = new PreviousAggregation();
+            for (var row : rows) {
+                var line = aggregation.lines.computeIfAbsent(
+                        new LineKey(row.ingredientId(), row.unit()), k -> new Line(row));
+                line.total = line.total.add(row.amount());
+                line.sources.add(new ShoppingListItemSource(
+                        row.dayOfWeek(), row.recipeId(), row.recipeName(), row.amount(), row.unit(), null));
+            }
+            return aggregation;
+        }
+
+        List<ShoppingListCategoryResponse> categories() {
+            var grouped = lines.values().stream()
+                    .collect(Collectors.groupingBy(
+                            l -> new CatKey(l.categoryId, l.categoryName, l.categorySortOrder),
+                            LinkedHashMap::new,
+                            Collectors.toList()
+                    ));
+
+            return grouped.entrySet().stream()
+                    .sorted(Comparator
+                            .comparingInt((Map.Entry<CatKey, List<Line>> e) -> e.getKey().sortOrder())
+                            .thenComparing(e -> e.getKey().categoryName(), String.CASE_INSENSITIVE_ORDER))
+                    .map(e -> new ShoppingListCategoryResponse(e.getKey().categoryName(), e.getValue().stream()
+                            .sorted(Comparator.comparing(l -> l.ingredientName, String.CASE_INSENSITIVE_ORDER))
+                            .map(Line::toItem)
+                            .toList()))
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class AliasTableTests {
+
+    private static final int DRAWS = 200_000;
+
+    @Test
+    void sampledFrequencies_matchWeights() {
+        var weights = new double[]{1, 2, 3, 4, 0.5, 9.5};
+        var counts = draw(new AliasTable(weights), new Random(42));
+
+        double sum = 0;
+        for (double w : weights) sum += w;
+        for (int i = 0; i < weights.length; i++) {
+            assertThat((double) counts[i] / DRAWS)
+                    .as("index %d", i)
+                    .isCloseTo(weights[i] / sum, within(0.005));
+        }
+    }
+
+    @Test
+    void zeroWeight_isNeverDrawn() {
+        var counts = draw(new AliasTable(new double[]{3, 0, 1, 0}), new Random(42));
+
+        assertThat(counts[1]).isZero();
+        assertThat(counts[3]).isZero();
+        assertThat((double) counts[0] / DRAWS).isCloseTo(0.75, within(0.005));
+    }
+
+    @Test
+    void allZeroWeights_giveUniformDistribution() {
+        var counts = draw(new AliasTable(new double[5]), new Random(42));
+
+        for (int count : counts) {
+            assertThat((double) count / DRAWS).isCloseTo(0.2, within(0.005));
+        }
+    }
+
+    @Test
+    void negativeWeight_isRejected() {
+        assertThatThrownBy(() -> new AliasTable(new double[]{1, -1}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static int[] draw(AliasTable table, Random random) {
+        var counts = new int[table.size()];
+        for (int i = 0; i < DRAWS; i++) {
+            counts[table.sample(random)]++;
+        }
+        return counts;
+    }
+}
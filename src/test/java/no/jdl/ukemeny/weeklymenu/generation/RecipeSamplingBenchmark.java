@@ -0,0 +1,84 @@
+package no.jdl.ukemeny.weeklymenu.generation;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Å velge 7 oppskrifter: den gamle Collections.shuffle over alle id-er mot trekning fra en ferdig
+ * {@link AliasTable}, pluss byggekostnaden for tabellen og den vektede stokkingen som brukes
+ * når hele rekkefølgen trengs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecipeSamplingBenchmark {
+
+    private static final int PICKS = 7;
+
+    @Param({"1000", "10000", "100000"})
+    int recipes;
+
+    private List<Long> ids;
+    private double[] weights;
+    private AliasTable table;
+    private Random random;
+
+    @Setup
+    public void setup() {
+        var rng = new Random(42);
+        ids = new ArrayList<>(recipes);
+        weights = new double[recipes];
+        for (int i = 0; i < recipes; i++) {
+            ids.add((long) i + 1);
+            weights[i] = 0.1 + rng.nextDouble() * 3;
+        }
+        table = new AliasTable(weights);
+        random = new Random(7);
+    }
+
+    @Benchmark
+    public List<Long> shuffle() {
+        var shuffled = new ArrayList<>(ids);
+        Collections.shuffle(shuffled, random);
+        return shuffled.subList(0, PICKS);
+    }
+
+    @Benchmark
+    public int[] aliasPicks() {
+        var picked = new int[PICKS];
+        int count = 0;
+        while (count < PICKS) {
+            int i = table.sample(random);
+            boolean seen = false;
+            for (int j = 0; j < count; j++) {
+                if (picked[j] == i) seen = true;
+            }
+            if (!seen) picked[count++] = i;
+        }
+        return picked;
+    }
+
+    @Benchmark
+    public AliasTable aliasBuild() {
+        return new AliasTable(weights);
+    }
+
+    @Benchmark
+    public int[] weightedShuffle() {
+        return MenuGenerationContext.weightedShuffle(table, recipes, random);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RecipeSamplingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}